@@ -1,59 +1,205 @@
 package name.heavycarbon.sudoku_solver;
 
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * The keeper of "active constraints", i.e. constraints that will have to
  * examine the board and maybe update it. This is an element on the call stack
  * and is recreated and dropped often.
+ * <p>
+ * This is not a plain FIFO: "getNext()" returns the active constraint with the highest priority.
+ * In decreasing order of priority:
+ * <p>
+ * - cheap constraints monitoring a cell that became fixed since they were activated
+ * - other cheap constraints
+ * - expensive constraints, which thus only run once the cheap ones have nothing left to do
+ * <p>
+ * Among constraints of the same class, the one that saw the most changes among its cells since
+ * it was activated goes first, and among those, the one activated first. The idea is that a
+ * constraint that has more to work with settles more per update, so that fewer updates are needed
+ * until quiescence.
  */
 
 public class ActiveConstraints {
 
-    private final Set<ValueCellBijectionConstraint> activeAsSet = new HashSet<>(); // changes over time
-    private final List<ValueCellBijectionConstraint> activeAsQueue = new LinkedList<>(); // changes over time
+    /**
+     * What is known about an active constraint.
+     */
+
+    private static class Activation {
+
+        final Constraint c;
+        final long order; // activations so far when this one was activated, for FIFO among equals
+        int level; // index of the bucket it is in
+        int changes; // number of changes to monitored cells
+
+        Activation(Constraint c, long order, int level) {
+            this.c = c;
+            this.order = order;
+            this.level = level;
+        }
+
+        boolean goesBefore(Activation other) {
+            if (level != other.level) {
+                return level < other.level;
+            }
+            if (changes != other.changes) {
+                return changes > other.changes;
+            }
+            return order < other.order;
+        }
+    }
+
+    private final static int FIXED = 0; // cheap, a monitored cell became fixed
+    private final static int NARROWED = 1; // cheap
+    private final static int EXPENSIVE = 2;
+
+    private final Map<Constraint, Activation> active = new HashMap<>(); // changes over time
+    private final List<List<Activation>> buckets = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()); // by level, unordered
+    private long activationCount;
+    private long skipped;
 
     public int getCount() {
-        return activeAsSet.size();
+        return active.size();
     }
 
     public boolean isEmpty() {
-        return activeAsSet.isEmpty();
+        return active.isEmpty();
     }
 
-    public ValueCellBijectionConstraint getNext() {
+    public Constraint getNext() {
         if (isEmpty()) {
             return null;
         }
         else {
-            ValueCellBijectionConstraint res = activeAsQueue.removeFirst();
-            activeAsSet.remove(res);
-            return res;
+            // the first non-empty bucket holds at most a few dozen constraints, a scan is fast enough
+            List<Activation> bucket = buckets.get(FIXED);
+            if (bucket.isEmpty()) {
+                bucket = buckets.get(NARROWED).isEmpty() ? buckets.get(EXPENSIVE) : buckets.get(NARROWED);
+            }
+            int best = 0;
+            for (int i = 1; i < bucket.size(); i++) {
+                if (bucket.get(i).goesBefore(bucket.get(best))) {
+                    best = i;
+                }
+            }
+            Activation res = removeFrom(bucket, best);
+            active.remove(res.c);
+            return res.c;
+        }
+    }
+
+    /**
+     * Remove the element at "index" by moving the last one there; the order of a bucket does not matter.
+     */
+
+    private static Activation removeFrom(List<Activation> bucket, int index) {
+        Activation last = bucket.removeLast();
+        return (index == bucket.size()) ? last : bucket.set(index, last);
+    }
+
+    private Activation activation(Constraint c) {
+        Activation a = active.get(c);
+        if (a == null) {
+            a = new Activation(c, activationCount++, (c.getCost() == Constraint.Cost.expensive) ? EXPENSIVE : NARROWED);
+            active.put(c, a);
+            buckets.get(a.level).add(a);
         }
+        return a;
+    }
+
+    public void activate(Constraint c) {
+        activation(c);
     }
 
-    public void activateAllConstraintsMonitoringThisLocation(Location loc, ValueCellBijectionConstraint sender, Constraints constraints) {
-        List<ValueCellBijectionConstraint> affected = constraints.getConstraintMonitoringThisLocation(loc);
-        for (ValueCellBijectionConstraint c : affected) {
+    /**
+     * Activate the constraints monitoring "loc", which has changed, except "sender", which changed
+     * it. Use this if it is not known whether the cell at "loc" is now fixed.
+     */
+
+    public void activateAllConstraintsMonitoringThisLocation(Location loc, Constraint sender, Constraints constraints) {
+        activateAllConstraintsMonitoringThisLocation(loc, sender, constraints, false);
+    }
+
+    /**
+     * Activate the constraints monitoring "loc", which has changed, except "sender", which changed
+     * it. "fixed" says whether the cell at "loc" has become fixed, which raises their priority.
+     */
+
+    public void activateAllConstraintsMonitoringThisLocation(Location loc, Constraint sender, Constraints constraints, boolean fixed) {
+        List<Constraint> affected = constraints.getConstraintMonitoringThisLocation(loc);
+        for (Constraint c : affected) {
             // The test can handle the case of sender == null
-            if (!c.equals(sender) && !activeAsSet.contains(c)) {
-                activeAsSet.add(c);
-                activeAsQueue.add(c);
+            if (!c.equals(sender)) {
+                noteChange(activation(c), fixed);
+            }
+        }
+    }
+
+    /**
+     * Activate the constraints monitoring the cell of "change", except "sender", which made the
+     * change, but only those that subscribe to its kind and that it may let narrow something (see
+     * Constraint.isWokenBy()). "board" is the board after the change.
+     */
+
+    public void activateAllConstraintsWokenByThisChange(Constraint.DomainChange change, Board board, Constraint sender, Constraints constraints) {
+        List<Constraint> affected = constraints.getConstraintMonitoringThisLocation(change.loc);
+        boolean fixed = change.is(Constraint.DomainChange.Kind.fixed);
+        for (Constraint c : affected) {
+            if (c.equals(sender)) {
+                continue;
             }
+            Activation a = active.get(c);
+            if (a == null) {
+                if (!change.isAnyOf(c.getSubscribedKinds()) || !c.isWokenBy(change, board)) {
+                    skipped++;
+                    continue;
+                }
+                a = activation(c);
+            }
+            noteChange(a, fixed);
         }
     }
 
+    private void noteChange(Activation a, boolean fixed) {
+        a.changes++;
+        if (fixed && a.level == NARROWED) {
+            List<Activation> narrowed = buckets.get(NARROWED);
+            removeFrom(narrowed, narrowed.indexOf(a));
+            a.level = FIXED;
+            buckets.get(FIXED).add(a);
+        }
+    }
+
+    /**
+     * The number of times a constraint was not activated because the change could not concern it.
+     */
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * The active constraints, in the order in which "getNext()" would return them.
+     */
+
+    private List<Activation> inOrder() {
+        List<Activation> res = new ArrayList<>(active.values());
+        res.sort((a, b) -> (a == b) ? 0 : (a.goesBefore(b) ? -1 : 1));
+        return res;
+    }
+
     public String toString() {
         StringBuilder buf = new StringBuilder();
         boolean addComma = false;
-        for (ValueCellBijectionConstraint c : activeAsQueue) {
+        for (Activation a : inOrder()) {
             if (addComma) {
                 buf.append(",");
             }
-            buf.append(c);
+            buf.append(a.c);
             addComma = true;
         }
         return buf.toString();
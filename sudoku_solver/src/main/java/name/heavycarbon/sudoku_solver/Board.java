@@ -13,9 +13,28 @@ public class Board {
 
     public final static int COUNT = 9;
 
-    public final Map<Location, Cell> board; // immutable map of 81 Locations
+    public final Map<Location, Cell> board; // immutable view of "cells"
 
-    private static void fillBoardWithFreshCells(Map<Location, Cell> board) {
+    private final LocationMap<Cell> cells; // the 81 Locations, never modified once constructed
+
+    /**
+     * The "value supports" of the 27 units (rows, columns, blocks): for unit "u" and value "v",
+     * "support[u * COUNT + v.index]" is the bitmask of the positions (within the unit) of the cells
+     * that still have "v" in their domain. The number of supporting cells is the bit count.
+     * <p>
+     * This is maintained incrementally as Boards are derived from Boards: only the
+     * changed cells are looked at. Backtracking to an earlier Board also "restores" it.
+     */
+
+    private final short[] support;
+
+    private long hash; // the Zobrist hash, kept up to date like "support"; only changed by the constructors
+
+    private final static int UNIT_COUNT = ValueCellBijectionConstraint.Type.values().length * COUNT;
+
+    private final static short FULL_SUPPORT = (short) ((1 << COUNT) - 1);
+
+    private static void fillBoardWithFreshCells(LocationMap<Cell> board) {
         for (int row0 = 0; row0 < COUNT; row0++) {
             for (int col0 = 0; col0 < COUNT; col0++) {
                 board.put(Location.obtain0(row0, col0), new Cell()); // cell will have full domain of values
@@ -29,9 +48,12 @@ public class Board {
      */
 
     public Board() {
-        Map<Location, Cell> board = new HashMap<>();
-        fillBoardWithFreshCells(board);
-        this.board = Collections.unmodifiableMap(board);
+        this.cells = new LocationMap<>();
+        fillBoardWithFreshCells(cells);
+        this.board = Collections.unmodifiableMap(cells);
+        this.support = new short[UNIT_COUNT * COUNT];
+        Arrays.fill(this.support, FULL_SUPPORT);
+        this.hash = Zobrist.emptyBoardHash();
     }
 
     /**
@@ -39,16 +61,15 @@ public class Board {
      */
 
     public Board(Board oldBoard, Map<Location, Cell> overrides) {
-        Map<Location, Cell> board = new HashMap<>();
-        for (Entry<Location, Cell> e : oldBoard.board.entrySet()) {
+        this.cells = new LocationMap<>(oldBoard.cells);
+        this.support = oldBoard.support.clone();
+        this.hash = oldBoard.hash;
+        for (Entry<Location, Cell> e : overrides.entrySet()) {
             Location loc = e.getKey();
-            if (overrides.containsKey(loc)) {
-                board.put(loc, overrides.get(loc));
-            } else {
-                board.put(loc, e.getValue());
-            }
+            Cell oldCell = cells.put(loc, e.getValue());
+            updateSupport(loc, oldCell, e.getValue());
         }
-        this.board = Collections.unmodifiableMap(board);
+        this.board = Collections.unmodifiableMap(cells);
     }
 
     /**
@@ -56,9 +77,54 @@ public class Board {
      */
 
     public Board(Board oldBoard, Cell newCell, Location loc) {
-        Map<Location, Cell> board = new HashMap<>(oldBoard.board);
-        board.put(loc, newCell);
-        this.board = Collections.unmodifiableMap(board);
+        this.cells = new LocationMap<>(oldBoard.cells);
+        this.support = oldBoard.support.clone();
+        this.hash = oldBoard.hash;
+        Cell oldCell = cells.put(loc, newCell);
+        updateSupport(loc, oldCell, newCell);
+        this.board = Collections.unmodifiableMap(cells);
+    }
+
+    /**
+     * Adjust the value supports of the 3 units containing "loc", and the hash, after the cell there
+     * changed from "oldCell" to "newCell".
+     */
+
+    private void updateSupport(Location loc, Cell oldCell, Cell newCell) {
+        hash ^= Zobrist.delta(loc.row0 * COUNT + loc.col0, oldCell.getDomainBits(), newCell.getDomainBits());
+        int removed = oldCell.getDomainBits() & ~newCell.getDomainBits();
+        int added = newCell.getDomainBits() & ~oldCell.getDomainBits();
+        if (removed == 0 && added == 0) {
+            return;
+        }
+        for (ValueCellBijectionConstraint.Type type : ValueCellBijectionConstraint.Type.values()) {
+            int base = ValueCellBijectionConstraint.unitIndex(type, loc) * COUNT;
+            int posBit = 1 << ValueCellBijectionConstraint.positionInUnit(type, loc);
+            for (int bits = removed; bits != 0; bits &= bits - 1) {
+                support[base + Integer.numberOfTrailingZeros(bits)] &= (short) ~posBit;
+            }
+            for (int bits = added; bits != 0; bits &= bits - 1) {
+                support[base + Integer.numberOfTrailingZeros(bits)] |= (short) posBit;
+            }
+        }
+    }
+
+    /**
+     * The bitmask of the positions in unit "unitIndex" (see ValueCellBijectionConstraint.unitIndex())
+     * of the cells that still have "v" in their domain.
+     */
+
+    public int getSupport(int unitIndex, Value v) {
+        return support[unitIndex * COUNT + v.index];
+    }
+
+    /**
+     * The Zobrist hash of the candidates of all cells. Boards with the same candidates everywhere
+     * have the same hash, however they were reached.
+     */
+
+    public long getHash() {
+        return hash;
     }
 
     public static class SetResult {
@@ -99,7 +165,7 @@ public class Board {
      */
 
     public boolean isDone() {
-        for (Cell c : board.values()) {
+        for (Cell c : cells.values()) {
             if (!c.isUnique()) {
                 return false;
             }
@@ -109,15 +175,15 @@ public class Board {
 
     /**
      * Select the cells with smallest domain as we want to "guess" going forward.
-     * Cells are given by their Locations.
+     * Cells are given by their Locations, row by row.
      */
 
     public List<Location> findCellsWithSmallestDomainThatIsNotOne() {
         List<Location> res = new LinkedList<>();
         int fewestSoFar = Value.values().length + 1;
-        for (Entry<Location, Cell> e : board.entrySet()) {
-            Cell cell = e.getValue();
-            Location loc = e.getKey();
+        for (int ordinal = 0; ordinal < Location.ORDINAL_COUNT; ordinal++) {
+            Location loc = Location.fromOrdinal(ordinal);
+            Cell cell = cells.get(loc);
             if (!cell.isUnique()) {
                 if (cell.cardinality < fewestSoFar) {
                     res.clear();
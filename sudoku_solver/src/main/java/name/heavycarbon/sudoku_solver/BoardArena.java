@@ -0,0 +1,186 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Boards of a batch, stored off-heap in a single MemorySegment rather than as Board objects.
+ * <p>
+ * A Board is a map from Location to Cell, so a batch of millions of puzzles in flight is millions
+ * of maps on the heap, all of which the garbage collector has to trace. Here each board is a
+ * "slot" of fixed size in one segment: 81 candidate masks (as in Solver and PropagationKernel)
+ * followed by a status word, as ints. The boards are referred to by slot index, and solving a slot
+ * goes through a Solver and a per-thread buffer of 81 ints, so the heap does not grow with the
+ * batch.
+ * <p>
+ * The memory is freed by "close()", at once, not when the garbage collector gets around to it.
+ * Slots are handed out in order by "add()"; "reset()" makes them all available again.
+ * <p>
+ * The Foreign Function and Memory API is a preview API in Java 21, so this class needs
+ * "--enable-preview" at runtime (the build passes it to the compiler and to the tests).
+ * Nothing else depends on it.
+ * <p>
+ * An arena opened with "shared" false is confined to the thread that opened it. A shared one may
+ * be used by several threads, each solving its own slots, once the boards have been added.
+ */
+
+public class BoardArena implements AutoCloseable {
+
+    private final static int CELL_COUNT = Board.COUNT * Board.COUNT;
+    private final static int ALL = (1 << Board.COUNT) - 1;
+
+    public final static int STRIDE = (CELL_COUNT + 1) * Integer.BYTES; // bytes per slot
+
+    // the status word of a slot
+    public final static int PENDING = 0;
+    public final static int SOLVED = 1;
+    public final static int UNSOLVABLE = 2;
+    public final static int TIMED_OUT = 3;
+
+    private final static ThreadLocal<int[]> BUFFER = ThreadLocal.withInitial(() -> new int[CELL_COUNT]);
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final int capacity;
+    private int size; // slots in use
+
+    /**
+     * An arena with room for "capacity" boards.
+     */
+
+    public BoardArena(int capacity, boolean shared) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Bad capacity " + capacity);
+        }
+        this.arena = shared ? Arena.ofShared() : Arena.ofConfined();
+        this.segment = arena.allocate((long) capacity * STRIDE, Long.BYTES); // zeroed
+        this.capacity = capacity;
+    }
+
+    public BoardArena(int capacity) {
+        this(capacity, false);
+    }
+
+    private static long offset(int slot, int index) {
+        return (long) slot * STRIDE + (long) index * Integer.BYTES;
+    }
+
+    private void throwIfBadSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " is not in use (" + size + " are)");
+        }
+    }
+
+    /**
+     * Put the puzzle given as 81 digits (0 for an empty cell) into the next free slot, as pending.
+     * Returns the slot.
+     */
+
+    public int add(int[] digits) {
+        if (digits.length != CELL_COUNT) {
+            throw new IllegalArgumentException("Expected " + CELL_COUNT + " digits but got " + digits.length);
+        }
+        if (size == capacity) {
+            throw new IllegalStateException("The arena is full (" + capacity + " boards)");
+        }
+        int slot = size;
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            int d = digits[cell];
+            if (d < 0 || d > Board.COUNT) {
+                throw new IllegalArgumentException("Not a digit in 0.." + Board.COUNT + " at position " + cell + ": " + d);
+            }
+            segment.set(ValueLayout.JAVA_INT, offset(slot, cell), (d == 0) ? ALL : 1 << (d - 1));
+        }
+        segment.set(ValueLayout.JAVA_INT, offset(slot, CELL_COUNT), PENDING);
+        size++;
+        return slot;
+    }
+
+    public int getMask(int slot, int cell) {
+        throwIfBadSlot(slot);
+        return segment.get(ValueLayout.JAVA_INT, offset(slot, cell));
+    }
+
+    public void setMask(int slot, int cell, int mask) {
+        throwIfBadSlot(slot);
+        segment.set(ValueLayout.JAVA_INT, offset(slot, cell), mask);
+    }
+
+    public int getStatus(int slot) {
+        throwIfBadSlot(slot);
+        return segment.get(ValueLayout.JAVA_INT, offset(slot, CELL_COUNT));
+    }
+
+    /**
+     * The digit of "cell" on the board in "slot", or 0 if the cell has more than one candidate.
+     */
+
+    public int getDigit(int slot, int cell) {
+        int mask = getMask(slot, cell);
+        return (Integer.bitCount(mask) == 1) ? Integer.numberOfTrailingZeros(mask) + 1 : 0;
+    }
+
+    /**
+     * Solve the board in "slot" with "solver", replacing its masks by those of the solution if there
+     * is one, and setting its status. Returns the status.
+     */
+
+    public int solve(Solver solver, int slot) {
+        throwIfBadSlot(slot);
+        int[] buffer = BUFFER.get();
+        MemorySegment.copy(segment, ValueLayout.JAVA_INT, offset(slot, 0), buffer, 0, CELL_COUNT);
+        int status;
+        if (solver.solveCandidates(buffer)) {
+            solver.copySolutionMasks(buffer);
+            MemorySegment.copy(buffer, 0, segment, ValueLayout.JAVA_INT, offset(slot, 0), CELL_COUNT);
+            status = SOLVED;
+        } else {
+            status = solver.hasTimedOut() ? TIMED_OUT : UNSOLVABLE;
+        }
+        segment.set(ValueLayout.JAVA_INT, offset(slot, CELL_COUNT), status);
+        return status;
+    }
+
+    /**
+     * Solve all the pending boards with "solver". Returns the number solved.
+     */
+
+    public int solveAll(Solver solver) {
+        int solved = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (getStatus(slot) == PENDING && solve(solver, slot) == SOLVED) {
+                solved++;
+            }
+        }
+        return solved;
+    }
+
+    /**
+     * Make all slots free again, without freeing the memory.
+     */
+
+    public void reset() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Free the memory, unless already done. Any later access throws IllegalStateException.
+     */
+
+    @Override
+    public void close() {
+        if (arena.scope().isAlive()) {
+            arena.close();
+        }
+    }
+
+}
@@ -1,15 +1,12 @@
 package name.heavycarbon.sudoku_solver;
 
-import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
 
 /*
  * A single Sudoku "Cell", i.e. a "logical variable", which also stores its allowed domain:
  * A subset of the values v1...v9.
  *
- * We store the values that are possible for this Cell as an array of booleans.
+ * We store the values that are possible for this Cell as a bitmask of 9 bits.
  * If there is no value left that is possible for this Cell, we have reached a dead end and need to backtrack.
  * If there is a single value that is possible for this Cell, it is completely determined, at least for the
  * current search tree.
@@ -24,49 +21,29 @@ public class Cell implements Iterable<Value> {
         return byIndex[index];
     }
 
+    private final static int FULL_DOMAIN_BITS = (1 << Value.values().length) - 1;
+
     /**
-     * Array representation of the domain: an array of booleans, one for each possible value.
-     * If every entry in the domain is false, the domain is empty, which means that the
+     * Bitmask representation of the domain: bit "v.index" is set if value "v" is possible.
+     * If the bitmask is 0, the domain is empty, which means that the
      * solution that is based on this Cell is not acceptable.
      */
 
-    private final boolean[] domain = new boolean[Value.values().length];
+    private final int domainBits;
 
     /**
-     * Domain cardinality, corresponds to the number of "true" in domain[]
+     * Domain cardinality, corresponds to the number of bits set in domainBits
      */
 
     public final int cardinality;
 
-    /**
-     * Helpers
-     */
-
-    private void setAll(boolean x) {
-        Arrays.fill(domain, x);
-    }
-
-    private void copyAll(boolean[] otherDomain) {
-        System.arraycopy(otherDomain, 0, domain, 0, domain.length);
-    }
-
-    private int determineCardinality() {
-        int c = 0;
-        for (boolean b : domain) {
-            if (b) {
-                c++;
-            }
-        }
-        return c;
-    }
-
     /**
      * Create a Cell for which "all the values are acceptable"
      */
 
     public Cell() {
-        setAll(true);
-        cardinality = domain.length;
+        domainBits = FULL_DOMAIN_BITS;
+        cardinality = Value.values().length;
     }
 
     /**
@@ -74,8 +51,7 @@ public class Cell implements Iterable<Value> {
      */
 
     public Cell(final Value v) {
-        setAll(false);
-        domain[v.index] = true;
+        domainBits = 1 << v.index;
         cardinality = 1;
     }
 
@@ -86,9 +62,17 @@ public class Cell implements Iterable<Value> {
      */
 
     public Cell(final Cell other, final Value impossible) {
-        copyAll(other.domain);
-        domain[impossible.index] = false;
-        cardinality = determineCardinality();
+        this(other, 1 << impossible.index);
+    }
+
+    /**
+     * Create a Cell with the domain of "other" and with additionally all the values in the
+     * bitmask "impossibleBits" removed. This may result in the "empty domain".
+     */
+
+    public Cell(final Cell other, final int impossibleBits) {
+        domainBits = other.domainBits & ~impossibleBits;
+        cardinality = Integer.bitCount(domainBits);
     }
 
     /**
@@ -112,19 +96,15 @@ public class Cell implements Iterable<Value> {
      */
 
     public boolean domainContains(final Value v) {
-        return domain[v.index];
+        return (domainBits & (1 << v.index)) != 0;
     }
 
     /**
-     * Update an array of counters, one for each value
+     * The domain as a bitmask, with bit "v.index" set if "v" is in the domain
      */
 
-    public void updateDomainTotals(Map<Value, List<Location>> valueToLocation, Location yourLocation) {
-        for (Value v : Value.values()) {
-            if (domain[v.index]) {
-                valueToLocation.get(v).add(yourLocation);
-            }
-        }
+    public int getDomainBits() {
+        return domainBits;
     }
 
     /**
@@ -132,15 +112,7 @@ public class Cell implements Iterable<Value> {
      */
 
     public static boolean isDifferent(Cell a, Cell b) {
-        if (a.cardinality != b.cardinality) {
-            return true;
-        }
-        for (Value v : Value.values()) {
-           if (a.domain[v.index] != b.domain[v.index])  {
-               return true;
-           }
-        }
-        return false;
+        return a.domainBits != b.domainBits;
     }
 
     /**
@@ -151,12 +123,7 @@ public class Cell implements Iterable<Value> {
         if (!isUnique()) {
             throw new IllegalStateException("Cell is not 'unique'");
         }
-        for (Value v : Value.values()) {
-            if (domain[v.index]) {
-                return v;
-            }
-        }
-        throw new IllegalStateException("Can't be here");
+        return valueFromIndex(Integer.numberOfTrailingZeros(domainBits));
     }
 
     /**
@@ -176,7 +143,7 @@ public class Cell implements Iterable<Value> {
         StringBuilder b = new StringBuilder();
         boolean addComma = false;
         for (Value v : Value.values()) {
-            if (domain[v.index]) {
+            if (domainContains(v)) {
                 if (addComma) {
                     b.append(",");
                 }
@@ -189,22 +156,11 @@ public class Cell implements Iterable<Value> {
 
     public class DomainIterator implements Iterator<Value> {
 
-        private int pos; // always points to the next valid entry or past end
-
-        public DomainIterator() {
-            pos = 0;
-            searchForward();
-        }
-
-        private void searchForward() {
-            while (pos < domain.length && !domain[pos]) {
-                pos++;
-            }
-        }
+        private int remainingBits = domainBits; // the values not yet returned
 
         @Override
         public boolean hasNext() {
-            return (pos < domain.length);
+            return remainingBits != 0;
         }
 
         @Override
@@ -213,10 +169,9 @@ public class Cell implements Iterable<Value> {
                 throw new IllegalStateException("Past end");
             }
             else {
-                int myPos = pos;
-                pos++;
-                searchForward();
-                return valueFromIndex(myPos);
+                int index = Integer.numberOfTrailingZeros(remainingBits);
+                remainingBits &= remainingBits - 1; // clear the lowest bit
+                return valueFromIndex(index);
             }
         }
     }
@@ -0,0 +1,157 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A constraint (a "propagator") over some of the cells of the Board.
+ * <p>
+ * A constraint is activated whenever a cell it monitors changes. When run, it examines the
+ * Board and returns a possibly narrowed Board together with the locations that changed.
+ * It has no changing internal state: everything it knows is on the Board.
+ * <p>
+ * The classic Sudoku rules are the 27 ValueCellBijectionConstraints. Variants add more,
+ * e.g. RegionAllDifferentConstraint for diagonals and jigsaw regions and SumCageConstraint
+ * for killer cages.
+ */
+
+public interface Constraint {
+
+    class UpdateResult {
+
+        public final Board board;
+        public final LocationSet changedLocs; // in ordinal order
+
+        public UpdateResult(Board board, LocationSet changedLocs) {
+            this.board = board;
+            this.changedLocs = changedLocs;
+        }
+
+    }
+
+    /**
+     * A change to the domain of a cell, as seen by the constraints monitoring it. A change is of
+     * one or more kinds:
+     * <p>
+     * - removed: one or more values were removed (true of every change)
+     * - smallDomain: the domain shrank to SMALL_DOMAIN values or fewer, from more
+     * - fixed: the domain shrank to a single value
+     */
+
+    class DomainChange {
+
+        public enum Kind {removed, smallDomain, fixed}
+
+        public final static int SMALL_DOMAIN = 2;
+
+        public final Location loc;
+        public final int before; // domain bits
+        public final int after; // domain bits
+
+        public DomainChange(Location loc, int before, int after) {
+            this.loc = loc;
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * The values removed, as domain bits.
+         */
+
+        public int getRemovedBits() {
+            return before & ~after;
+        }
+
+        public boolean is(Kind kind) {
+            return switch (kind) {
+                case removed -> getRemovedBits() != 0;
+                case smallDomain -> Integer.bitCount(after) <= SMALL_DOMAIN && Integer.bitCount(before) > SMALL_DOMAIN;
+                case fixed -> Integer.bitCount(after) == 1 && Integer.bitCount(before) > 1;
+            };
+        }
+
+        /**
+         * Whether this change is of any of the given kinds.
+         */
+
+        public boolean isAnyOf(Set<Kind> kinds) {
+            for (Kind kind : kinds) {
+                if (is(kind)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public String toString() {
+            return loc + ": " + Integer.toBinaryString(before) + " -> " + Integer.toBinaryString(after);
+        }
+    }
+
+    Set<DomainChange.Kind> ALL_KINDS = EnumSet.allOf(DomainChange.Kind.class);
+
+    /**
+     * How much work an update is, relative to the others. ActiveConstraints runs the expensive
+     * constraints only once the cheap ones have nothing left to do.
+     */
+
+    enum Cost {
+        cheap, // e.g. looking for naked and hidden singles in a unit
+        expensive // reasoning beyond singles, e.g. locked candidates or the combinations of a sum cage
+    }
+
+    /**
+     * The locations under this constraint's purview. A change to any of them activates the constraint.
+     */
+
+    Collection<Location> getMonitoredLocations();
+
+    /**
+     * Narrow the domains of the monitored cells as far as this constraint can by itself.
+     * Throws an exception if this implies an empty domain on some cell.
+     */
+
+    UpdateResult update(Board board) throws EmptyDomainException;
+
+    /**
+     * Whether the constraint must be run once at the start, even if none of its cells has been set.
+     * The all-different constraints cannot deduce anything from a board without fixed cells, but
+     * e.g. a sum cage can.
+     */
+
+    default boolean isActiveInitially() {
+        return false;
+    }
+
+    default Cost getCost() {
+        return Cost.cheap;
+    }
+
+    /**
+     * The kinds of DomainChange to a monitored cell that activate this constraint. A change of
+     * other kinds cannot lead to a new narrowing, so the constraint is not run for it.
+     */
+
+    default Set<DomainChange.Kind> getSubscribedKinds() {
+        return ALL_KINDS;
+    }
+
+    /**
+     * A finer filter than getSubscribedKinds(): whether "change" (of a subscribed kind), which
+     * led to "board", may let this constraint narrow something. Only called if the constraint is
+     * not active already, i.e. if it had found nothing more to narrow before "change". It must not
+     * return false if an update could narrow something.
+     */
+
+    default boolean isWokenBy(DomainChange change, Board board) {
+        return true;
+    }
+
+    /*
+     * Check that "Board" is a solution according to this constraint. Throws if not.
+     */
+
+    void throwIfNotfulfillsSolutionCriterium(Board board);
+
+}
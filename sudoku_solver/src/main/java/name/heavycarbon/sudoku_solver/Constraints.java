@@ -14,60 +14,104 @@ import name.heavycarbon.sudoku_solver.ValueCellBijectionConstraint.Type;
  * <p>
  * That's 27 constraints.
  * <p>
- * The 27 constraints have no changing internal state and are created once and put into
+ * Variants can leave out the blocks (e.g. jigsaw puzzles, which have irregular regions instead)
+ * and add any other Constraints (regions, diagonals, sum cages).
+ * <p>
+ * Optionally, the 54 LockedCandidatesConstraints over the intersections of the blocks with the
+ * rows and columns can be added. They do not change the solutions, but deduce more, so that the
+ * search needs fewer nodes.
+ * <p>
+ * The constraints have no changing internal state and are created once and put into
  * static lookup maps.
  */
 
 public class Constraints {
 
-    private final Map<Location, List<ValueCellBijectionConstraint>> constraintByMonitoredLocation; // immutable
-    private final List<ValueCellBijectionConstraint> allConstraints; // immutable
+    private final LocationMap<List<Constraint>> constraintByMonitoredLocation; // not modified once constructed
+    private final List<Constraint> allConstraints; // immutable
+    private final List<ValueCellBijectionConstraint> units; // immutable, the rows, columns and blocks among "allConstraints"
+    private final Map<Constraint, Integer> indexByConstraint; // immutable, the position in "allConstraints"
 
     /**
      * Construction is a bit expensive, but there will be just a single instance of this class
      */
 
     public Constraints() {
-        Map<Location, List<ValueCellBijectionConstraint>> tmpMap = new HashMap<>();
-        List<ValueCellBijectionConstraint> tmpAll = new LinkedList<>();
+        this(true, Collections.emptyList());
+    }
+
+    /**
+     * The classic 27 constraints and the 54 LockedCandidatesConstraints.
+     */
+
+    public static Constraints withLockedCandidates() {
+        return new Constraints(true, true, Collections.emptyList());
+    }
+
+    /**
+     * Constraints for a variant: the rows, the columns, the blocks if "withBlocks", and "additional".
+     */
+
+    public Constraints(boolean withBlocks, List<? extends Constraint> additional) {
+        this(withBlocks, false, additional);
+    }
+
+    /**
+     * Constraints for a variant, with the LockedCandidatesConstraints if "withLockedCandidates",
+     * which needs "withBlocks".
+     */
+
+    public Constraints(boolean withBlocks, boolean withLockedCandidates, List<? extends Constraint> additional) {
+        if (withLockedCandidates && !withBlocks) {
+            throw new IllegalArgumentException("Locked candidates need the blocks");
+        }
+        LocationMap<List<Constraint>> tmpMap = new LocationMap<>();
+        List<ValueCellBijectionConstraint> tmpUnits = new LinkedList<>();
         for (int col0 = 0; col0 < Board.COUNT; col0++) {
-            List<Location> locs = getLocationsOfCol(col0);
-            ValueCellBijectionConstraint c = new ValueCellBijectionConstraint(locs, Type.col, col0);
-            addConstraintByItsMonitoredLocations(locs, c, tmpMap);
-            tmpAll.add(c);
+            tmpUnits.add(new ValueCellBijectionConstraint(getLocationsOfCol(col0), Type.col, col0));
         }
         for (int row0 = 0; row0 < Board.COUNT; row0++) {
-            List<Location> locs = getLocationsOfRow(row0);
-            ValueCellBijectionConstraint c = new ValueCellBijectionConstraint(locs, Type.row, row0);
-            addConstraintByItsMonitoredLocations(locs, c, tmpMap);
-            tmpAll.add(c);
+            tmpUnits.add(new ValueCellBijectionConstraint(getLocationsOfRow(row0), Type.row, row0));
         }
-        for (int block0 = 0; block0 < Board.COUNT; block0++) {
-            List<Location> locs = getLocationsOfBlock(block0);
-            ValueCellBijectionConstraint c = new ValueCellBijectionConstraint(locs, Type.block, block0);
-            addConstraintByItsMonitoredLocations(locs, c, tmpMap);
-            tmpAll.add(c);
+        if (withBlocks) {
+            for (int block0 = 0; block0 < Board.COUNT; block0++) {
+                tmpUnits.add(new ValueCellBijectionConstraint(getLocationsOfBlock(block0), Type.block, block0));
+            }
+        }
+        List<Constraint> tmpAll = new LinkedList<>(tmpUnits);
+        if (withLockedCandidates) {
+            tmpAll.addAll(LockedCandidatesConstraint.all());
+        }
+        tmpAll.addAll(additional);
+        for (Constraint c : tmpAll) {
+            addConstraintByItsMonitoredLocations(c.getMonitoredLocations(), c, tmpMap);
         }
         this.constraintByMonitoredLocation = makeImmutable(tmpMap);
         this.allConstraints = Collections.unmodifiableList(tmpAll);
+        this.units = Collections.unmodifiableList(tmpUnits);
+        Map<Constraint, Integer> tmpIndexes = new IdentityHashMap<>();
+        for (Constraint c : tmpAll) {
+            tmpIndexes.put(c, tmpIndexes.size());
+        }
+        this.indexByConstraint = Collections.unmodifiableMap(tmpIndexes);
     }
 
-    private static Map<Location, List<ValueCellBijectionConstraint>> makeImmutable(Map<Location, List<ValueCellBijectionConstraint>> map) {
-        Map<Location, List<ValueCellBijectionConstraint>> res = new HashMap<>();
-        for (Entry<Location, List<ValueCellBijectionConstraint>> e : map.entrySet()) {
-            res.put(e.getKey(), Collections.unmodifiableList(e.getValue()));
+    private static LocationMap<List<Constraint>> makeImmutable(LocationMap<List<Constraint>> map) {
+        LocationMap<List<Constraint>> res = new LocationMap<>();
+        for (Entry<Location, List<Constraint>> e : map.entrySet()) {
+            res.put(e.getKey(), List.copyOf(e.getValue())); // immutable, and array-backed for iteration
         }
-        return Collections.unmodifiableMap(res);
+        return res;
     }
 
-    private static void addConstraintByLocation(Location loc, ValueCellBijectionConstraint c, Map<Location, List<ValueCellBijectionConstraint>> map) {
+    private static void addConstraintByLocation(Location loc, Constraint c, LocationMap<List<Constraint>> map) {
         if (!map.containsKey(loc)) {
             map.put(loc, new LinkedList<>());
         }
         map.get(loc).add(c);
     }
 
-    private static void addConstraintByItsMonitoredLocations(List<Location> locs, ValueCellBijectionConstraint c, Map<Location, List<ValueCellBijectionConstraint>> map) {
+    private static void addConstraintByItsMonitoredLocations(Collection<Location> locs, Constraint c, LocationMap<List<Constraint>> map) {
         for (Location loc : locs) {
             addConstraintByLocation(loc, c, map);
         }
@@ -101,8 +145,28 @@ public class Constraints {
         return res;
     }
 
-    public final List<ValueCellBijectionConstraint> getConstraintMonitoringThisLocation(Location loc) {
-        return constraintByMonitoredLocation.get(loc);
+    public final List<Constraint> getConstraintMonitoringThisLocation(Location loc) {
+        return constraintByMonitoredLocation.getOrDefault(loc, Collections.emptyList());
+    }
+
+    public final List<Constraint> getAllConstraints() {
+        return allConstraints;
+    }
+
+    /**
+     * The position of "c" in getAllConstraints(), or -1 if it is not one of these constraints.
+     */
+
+    public final int indexOf(Constraint c) {
+        return indexByConstraint.getOrDefault(c, -1);
+    }
+
+    /**
+     * The rows, columns and (unless left out) blocks.
+     */
+
+    public final List<ValueCellBijectionConstraint> getUnits() {
+        return units;
     }
 
     /*
@@ -111,7 +175,7 @@ public class Constraints {
      */
 
     public void throwIfNotFulfillsSolutionCriterium(Board board) {
-        for (ValueCellBijectionConstraint cos : allConstraints) {
+        for (Constraint cos : allConstraints) {
             cos.throwIfNotfulfillsSolutionCriterium(board);
         }
     }
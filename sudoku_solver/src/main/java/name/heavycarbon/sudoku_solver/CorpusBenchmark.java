@@ -0,0 +1,454 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A throughput and latency regression harness, solving fixed corpora of puzzles with several
+ * engines and comparing the figures to those of an earlier run:
+ * <p>
+ * CorpusBenchmark [options] corpus-file ...
+ * <p>
+ * A corpus file has one 81-char puzzle per line (see PuzzleFormat); blank lines and lines starting
+ * with '#' are skipped. The name of a corpus is that of its file without ".txt". The corpora used
+ * by the tests are in "src/test/resources/corpora".
+ * <p>
+ * Options:
+ * <p>
+ * --engines=a,b,...        engines to run, out of those in Engine (default: all)
+ * --warmup=N               rounds over each corpus before measuring (default: 3)
+ * --rounds=N               rounds measured (default: 10)
+ * --baseline=file          compare to the figures in "file", failing on regressions
+ * --write-baseline=file    write the figures of this run to "file"
+ * --time-tolerance=X       allowed relative loss of throughput and latency (default: 0.25)
+ * --count-tolerance=X      allowed relative increase of nodes and allocation (default: 0.10)
+ * <p>
+ * For every corpus and engine, writes to stdout the puzzles solved per second, the 50th, 99th and
+ * 99.9th percentiles of the latency of a single puzzle, the search nodes and the bytes allocated
+ * per puzzle, and the allocation rate. The baseline file holds the same figures as properties
+ * named "corpus.engine.metric".
+ * <p>
+ * Before measuring, each engine solves each puzzle once, and the solution is checked with
+ * Constraints.throwIfNotFulfillsSolutionCriterium() and against the clues. For puzzles with a
+ * unique solution, all engines must also find the same one; puzzles with several solutions are
+ * only checked to be solved.
+ * <p>
+ * Throughput and latency depend on the machine, so a baseline for them is only good on the machine
+ * that wrote it. Nodes are exact, and allocation nearly so, on any machine.
+ */
+
+public class CorpusBenchmark {
+
+    /**
+     * The ways of solving a puzzle that are measured.
+     */
+
+    public enum Engine {
+
+        sudoku, // Sudoku.solve() with the classic constraints, deterministic search
+        locked, // the same, with Constraints.withLockedCandidates()
+        restarting, // the classic constraints, with a restarting search (Luby, unit 64, seed 1)
+        solver // the allocation-free Solver
+    }
+
+    /**
+     * The figures measured for a corpus and engine, in the order of the report. Those that are
+     * "higherIsBetter" regress when they fall, the others when they rise. Those that are "timed"
+     * are compared with the time tolerance, the others with the count tolerance; the allocation
+     * rate is not compared at all, as it rises when the engine gets faster.
+     */
+
+    public enum Metric {
+
+        puzzlesPerSecond(true, true),
+        p50Micros(false, true),
+        p99Micros(false, true),
+        p999Micros(false, true),
+        nodesPerPuzzle(false, false),
+        bytesPerPuzzle(false, false),
+        allocationMBPerSecond(false, false);
+
+        final boolean higherIsBetter;
+        final boolean timed;
+
+        Metric(boolean higherIsBetter, boolean timed) {
+            this.higherIsBetter = higherIsBetter;
+            this.timed = timed;
+        }
+    }
+
+    /**
+     * A puzzle of a corpus, with what the cross-check found out about it.
+     */
+
+    private static class Puzzle {
+
+        final String line;
+        final List<Setting> settings;
+        boolean unique;
+        String solution; // the one found by the first engine, if unique
+
+        Puzzle(String line) {
+            this.line = line;
+            this.settings = PuzzleFormat.parse(line);
+        }
+    }
+
+    private final static Constraints CLASSIC = new Constraints();
+    private final static Constraints LOCKED = Constraints.withLockedCandidates();
+
+    private final List<Engine> engines = new ArrayList<>(List.of(Engine.values()));
+    private int warmup = 3;
+    private int rounds = 10;
+    private String baselineFile;
+    private String writeBaselineFile;
+    private double timeTolerance = 0.25;
+    private double countTolerance = 0.10;
+    private final List<String> files = new ArrayList<>();
+
+    private final Solver solver = new Solver(); // confined to the calling thread
+    private final com.sun.management.ThreadMXBean mx = (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean tmx && tmx.isThreadAllocatedMemorySupported()) ? tmx : null;
+
+    private CorpusBenchmark() {
+    }
+
+    private static double parseTolerance(String option, String value) {
+        try {
+            double res = Double.parseDouble(value);
+            if (res >= 0) {
+                return res;
+            }
+        } catch (NumberFormatException ex) {
+            // fall through
+        }
+        throw new IllegalArgumentException("Option " + option + " needs a number of at least 0, not '" + value + "'");
+    }
+
+    private static CorpusBenchmark fromArguments(String[] argv) {
+        CorpusBenchmark b = new CorpusBenchmark();
+        for (String arg : argv) {
+            if (arg.startsWith("--engines=")) {
+                b.engines.clear();
+                for (String name : arg.substring("--engines=".length()).split(",")) {
+                    try {
+                        b.engines.add(Engine.valueOf(name));
+                    } catch (IllegalArgumentException ex) {
+                        throw new IllegalArgumentException("Unknown engine '" + name + "', expected one of " + Arrays.toString(Engine.values()));
+                    }
+                }
+            } else if (arg.startsWith("--warmup=")) {
+                b.warmup = SolverPipeline.parsePositive("--warmup", arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--rounds=")) {
+                b.rounds = SolverPipeline.parsePositive("--rounds", arg.substring("--rounds=".length()));
+            } else if (arg.startsWith("--baseline=")) {
+                b.baselineFile = arg.substring("--baseline=".length());
+            } else if (arg.startsWith("--write-baseline=")) {
+                b.writeBaselineFile = arg.substring("--write-baseline=".length());
+            } else if (arg.startsWith("--time-tolerance=")) {
+                b.timeTolerance = parseTolerance("--time-tolerance", arg.substring("--time-tolerance=".length()));
+            } else if (arg.startsWith("--count-tolerance=")) {
+                b.countTolerance = parseTolerance("--count-tolerance", arg.substring("--count-tolerance=".length()));
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                b.files.add(arg);
+            }
+        }
+        if (b.files.isEmpty()) {
+            throw new IllegalArgumentException("No corpus given");
+        }
+        return b;
+    }
+
+    private static String corpusName(String file) {
+        String name = Path.of(file).getFileName().toString();
+        return name.endsWith(".txt") ? name.substring(0, name.length() - ".txt".length()) : name;
+    }
+
+    private static List<Puzzle> readCorpus(String file) throws IOException {
+        List<Puzzle> res = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(file), StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = PuzzleFormat.readPuzzleLine(reader)) != null) {
+                try {
+                    res.add(new Puzzle(line));
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException("Bad puzzle in " + file + ": " + ex.getMessage(), ex);
+                }
+            }
+        }
+        return res;
+    }
+
+    // ---
+    // Solving
+    // ---
+
+    /**
+     * Solve "puzzle" with "engine". Returns the number of search nodes. If "solution" is not null,
+     * the solution is stored into its first element, which allocates.
+     */
+
+    private long solve(Engine engine, Puzzle puzzle, Board[] solution) throws EmptyDomainException {
+        if (engine == Engine.solver) {
+            long before = solver.getNodes();
+            if (!solver.solve(puzzle.settings)) {
+                throw new EmptyDomainException();
+            }
+            if (solution != null) {
+                solution[0] = solver.toBoard();
+            }
+            return solver.getNodes() - before;
+        }
+        SearchContext ctx = (engine == Engine.restarting)
+                ? SearchContext.restarting(SearchContext.Schedule.luby, 64, 1)
+                : SearchContext.deterministic();
+        Board board = Sudoku.solve(puzzle.settings, (engine == Engine.locked) ? LOCKED : CLASSIC, ctx);
+        if (solution != null) {
+            solution[0] = board;
+        }
+        return ctx.getTotalNodes();
+    }
+
+    /**
+     * Solve every puzzle of the corpus once with every engine and check the solutions. Returns a
+     * description of the first problem found, or null if there is none.
+     */
+
+    private String crossCheck(String corpus, List<Puzzle> puzzles) {
+        for (Puzzle p : puzzles) {
+            // at most 2 solutions are searched for, there may be very many
+            p.unique = SolutionSpliterator.stream(p.settings, CLASSIC, false).limit(2).count() == 1;
+            p.solution = null;
+        }
+        Board[] solution = new Board[1];
+        for (Engine engine : engines) {
+            for (Puzzle p : puzzles) {
+                String where = corpus + ", engine " + engine + ", puzzle " + p.line + ": ";
+                try {
+                    solve(engine, p, solution);
+                    CLASSIC.throwIfNotFulfillsSolutionCriterium(solution[0]);
+                } catch (EmptyDomainException ex) {
+                    return where + "no solution found";
+                } catch (IllegalStateException ex) {
+                    return where + ex.getMessage();
+                }
+                for (Setting s : p.settings) {
+                    if (!solution[0].board.get(Location.obtain1(s.row1, s.col1)).domainContains(s.v)) {
+                        return where + "the solution does not keep the clue " + s;
+                    }
+                }
+                String found = PuzzleFormat.format(solution[0]);
+                if (p.unique) {
+                    if (p.solution == null) {
+                        p.solution = found;
+                    } else if (!p.solution.equals(found)) {
+                        return where + "found " + found + " instead of the unique solution " + p.solution;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Measure "engine" on the corpus, whose puzzles are all solvable.
+     */
+
+    private Map<Metric, Double> measure(Engine engine, List<Puzzle> puzzles) throws EmptyDomainException {
+        for (int r = 0; r < warmup; r++) {
+            for (Puzzle p : puzzles) {
+                solve(engine, p, null);
+            }
+        }
+        int count = rounds * puzzles.size();
+        long[] latencies = new long[count];
+        long nodes = 0;
+        int i = 0;
+        long allocatedBefore = (mx != null) ? mx.getCurrentThreadAllocatedBytes() : 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (Puzzle p : puzzles) {
+                long t0 = System.nanoTime();
+                nodes += solve(engine, p, null);
+                latencies[i++] = System.nanoTime() - t0;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = (mx != null) ? mx.getCurrentThreadAllocatedBytes() - allocatedBefore : -1;
+        Arrays.sort(latencies);
+        double seconds = elapsed / 1e9;
+        Map<Metric, Double> res = new LinkedHashMap<>();
+        res.put(Metric.puzzlesPerSecond, count / seconds);
+        res.put(Metric.p50Micros, percentile(latencies, 0.50) / 1e3);
+        res.put(Metric.p99Micros, percentile(latencies, 0.99) / 1e3);
+        res.put(Metric.p999Micros, percentile(latencies, 0.999) / 1e3);
+        res.put(Metric.nodesPerPuzzle, (double) nodes / count);
+        if (allocated >= 0) {
+            res.put(Metric.bytesPerPuzzle, (double) allocated / count);
+            res.put(Metric.allocationMBPerSecond, allocated / 1e6 / seconds);
+        }
+        return res;
+    }
+
+    /**
+     * The smallest of the sorted "values" that is at least as large as the fraction "p" of them.
+     */
+
+    static long percentile(long[] values, double p) {
+        int rank = (int) Math.ceil(p * values.length);
+        return values[Math.max(0, Math.min(values.length, rank) - 1)];
+    }
+
+    // ---
+    // Baseline
+    // ---
+
+    private static String key(String corpus, Engine engine, Metric metric) {
+        return corpus + "." + engine + "." + metric;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    private void writeBaseline(Map<String, Double> figures) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(Path.of(writeBaselineFile), StandardCharsets.US_ASCII)) {
+            writer.write("# Written by CorpusBenchmark (" + warmup + " warm-up rounds, " + rounds + " rounds), as corpus.engine.metric=value.\n");
+            writer.write("# Throughput and latency only hold on the machine that wrote this; nodes and allocation hold anywhere.\n");
+            for (Map.Entry<String, Double> e : new TreeMap<>(figures).entrySet()) {
+                writer.write(e.getKey() + "=" + format(e.getValue()) + "\n");
+            }
+        }
+    }
+
+    /**
+     * Compare "figures" to the baseline, writing a line to "stderr" for each regression. Figures
+     * without a counterpart in the baseline are not compared. Returns the number of regressions.
+     */
+
+    private int compare(Map<String, Double> figures, Properties baseline, PrintStream stderr) {
+        int regressions = 0;
+        for (Map.Entry<String, Double> e : new TreeMap<>(figures).entrySet()) {
+            String metricName = e.getKey().substring(e.getKey().lastIndexOf('.') + 1);
+            Metric metric = Metric.valueOf(metricName);
+            String old = baseline.getProperty(e.getKey());
+            if (old == null || metric == Metric.allocationMBPerSecond) {
+                continue;
+            }
+            double base = Double.parseDouble(old);
+            double now = e.getValue();
+            double tolerance = metric.timed ? timeTolerance : countTolerance;
+            // "tolerance" 0.25 allows a quarter more of the bad direction: 1.25 times the latency or nodes, 1/1.25 the throughput
+            boolean worse = metric.higherIsBetter ? now * (1 + tolerance) < base : now > base * (1 + tolerance);
+            if (worse) {
+                stderr.printf(Locale.ROOT, "Regression: %s is %s, the baseline is %s (tolerance %.2f)%n", e.getKey(), format(now), format(base), tolerance);
+                regressions++;
+            }
+        }
+        return regressions;
+    }
+
+    // ---
+    // Running
+    // ---
+
+    /**
+     * Run the benchmark, writing the report to "stdout". Returns the exit status: 0 if all went
+     * well, 1 if a file could not be read or written or a solution is wrong, 2 for bad arguments,
+     * 3 if a figure is worse than the baseline allows.
+     */
+
+    public static int run(String[] argv, PrintStream stdout, PrintStream stderr) {
+        CorpusBenchmark b;
+        try {
+            b = fromArguments(argv);
+        } catch (IllegalArgumentException ex) {
+            stderr.println(ex.getMessage());
+            stderr.println("Usage: CorpusBenchmark [--engines=a,b,...] [--warmup=N] [--rounds=N] [--baseline=file] [--write-baseline=file] [--time-tolerance=X] [--count-tolerance=X] corpus-file ...");
+            return 2;
+        }
+        return b.run(stdout, stderr);
+    }
+
+    private int run(PrintStream stdout, PrintStream stderr) {
+        Properties baseline = null;
+        Map<String, List<Puzzle>> corpora = new LinkedHashMap<>();
+        try {
+            if (baselineFile != null) {
+                baseline = new Properties();
+                try (InputStream in = Files.newInputStream(Path.of(baselineFile))) {
+                    baseline.load(in);
+                }
+            }
+            for (String file : files) {
+                corpora.put(corpusName(file), readCorpus(file));
+            }
+        } catch (IOException ex) {
+            stderr.println("Cannot read input: " + ex.getMessage());
+            return 1;
+        }
+        boolean printing = Printing.isEnabled();
+        Printing.setEnabled(false);
+        Map<String, Double> figures = new HashMap<>();
+        try {
+            stdout.printf("%-12s %-12s %12s %10s %10s %10s %12s %12s %10s%n",
+                    "corpus", "engine", "puzzles/s", "p50 us", "p99 us", "p99.9 us", "nodes/puzzle", "bytes/puzzle", "MB/s");
+            for (Map.Entry<String, List<Puzzle>> c : corpora.entrySet()) {
+                String problem = crossCheck(c.getKey(), c.getValue());
+                if (problem != null) {
+                    stderr.println("Cross-check failed for corpus " + problem);
+                    return 1;
+                }
+                for (Engine engine : engines) {
+                    Map<Metric, Double> m = measure(engine, c.getValue());
+                    m.forEach((metric, value) -> figures.put(key(c.getKey(), engine, metric), value));
+                    stdout.printf(Locale.ROOT, "%-12s %-12s %12.0f %10.1f %10.1f %10.1f %12.1f %12.0f %10.1f%n",
+                            c.getKey(), engine, m.get(Metric.puzzlesPerSecond),
+                            m.get(Metric.p50Micros), m.get(Metric.p99Micros), m.get(Metric.p999Micros),
+                            m.get(Metric.nodesPerPuzzle),
+                            m.getOrDefault(Metric.bytesPerPuzzle, Double.NaN), m.getOrDefault(Metric.allocationMBPerSecond, Double.NaN));
+                }
+            }
+        } catch (EmptyDomainException ex) {
+            // the cross-check has solved all of them already
+            throw new IllegalStateException("A puzzle has become unsolvable", ex);
+        } finally {
+            Printing.setEnabled(printing);
+        }
+        stdout.flush();
+        if (writeBaselineFile != null) {
+            try {
+                writeBaseline(figures);
+            } catch (IOException ex) {
+                stderr.println("Cannot write the baseline: " + ex.getMessage());
+                return 1;
+            }
+        }
+        if (baseline != null && compare(figures, baseline, stderr) > 0) {
+            return 3;
+        }
+        return 0;
+    }
+
+    public static void main(String[] argv) {
+        System.exit(run(argv, System.out, System.err));
+    }
+
+}
@@ -0,0 +1,744 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import name.heavycarbon.sudoku_solver.SolverPipeline.Status;
+
+/**
+ * SolverPipeline spread over several JVMs (and machines), for corpora too large for one:
+ * <p>
+ * DistributedSolver coordinator [options] [file ...]
+ * DistributedSolver worker [options]
+ * <p>
+ * There is no authentication: any host that can reach the coordinator's port can take part. It
+ * listens on the loopback address unless "--bind" says otherwise.
+ * <p>
+ * The coordinator reads the puzzles as SolverPipeline does, cuts them into chunks and writes the
+ * results to stdout in input order, in the same "text" or "binary" format. Workers connect to it
+ * over TCP, and each pulls one chunk at a time, solves it with a Solver per thread and sends back
+ * the results, as records of SolverPipeline.BINARY_RECORD_SIZE bytes.
+ * <p>
+ * A worker that asks for work when no chunk is left to hand out "steals" one that another worker
+ * is still solving, the one with the fewest workers on it; whichever result comes first is kept.
+ * So a slow or stuck worker does not hold up the end of the run. A worker whose connection breaks
+ * loses its chunk, which goes back to be handed out again. The coordinator keeps at most "window"
+ * chunks read but not yet written, so its memory use does not depend on the size of the input.
+ * It ends once all results are written, sending DONE to the workers still connected; a run
+ * without workers waits for them.
+ * <p>
+ * Coordinator options:
+ * <p>
+ * --bind=ADDR          address to listen on, e.g. 0.0.0.0 for all (default: the loopback address)
+ * --port=N             port to listen on (default: 7878)
+ * --chunk=N            puzzles per chunk (default: 256)
+ * --window=N           most chunks read but not yet written (default: 64)
+ * --format=text|binary output format (default: text)
+ * --stats              write counts and throughput to stderr at the end
+ * <p>
+ * Worker options:
+ * <p>
+ * --host=H             host of the coordinator (default: localhost)
+ * --port=N             port of the coordinator (default: 7878)
+ * --threads=N          number of solving threads (default: the number of processors)
+ * --timeout-millis=N   give up on a puzzle after N ms (default: no limit)
+ * --connect-millis=N   keep trying to connect for N ms (default: 10000)
+ * <p>
+ * The protocol is a sequence of messages over a DataInput/OutputStream. The worker sends REQUEST,
+ * then gets a CHUNK or DONE. It answers a CHUNK with a RESULT, and gets a CHUNK or DONE again.
+ * CHUNK: id and count as ints, then "count" records of 1 + PuzzleFormat.PACKED_LENGTH bytes,
+ * a byte that is PUZZLE or INVALID (a line that did not parse) and the packed puzzle. RESULT:
+ * id and count, then "count" records of the binary format of SolverPipeline.
+ */
+
+public class DistributedSolver {
+
+    public final static int DEFAULT_PORT = 7878;
+    public final static int RECORD_SIZE = SolverPipeline.BINARY_RECORD_SIZE; // for chunks and results alike
+
+    // message types
+    final static byte REQUEST = 1;
+    final static byte RESULT = 2;
+    final static byte CHUNK = 3;
+    final static byte DONE = 4;
+
+    // the first byte of a chunk record
+    private final static byte PUZZLE = 0;
+    private final static byte INVALID = 1;
+
+    private final static String USAGE = "Usage: DistributedSolver coordinator [--bind=ADDR] [--port=N] [--chunk=N] [--window=N] [--format=text|binary] [--stats] [file ...]\n"
+            + "       DistributedSolver worker [--host=H] [--port=N] [--threads=N] [--timeout-millis=N] [--connect-millis=N]";
+
+    // ---
+    // Coordinator
+    // ---
+
+    /**
+     * Puzzles handed out together. The coordinator creates it from the input, a worker's RESULT
+     * completes it.
+     */
+
+    private static class Chunk {
+
+        final int id;
+        final int count;
+        final byte[] records; // "count" chunk records
+        byte[] results; // "count" result records, null until the first worker is done
+        int assignees; // workers solving it now
+
+        Chunk(int id, int count, byte[] records) {
+            this.id = id;
+            this.count = count;
+            this.records = records;
+        }
+    }
+
+    private static class Coordinator {
+
+        private String bind; // null: the loopback address
+        private int port = DEFAULT_PORT;
+        private int chunkSize = 256;
+        private int window = 64;
+        private boolean binary = false;
+        private boolean stats = false;
+        private final List<String> files = new ArrayList<>();
+
+        // used by the reader thread only
+
+        private BufferedReader reader; // of the current file, null between files
+        private int nextFile;
+        private int nextId;
+
+        // all guarded by "this"
+
+        private final TreeMap<Integer, Chunk> open = new TreeMap<>(); // read but not yet written, by id
+        private final Deque<Chunk> fresh = new ArrayDeque<>(); // read but not yet handed out
+        private final Deque<Chunk> lost = new ArrayDeque<>(); // not done, and no worker on it any more
+        private boolean exhausted; // all the input has been read
+        private IOException readFailure;
+        private long reassigned;
+        private long stolen;
+        private int workers; // connected so far
+        private final List<DataOutputStream> connections = new ArrayList<>(); // to the workers; each also guards its messages
+
+        private final long[] counts = new long[Status.values().length]; // by the writer only
+
+        private static Coordinator fromArguments(List<String> args) {
+            Coordinator c = new Coordinator();
+            for (String arg : args) {
+                if (arg.startsWith("--bind=")) {
+                    c.bind = arg.substring("--bind=".length());
+                } else if (arg.startsWith("--port=")) {
+                    c.port = parsePort(arg.substring("--port=".length()));
+                } else if (arg.startsWith("--chunk=")) {
+                    c.chunkSize = SolverPipeline.parsePositive("--chunk", arg.substring("--chunk=".length()));
+                } else if (arg.startsWith("--window=")) {
+                    c.window = SolverPipeline.parsePositive("--window", arg.substring("--window=".length()));
+                } else if (arg.startsWith("--format=")) {
+                    String format = arg.substring("--format=".length());
+                    switch (format) {
+                        case "text" -> c.binary = false;
+                        case "binary" -> c.binary = true;
+                        default -> throw new IllegalArgumentException("Unknown format '" + format + "'");
+                    }
+                } else if (arg.equals("--stats")) {
+                    c.stats = true;
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else {
+                    c.files.add(arg);
+                }
+            }
+            if (c.files.isEmpty()) {
+                c.files.add("-");
+            }
+            return c;
+        }
+
+        /**
+         * The next puzzle line of the input, or null at its end.
+         */
+
+        private String readLine(InputStream stdin) throws IOException {
+            while (true) {
+                if (reader == null) {
+                    if (nextFile == files.size()) {
+                        return null;
+                    }
+                    String file = files.get(nextFile++);
+                    reader = new BufferedReader(file.equals("-")
+                            ? new InputStreamReader(stdin, StandardCharsets.US_ASCII)
+                            : Files.newBufferedReader(Path.of(file), StandardCharsets.US_ASCII), 1 << 16);
+                }
+                String line = PuzzleFormat.readPuzzleLine(reader);
+                if (line != null) {
+                    return line;
+                }
+                if (!files.get(nextFile - 1).equals("-")) {
+                    reader.close();
+                }
+                reader = null;
+            }
+        }
+
+        /**
+         * Read the next chunk, or return null at the end of the input. A chunk with fewer than
+         * "chunkSize" puzzles is the last one.
+         */
+
+        private Chunk readChunk(InputStream stdin) {
+            byte[] records = new byte[chunkSize * RECORD_SIZE];
+            int[] digits = new int[PuzzleFormat.LENGTH];
+            int count = 0;
+            try {
+                String line;
+                while (count < chunkSize && (line = readLine(stdin)) != null) {
+                    int off = count * RECORD_SIZE;
+                    try {
+                        PuzzleFormat.parseDigits(line, digits);
+                        records[off] = PUZZLE;
+                        PuzzleFormat.pack(digits, records, off + 1);
+                    } catch (IllegalArgumentException ex) {
+                        records[off] = INVALID;
+                    }
+                    count++;
+                }
+            } catch (IOException ex) {
+                synchronized (this) {
+                    readFailure = ex;
+                }
+            }
+            return (count == 0) ? null : new Chunk(nextId++, count, records);
+        }
+
+        /**
+         * Read all the input into chunks, putting each into "open" and "fresh" as long as there are
+         * fewer than "window" open ones. Runs on a thread of its own, so that a slow input does not
+         * hold the lock and with it everyone else.
+         */
+
+        private void readAll(InputStream stdin) {
+            try {
+                Chunk chunk;
+                do {
+                    chunk = readChunk(stdin);
+                    if (chunk == null) {
+                        break;
+                    }
+                    synchronized (this) {
+                        while (open.size() >= window) {
+                            wait(); // until the writer makes room in the window
+                        }
+                        open.put(chunk.id, chunk);
+                        fresh.add(chunk);
+                        notifyAll(); // workers may be waiting for this
+                    }
+                } while (chunk.count == chunkSize);
+            } catch (InterruptedException ex) {
+                // the run is over
+            } finally {
+                synchronized (this) {
+                    exhausted = true;
+                    notifyAll(); // the writer and workers may be waiting for this
+                }
+            }
+        }
+
+        /**
+         * The chunk for a worker asking for one, or null if there is nothing left to solve.
+         * Waits for the reader, and while the window is full of chunks that are done but not
+         * written yet.
+         */
+
+        private synchronized Chunk assign() throws InterruptedException {
+            while (true) {
+                Chunk chunk = lost.poll();
+                if (chunk != null) {
+                    if (chunk.results != null || chunk.assignees > 0) {
+                        continue; // done or stolen since
+                    }
+                    reassigned++;
+                } else if ((chunk = fresh.poll()) == null) {
+                    if (!exhausted && open.size() < window) {
+                        wait(); // until the reader has read more
+                        continue;
+                    }
+                    chunk = findChunkToSteal();
+                    if (chunk != null) {
+                        stolen++;
+                    } else if (exhausted) {
+                        return null;
+                    } else {
+                        wait(); // until the writer makes room in the window
+                        continue;
+                    }
+                }
+                chunk.assignees++;
+                return chunk;
+            }
+        }
+
+        /**
+         * The chunk not yet done with the fewest workers on it, the first one if there are several.
+         * Called with the lock held.
+         */
+
+        private Chunk findChunkToSteal() {
+            Chunk best = null;
+            for (Chunk chunk : open.values()) {
+                if (chunk.results == null && (best == null || chunk.assignees < best.assignees)) {
+                    best = chunk;
+                }
+            }
+            return best;
+        }
+
+        private synchronized void complete(Chunk chunk, byte[] results) {
+            chunk.assignees--;
+            if (chunk.results == null) {
+                chunk.results = results;
+                notifyAll();
+            }
+        }
+
+        /**
+         * The worker solving "chunk" is gone.
+         */
+
+        private synchronized void abandon(Chunk chunk) {
+            chunk.assignees--;
+            if (chunk.results == null && chunk.assignees == 0) {
+                lost.add(chunk);
+                notifyAll(); // workers may be waiting for work
+            }
+        }
+
+        /**
+         * The next chunk to write, once it is done; null once all have been written.
+         */
+
+        private synchronized Chunk takeNextDone() throws InterruptedException {
+            while (true) {
+                Map.Entry<Integer, Chunk> first = open.firstEntry();
+                if (first == null && exhausted) {
+                    return null;
+                }
+                if (first != null && first.getValue().results != null) {
+                    open.pollFirstEntry();
+                    notifyAll(); // room in the window
+                    return first.getValue();
+                }
+                wait();
+            }
+        }
+
+        /**
+         * Serve one worker until it disconnects or there is nothing left for it.
+         */
+
+        private void serve(Socket socket) {
+            Chunk current = null;
+            DataOutputStream out = null;
+            try (socket) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                synchronized (this) {
+                    connections.add(out);
+                }
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == RESULT) {
+                        int id = in.readInt();
+                        int count = in.readInt();
+                        if (current == null || id != current.id || count != current.count) {
+                            throw new IOException("Result for chunk " + id + " of " + count + " puzzles does not match what was sent");
+                        }
+                        byte[] results = new byte[count * RECORD_SIZE];
+                        in.readFully(results);
+                        checkResults(current, results); // throws, so the chunk is handed out again
+                        complete(current, results);
+                        current = null;
+                    } else if (type != REQUEST) {
+                        throw new IOException("Unexpected message type " + type);
+                    }
+                    current = assign();
+                    synchronized (out) {
+                        if (current == null) {
+                            out.writeByte(DONE);
+                            out.flush();
+                            return;
+                        }
+                        out.writeByte(CHUNK);
+                        out.writeInt(current.id);
+                        out.writeInt(current.count);
+                        out.write(current.records, 0, current.count * RECORD_SIZE);
+                        out.flush();
+                    }
+                }
+            } catch (IOException ex) {
+                // the worker is gone, or misbehaved
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (current != null) {
+                    abandon(current);
+                }
+                synchronized (this) {
+                    connections.remove(out);
+                }
+            }
+        }
+
+        /**
+         * Throw if "results" are not what a worker may send for "chunk": a status for each puzzle,
+         * "invalid" for those that did not parse, and a solution of the puzzle for "solved", or
+         * zeros otherwise.
+         */
+
+        private static void checkResults(Chunk chunk, byte[] results) throws IOException {
+            int[] puzzle = new int[PuzzleFormat.LENGTH];
+            int[] solution = new int[PuzzleFormat.LENGTH];
+            for (int i = 0; i < chunk.count; i++) {
+                int off = i * RECORD_SIZE;
+                int status = results[off];
+                if (status < 0 || status >= Status.values().length) {
+                    throw new IOException("Bad status " + status + " for puzzle " + i + " of chunk " + chunk.id);
+                }
+                if (chunk.records[off] == INVALID && status != Status.invalid.ordinal()) {
+                    throw new IOException("Status " + Status.fromOrdinal(status) + " for the invalid puzzle " + i + " of chunk " + chunk.id);
+                }
+                if (status == Status.solved.ordinal()) {
+                    PuzzleFormat.unpack(chunk.records, off + 1, puzzle);
+                    PuzzleFormat.unpack(results, off + 1, solution);
+                    if (!PuzzleFormat.isSolution(puzzle, solution)) {
+                        throw new IOException("Wrong solution for puzzle " + i + " of chunk " + chunk.id);
+                    }
+                } else {
+                    for (int j = off + 1; j < off + RECORD_SIZE; j++) {
+                        if (results[j] != 0) {
+                            throw new IOException("A solution without status 'solved' for puzzle " + i + " of chunk " + chunk.id);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void acceptAll(ServerSocket server) {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    synchronized (this) {
+                        workers++;
+                    }
+                    Thread.ofPlatform().name("coordinator-" + socket.getRemoteSocketAddress()).daemon().start(() -> serve(socket));
+                }
+            } catch (IOException ex) {
+                // closed at the end of the run
+            }
+        }
+
+        /**
+         * Tell the workers still connected, which are solving chunks that others have done already,
+         * that the run is over.
+         */
+
+        private void sendDoneToAll() {
+            List<DataOutputStream> outs;
+            synchronized (this) {
+                outs = new ArrayList<>(connections);
+            }
+            for (DataOutputStream out : outs) {
+                synchronized (out) {
+                    try {
+                        out.writeByte(DONE);
+                        out.flush();
+                    } catch (IOException ex) {
+                        // that worker is gone already
+                    }
+                }
+            }
+        }
+
+        private void write(Chunk chunk, OutputStream out, byte[] line, int[] solution) throws IOException {
+            for (int i = 0; i < chunk.count; i++) {
+                counts[SolverPipeline.writeResult(chunk.results, i * RECORD_SIZE, binary, out, line, solution).ordinal()]++;
+            }
+        }
+
+        private int run(ServerSocket server, InputStream stdin, OutputStream stdout, PrintStream stderr) throws InterruptedException {
+            long start = System.nanoTime();
+            // the reader may be stuck in a read from stdin at the end, so it is a daemon that is not waited for
+            Thread reader = Thread.ofPlatform().name("coordinator-reader").daemon().start(() -> readAll(stdin));
+            Thread acceptor = Thread.ofPlatform().name("coordinator-accept").daemon().start(() -> acceptAll(server));
+            OutputStream out = new BufferedOutputStream(stdout, 1 << 16);
+            byte[] line = new byte[PuzzleFormat.LENGTH + 1];
+            int[] solution = new int[PuzzleFormat.LENGTH];
+            try {
+                Chunk chunk;
+                while ((chunk = takeNextDone()) != null) {
+                    write(chunk, out, line, solution);
+                }
+                out.flush();
+            } catch (IOException ex) {
+                stderr.println("Cannot write results: " + ex.getMessage());
+                return 1;
+            } finally {
+                reader.interrupt();
+                sendDoneToAll();
+                try {
+                    server.close(); // stops the acceptor
+                } catch (IOException ex) {
+                    // nothing to do
+                }
+                acceptor.join();
+            }
+            if (stats) {
+                long total = 0;
+                for (long c : counts) {
+                    total += c;
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                for (Status s : Status.values()) {
+                    stderr.println(s + ": " + counts[s.ordinal()]);
+                }
+                synchronized (this) {
+                    stderr.printf("%d puzzles in %.3f s, %.0f puzzles/s, %d chunks, %d workers, %d chunks reassigned, %d stolen%n",
+                            total, seconds, total / seconds, nextId, workers, reassigned, stolen);
+                }
+            }
+            synchronized (this) {
+                if (readFailure != null) {
+                    stderr.println("Cannot read input: " + readFailure.getMessage());
+                    return 1;
+                }
+            }
+            return 0;
+        }
+    }
+
+    // ---
+    // Worker
+    // ---
+
+    private static class Worker {
+
+        private String host = "localhost";
+        private int port = DEFAULT_PORT;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private long timeoutMillis = 0;
+        private long connectMillis = 10_000;
+
+        private static Worker fromArguments(List<String> args) {
+            Worker w = new Worker();
+            for (String arg : args) {
+                if (arg.startsWith("--host=")) {
+                    w.host = arg.substring("--host=".length());
+                } else if (arg.startsWith("--port=")) {
+                    w.port = parsePort(arg.substring("--port=".length()));
+                } else if (arg.startsWith("--threads=")) {
+                    w.threads = SolverPipeline.parsePositive("--threads", arg.substring("--threads=".length()));
+                } else if (arg.startsWith("--timeout-millis=")) {
+                    w.timeoutMillis = SolverPipeline.parsePositive("--timeout-millis", arg.substring("--timeout-millis=".length()));
+                } else if (arg.startsWith("--connect-millis=")) {
+                    w.connectMillis = SolverPipeline.parsePositive("--connect-millis", arg.substring("--connect-millis=".length()));
+                } else {
+                    throw new IllegalArgumentException("Unknown worker argument " + arg);
+                }
+            }
+            return w;
+        }
+
+        /**
+         * Connect, retrying until "connectMillis" have passed, as the coordinator may not be up yet.
+         */
+
+        private Socket connect() throws IOException, InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectMillis);
+            while (true) {
+                try {
+                    return new Socket(host, port);
+                } catch (IOException ex) {
+                    if (System.nanoTime() - deadline > 0) {
+                        throw ex;
+                    }
+                    Thread.sleep(100);
+                }
+            }
+        }
+
+        /**
+         * Solve the records "from", "from + stride", ... of "records" into "results".
+         */
+
+        private static void solveStripe(Solver solver, byte[] records, byte[] results, int count, int from, int stride) {
+            int[] digits = new int[PuzzleFormat.LENGTH];
+            for (int i = from; i < count; i += stride) {
+                int off = i * RECORD_SIZE;
+                Status status = Status.invalid;
+                if (records[off] == PUZZLE) {
+                    PuzzleFormat.unpack(records, off + 1, digits);
+                    try {
+                        if (solver.solve(digits)) {
+                            status = Status.solved;
+                        } else {
+                            status = solver.hasTimedOut() ? Status.timeout : Status.unsolvable;
+                        }
+                    } catch (IllegalArgumentException ex) {
+                        // a nibble that is not a digit
+                    }
+                }
+                results[off] = (byte) status.ordinal();
+                if (status == Status.solved) {
+                    solver.copySolution(digits);
+                    PuzzleFormat.pack(digits, results, off + 1);
+                }
+            }
+        }
+
+        private int run(PrintStream stderr) throws InterruptedException {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            ThreadLocal<Solver> solvers = ThreadLocal.withInitial(() -> {
+                Solver solver = new Solver(); // confined to its pool thread
+                solver.setTimeLimit(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+                return solver;
+            });
+            long solved = 0;
+            try (Socket socket = connect()) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                out.writeByte(REQUEST);
+                out.flush();
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == DONE) {
+                        return 0;
+                    } else if (type != CHUNK) {
+                        throw new IOException("Unexpected message type " + type);
+                    }
+                    int id = in.readInt();
+                    int count = in.readInt();
+                    byte[] records = new byte[count * RECORD_SIZE];
+                    in.readFully(records);
+                    byte[] results = new byte[count * RECORD_SIZE];
+                    List<Future<?>> stripes = new ArrayList<>(threads);
+                    for (int t = 0; t < threads; t++) {
+                        int from = t;
+                        stripes.add(pool.submit(() -> solveStripe(solvers.get(), records, results, count, from, threads)));
+                    }
+                    for (Future<?> f : stripes) {
+                        f.get();
+                    }
+                    solved += count;
+                    out.writeByte(RESULT);
+                    out.writeInt(id);
+                    out.writeInt(count);
+                    out.write(results);
+                    out.flush();
+                }
+            } catch (EOFException ex) {
+                stderr.println("Coordinator closed the connection after " + solved + " puzzles");
+                return 1;
+            } catch (IOException ex) {
+                stderr.println("Cannot talk to the coordinator at " + host + ":" + port + ": " + ex.getMessage());
+                return 1;
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Solving failed", ex.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    // ---
+    // Command line
+    // ---
+
+    private static int parsePort(String value) {
+        int port = SolverPipeline.parsePositive("--port", value);
+        if (port > 0xFFFF) {
+            throw new IllegalArgumentException("Option --port needs a port number, not '" + value + "'");
+        }
+        return port;
+    }
+
+    /**
+     * Run the coordinator on an already bound "server" socket, e.g. one on an ephemeral port.
+     */
+
+    static int runCoordinator(ServerSocket server, List<String> args, InputStream stdin, OutputStream stdout, PrintStream stderr) throws InterruptedException {
+        Coordinator c;
+        try {
+            c = Coordinator.fromArguments(args);
+        } catch (IllegalArgumentException ex) {
+            stderr.println(ex.getMessage());
+            stderr.println(USAGE);
+            return 2;
+        }
+        return c.run(server, stdin, stdout, stderr);
+    }
+
+    /**
+     * Run a coordinator or a worker, as the first argument says. Returns the exit status: 0 if all
+     * went well, 1 if an input could not be read or a connection failed, 2 for bad arguments.
+     */
+
+    public static int run(String[] argv, InputStream stdin, OutputStream stdout, PrintStream stderr) throws InterruptedException {
+        List<String> args = List.of(argv).subList(Math.min(1, argv.length), argv.length);
+        String mode = (argv.length > 0) ? argv[0] : "";
+        try {
+            switch (mode) {
+                case "coordinator" -> {
+                    Coordinator c = Coordinator.fromArguments(args);
+                    ServerSocket server;
+                    try {
+                        InetAddress address = (c.bind == null) ? InetAddress.getLoopbackAddress() : InetAddress.getByName(c.bind);
+                        server = new ServerSocket(c.port, 0, address);
+                    } catch (IOException ex) {
+                        stderr.println("Cannot listen on " + ((c.bind == null) ? "loopback" : c.bind) + " port " + c.port + ": " + ex.getMessage());
+                        return 1;
+                    }
+                    return c.run(server, stdin, stdout, stderr);
+                }
+                case "worker" -> {
+                    return Worker.fromArguments(args).run(stderr);
+                }
+                default -> throw new IllegalArgumentException("Expected 'coordinator' or 'worker', not '" + mode + "'");
+            }
+        } catch (IllegalArgumentException ex) {
+            stderr.println(ex.getMessage());
+            stderr.println(USAGE);
+            return 2;
+        }
+    }
+
+    public static void main(String[] argv) throws InterruptedException {
+        System.exit(run(argv, System.in, System.out, System.err));
+    }
+
+}
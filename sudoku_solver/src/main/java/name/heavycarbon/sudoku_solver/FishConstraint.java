@@ -0,0 +1,199 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.*;
+
+import name.heavycarbon.sudoku_solver.ValueCellBijectionConstraint.Type;
+
+/**
+ * The "fish" patterns of a single value: X-Wing (2 lines), Swordfish (3) and Jellyfish (4).
+ * <p>
+ * If, in "n" rows, a value can only go into the same "n" columns, then these rows take the value
+ * in each of these columns, and it can be removed from the other rows of these columns. The
+ * same holds with rows and columns swapped.
+ * <p>
+ * The value supports on the Board already are the 9-bit occurrence masks: for each row, the
+ * columns where the value can still go, and vice versa. Combinations of lines are enumerated
+ * depth-first, dropping a combination as soon as its columns are more than "n", and only lines
+ * where the value can go into 2 to "n" places take part (a line with 1 place is a single, which the
+ * units take care of).
+ * <p>
+ * There is one constraint per value, monitoring all the cells, but it is only activated by a
+ * change that removes its value. It is optional: add "FishConstraint.all()" to the Constraints.
+ */
+
+public class FishConstraint implements Constraint {
+
+    public final static int MAX_SIZE = 4; // Jellyfish; larger fish always have a complementary smaller one
+
+    private final static List<Location> ALL_LOCATIONS = makeAllLocations();
+
+    private static List<Location> makeAllLocations() {
+        List<Location> res = new ArrayList<>(Board.COUNT * Board.COUNT);
+        for (int row0 = 0; row0 < Board.COUNT; row0++) {
+            for (int col0 = 0; col0 < Board.COUNT; col0++) {
+                res.add(Location.obtain0(row0, col0));
+            }
+        }
+        return Collections.unmodifiableList(res);
+    }
+
+    private final Value value;
+    private final int maxSize;
+    private final String name;
+
+    public FishConstraint(Value value, int maxSize) {
+        if (maxSize < 2 || maxSize > MAX_SIZE) {
+            throw new IllegalArgumentException("Fish size must be 2.." + MAX_SIZE + ", not " + maxSize);
+        }
+        this.value = value;
+        this.maxSize = maxSize;
+        this.name = "fish(" + value + ")";
+    }
+
+    /**
+     * One constraint per value, finding fish of up to "maxSize" lines.
+     */
+
+    public static List<FishConstraint> all(int maxSize) {
+        List<FishConstraint> res = new ArrayList<>(Board.COUNT);
+        for (Value v : Value.values()) {
+            res.add(new FishConstraint(v, maxSize));
+        }
+        return res;
+    }
+
+    public static List<FishConstraint> all() {
+        return all(MAX_SIZE);
+    }
+
+    @Override
+    public Collection<Location> getMonitoredLocations() {
+        return ALL_LOCATIONS;
+    }
+
+    /**
+     * Only a change that removes this constraint's value can make a new fish.
+     */
+
+    @Override
+    public boolean isWokenBy(DomainChange change, Board board) {
+        return (change.getRemovedBits() & (1 << value.index)) != 0;
+    }
+
+    /**
+     * Find the fish with "base" lines (each a mask of the cover lines where the value can go) and
+     * remove the value from the cover lines outside the fish, in "base" itself.
+     * Returns whether anything was removed.
+     */
+
+    private boolean eliminate(int[] base) {
+        boolean changed = false;
+        for (int size = 2; size <= maxSize; size++) {
+            changed |= eliminate(base, size, 0, 0, 0, 0);
+        }
+        return changed;
+    }
+
+    /**
+     * Extend the combination "chosen" (a mask of base line indexes, "count" of them, covering
+     * "union") with lines from "from" on.
+     */
+
+    private static boolean eliminate(int[] base, int size, int from, int chosen, int count, int union) {
+        if (count == size) {
+            if (Integer.bitCount(union) != size) {
+                return false;
+            }
+            boolean changed = false;
+            for (int i = 0; i < base.length; i++) {
+                if ((chosen & (1 << i)) == 0 && (base[i] & union) != 0) {
+                    base[i] &= ~union;
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+        boolean changed = false;
+        for (int i = from; i < base.length; i++) {
+            int places = Integer.bitCount(base[i]);
+            if (places < 2 || places > size) {
+                continue;
+            }
+            int newUnion = union | base[i];
+            if (Integer.bitCount(newUnion) <= size) {
+                changed |= eliminate(base, size, i + 1, chosen | (1 << i), count + 1, newUnion);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Turn the masks of the rows into those of the columns and vice versa.
+     */
+
+    private static void transpose(int[] from, int[] to) {
+        Arrays.fill(to, 0);
+        for (int i = 0; i < Board.COUNT; i++) {
+            for (int bits = from[i]; bits != 0; bits &= bits - 1) {
+                to[Integer.numberOfTrailingZeros(bits)] |= (1 << i);
+            }
+        }
+    }
+
+    @Override
+    public UpdateResult update(Board board) throws EmptyDomainException {
+        int[] rows = new int[Board.COUNT]; // for each row, the columns where the value can go
+        int[] cols = new int[Board.COUNT]; // for each column, the rows where the value can go
+        for (int row0 = 0; row0 < Board.COUNT; row0++) {
+            rows[row0] = board.getSupport(Type.row.ordinal() * Board.COUNT + row0, value);
+        }
+        int[] original = rows.clone();
+        // until neither rows nor columns find anything more
+        boolean changed;
+        do {
+            changed = eliminate(rows);
+            transpose(rows, cols);
+            if (eliminate(cols)) {
+                changed = true;
+                transpose(cols, rows);
+            }
+        } while (changed);
+        LocationMap<Cell> overrides = null;
+        for (int row0 = 0; row0 < Board.COUNT; row0++) {
+            for (int bits = original[row0] & ~rows[row0]; bits != 0; bits &= bits - 1) {
+                Location loc = Location.obtain0(row0, Integer.numberOfTrailingZeros(bits));
+                Cell updatedCell = new Cell(board.board.get(loc), value);
+                if (updatedCell.isEmpty()) {
+                    throw new EmptyDomainException();
+                }
+                if (overrides == null) {
+                    overrides = new LocationMap<>();
+                }
+                overrides.put(loc, updatedCell);
+            }
+        }
+        if (overrides == null) {
+            return new UpdateResult(board, new LocationSet());
+        }
+        return new UpdateResult(new Board(board, overrides), overrides.getLocations());
+    }
+
+    /**
+     * Nothing to check beyond what the rows, columns and blocks check.
+     */
+
+    @Override
+    public void throwIfNotfulfillsSolutionCriterium(Board board) {
+    }
+
+    @Override
+    public Cost getCost() {
+        return Cost.expensive;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,314 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.*;
+
+import name.heavycarbon.sudoku_solver.ValueCellBijectionConstraint.Type;
+
+/**
+ * Find a single next deduction on a Board, as a hint for a human player.
+ * <p>
+ * Unlike "Sudoku.solve()", this neither propagates to quiescence nor searches: the rules are
+ * tried in order of increasing cost, and the first deduction that narrows some cell is returned.
+ * The order is:
+ * <p>
+ * - naked single: a cell fixed to v in some unit, while v is still a candidate elsewhere in that unit
+ * - hidden single: a value that is a candidate in only one (not yet fixed) cell of a unit
+ * - locked candidates: a value whose candidates in a block are confined to one row or column
+ * ("pointing"), or whose candidates in a row or column are confined to one block ("claiming")
+ * - naked subset: k cells of a unit (k = 2, 3, 4) whose candidates together are exactly k values
+ * <p>
+ * A "unit" is one of the 27 ValueCellBijectionConstraints.
+ */
+
+public class Hints {
+
+    private final static Constraints cos = new Constraints(); // immutable, can be shared
+
+    private final static int MAX_SUBSET_SIZE = 4;
+
+    /**
+     * A deduction, its justification and its effect.
+     */
+
+    public static class Deduction {
+
+        public enum Kind {nakedSingle, hiddenSingle, lockedCandidates, nakedSubset}
+
+        public final Kind kind;
+        public final ValueCellBijectionConstraint unit; // the unit in which the rule applies
+        public final ValueCellBijectionConstraint otherUnit; // for "lockedCandidates" only: where candidates are removed
+        public final List<Location> cause; // the cells that justify the deduction
+        public final Set<Value> values; // the values the deduction is about
+        public final Map<Location, Cell> narrowed; // the narrowed cells
+
+        public Deduction(Kind kind, ValueCellBijectionConstraint unit, ValueCellBijectionConstraint otherUnit, List<Location> cause, Set<Value> values, Map<Location, Cell> narrowed) {
+            this.kind = kind;
+            this.unit = unit;
+            this.otherUnit = otherUnit;
+            this.cause = Collections.unmodifiableList(cause);
+            this.values = Collections.unmodifiableSet(values);
+            this.narrowed = Collections.unmodifiableMap(narrowed);
+        }
+
+        /**
+         * Obtain the Board with the narrowed cells replaced.
+         */
+
+        public Board apply(Board board) {
+            return new Board(board, narrowed);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buf = new StringBuilder();
+            buf.append(kind).append(" ").append(values).append(" in ").append(unit);
+            if (otherUnit != null) {
+                buf.append(" removed from ").append(otherUnit);
+            }
+            buf.append(" because of ");
+            boolean addComma = false;
+            for (Location loc : cause) {
+                if (addComma) {
+                    buf.append(",");
+                }
+                buf.append(loc.toStringOneBased());
+                addComma = true;
+            }
+            buf.append(", narrowing ").append(narrowed.size()).append(" cell(s)");
+            return buf.toString();
+        }
+    }
+
+    /**
+     * Return the first deduction found on "board", or null if none of the rules applies.
+     * Throws if the board is found to be contradictory on the way.
+     */
+
+    public static Deduction nextDeduction(Board board) throws EmptyDomainException {
+        Deduction res = findNakedSingle(board);
+        if (res == null) {
+            res = findHiddenSingle(board);
+        }
+        if (res == null) {
+            res = findLockedCandidates(board);
+        }
+        for (int size = 2; res == null && size <= MAX_SUBSET_SIZE; size++) {
+            res = findNakedSubset(board, size);
+        }
+        return res;
+    }
+
+    // ---
+    // Helpers
+    // ---
+
+    private static Set<Value> valuesOf(int bits) {
+        Set<Value> res = EnumSet.noneOf(Value.class);
+        for (int i = 0; i < Board.COUNT; i++) {
+            if ((bits & (1 << i)) != 0) {
+                res.add(Value.fromIndex(i));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Remove the values in "bits" from the cell at "loc", recording the narrowed cell.
+     * Throws if nothing remains.
+     */
+
+    private static void removeFrom(Board board, Location loc, int bits, Map<Location, Cell> narrowed) throws EmptyDomainException {
+        Cell cell = new Cell(narrowed.getOrDefault(loc, board.board.get(loc)), bits);
+        if (cell.isEmpty()) {
+            throw new EmptyDomainException();
+        }
+        narrowed.put(loc, cell);
+    }
+
+    private static ValueCellBijectionConstraint findUnit(Type type, int where0) {
+        for (ValueCellBijectionConstraint unit : cos.getUnits()) {
+            if (unit.getType() == type && unit.getWhere0() == where0) {
+                return unit;
+            }
+        }
+        throw new IllegalStateException("No unit " + type + "(" + (where0 + 1) + ")");
+    }
+
+    // ---
+    // The rules
+    // ---
+
+    private static Deduction findNakedSingle(Board board) throws EmptyDomainException {
+        for (ValueCellBijectionConstraint unit : cos.getUnits()) {
+            for (Location loc : unit.getLocations()) {
+                Cell cell = board.board.get(loc);
+                if (cell.isEmpty()) {
+                    throw new EmptyDomainException();
+                }
+                if (cell.isUnique()) {
+                    Value v = cell.getUnique();
+                    Map<Location, Cell> narrowed = new LocationMap<>();
+                    for (Location loc2 : unit.getLocations()) {
+                        if (loc2 != loc && board.board.get(loc2).domainContains(v)) {
+                            removeFrom(board, loc2, 1 << v.index, narrowed);
+                        }
+                    }
+                    if (!narrowed.isEmpty()) {
+                        return new Deduction(Deduction.Kind.nakedSingle, unit, null, List.of(loc), EnumSet.of(v), narrowed);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Deduction findHiddenSingle(Board board) throws EmptyDomainException {
+        for (ValueCellBijectionConstraint unit : cos.getUnits()) {
+            for (Value v : Value.values()) {
+                int supportBits = board.getSupport(unit.getUnitIndex(), v);
+                if (supportBits == 0) {
+                    throw new EmptyDomainException(); // v cannot be placed in this unit
+                }
+                if (Integer.bitCount(supportBits) != 1) {
+                    continue;
+                }
+                Location found = unit.getLocationAtPosition(Integer.numberOfTrailingZeros(supportBits));
+                if (!board.board.get(found).isUnique()) {
+                    Map<Location, Cell> narrowed = Map.of(found, new Cell(v));
+                    return new Deduction(Deduction.Kind.hiddenSingle, unit, null, List.of(found), EnumSet.of(v), narrowed);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Go through the 54 (block, line) pairs. For each pair, the 3 cells of the intersection
+     * are compared against the 6 other cells of the block and the 6 other cells of the line.
+     */
+
+    private static Deduction findLockedCandidates(Board board) throws EmptyDomainException {
+        for (ValueCellBijectionConstraint block : cos.getUnits()) {
+            if (block.getType() != Type.block) {
+                continue;
+            }
+            int topRow0 = (block.getWhere0() / 3) * 3;
+            int leftCol0 = (block.getWhere0() % 3) * 3;
+            for (int i = 0; i < 6; i++) {
+                ValueCellBijectionConstraint line = (i < 3) ? findUnit(Type.row, topRow0 + i) : findUnit(Type.col, leftCol0 + i - 3);
+                Deduction res = findLockedCandidates(board, block, line);
+                if (res != null) {
+                    return res;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Deduction findLockedCandidates(Board board, ValueCellBijectionConstraint block, ValueCellBijectionConstraint line) throws EmptyDomainException {
+        List<Location> inter = new ArrayList<>(3);
+        int interBits = 0;
+        int blockRestBits = 0;
+        int lineRestBits = 0;
+        for (Location loc : block.getLocations()) {
+            if (line.getLocations().contains(loc)) {
+                inter.add(loc);
+                interBits |= unfixedBits(board, loc);
+            } else {
+                blockRestBits |= board.board.get(loc).getDomainBits();
+            }
+        }
+        for (Location loc : line.getLocations()) {
+            if (!block.getLocations().contains(loc)) {
+                lineRestBits |= board.board.get(loc).getDomainBits();
+            }
+        }
+        int pointing = interBits & ~blockRestBits & lineRestBits; // confined to the line within the block
+        int claiming = interBits & ~lineRestBits & blockRestBits; // confined to the block within the line
+        if (pointing != 0) {
+            int v = Integer.lowestOneBit(pointing);
+            return lockedCandidates(board, block, line, inter, v);
+        }
+        if (claiming != 0) {
+            int v = Integer.lowestOneBit(claiming);
+            return lockedCandidates(board, line, block, inter, v);
+        }
+        return null;
+    }
+
+    private static int unfixedBits(Board board, Location loc) {
+        Cell cell = board.board.get(loc);
+        return cell.isUnique() ? 0 : cell.getDomainBits();
+    }
+
+    private static Deduction lockedCandidates(Board board, ValueCellBijectionConstraint confinedIn, ValueCellBijectionConstraint removedFrom, List<Location> inter, int valueBit) throws EmptyDomainException {
+        Map<Location, Cell> narrowed = new LocationMap<>();
+        for (Location loc : removedFrom.getLocations()) {
+            if (!inter.contains(loc) && (board.board.get(loc).getDomainBits() & valueBit) != 0) {
+                removeFrom(board, loc, valueBit, narrowed);
+            }
+        }
+        List<Location> cause = new ArrayList<>(3);
+        for (Location loc : inter) {
+            if ((board.board.get(loc).getDomainBits() & valueBit) != 0) {
+                cause.add(loc);
+            }
+        }
+        return new Deduction(Deduction.Kind.lockedCandidates, confinedIn, removedFrom, cause, valuesOf(valueBit), narrowed);
+    }
+
+    private static Deduction findNakedSubset(Board board, int size) throws EmptyDomainException {
+        for (ValueCellBijectionConstraint unit : cos.getUnits()) {
+            List<Location> candidates = new ArrayList<>(Board.COUNT);
+            for (Location loc : unit.getLocations()) {
+                Cell cell = board.board.get(loc);
+                if (!cell.isUnique() && cell.cardinality <= size) {
+                    candidates.add(loc);
+                }
+            }
+            Deduction res = findNakedSubset(board, unit, candidates, size, 0, new ArrayList<>(size), 0);
+            if (res != null) {
+                return res;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Enumerate the subsets of "candidates" of the given size, depth-first, abandoning a
+     * branch as soon as the union of the candidate values exceeds "size". Throws if some
+     * cells have fewer candidate values between them than there are cells.
+     */
+
+    private static Deduction findNakedSubset(Board board, ValueCellBijectionConstraint unit, List<Location> candidates, int size, int start, List<Location> chosen, int unionBits) throws EmptyDomainException {
+        if (chosen.size() == size) {
+            Map<Location, Cell> narrowed = new LocationMap<>();
+            for (Location loc : unit.getLocations()) {
+                if (!chosen.contains(loc) && (board.board.get(loc).getDomainBits() & unionBits) != 0) {
+                    removeFrom(board, loc, unionBits, narrowed);
+                }
+            }
+            if (narrowed.isEmpty()) {
+                return null;
+            }
+            return new Deduction(Deduction.Kind.nakedSubset, unit, null, new ArrayList<>(chosen), valuesOf(unionBits), narrowed);
+        }
+        for (int i = start; i < candidates.size(); i++) {
+            Location loc = candidates.get(i);
+            int newUnionBits = unionBits | board.board.get(loc).getDomainBits();
+            if (Integer.bitCount(newUnionBits) <= chosen.size()) {
+                throw new EmptyDomainException(); // the chosen cells and "loc" cannot all get a value
+            }
+            if (Integer.bitCount(newUnionBits) <= size) {
+                chosen.add(loc);
+                Deduction res = findNakedSubset(board, unit, candidates, size, i + 1, chosen, newUnionBits);
+                chosen.removeLast();
+                if (res != null) {
+                    return res;
+                }
+            }
+        }
+        return null;
+    }
+
+}
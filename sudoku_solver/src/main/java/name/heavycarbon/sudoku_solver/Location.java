@@ -2,21 +2,29 @@ package name.heavycarbon.sudoku_solver;
 
 /**
  * An immutable (row,col) tuple that can be used as key in maps.
+ * <p>
+ * Each Location also has a dense "ordinal" in 0..80 (row by row), by which LocationSet and
+ * LocationMap index it.
  */
 
 public class Location implements Comparable<Location> {
 
     final public int row0; // 0-based row number
     final public int col0; // 0-based column number
+    final public int ordinal; // row0 * 9 + col0
 
     private final static int COUNT = 9; // we have 9x9 locations
 
+    public final static int ORDINAL_COUNT = COUNT * COUNT;
+
     private final static Location[][] storage = new Location[COUNT][COUNT]; // storage for all instances we will ever need
+    private final static Location[] byOrdinal = new Location[ORDINAL_COUNT];
 
     static {
         for (int row0 = 0; row0 < COUNT; row0++) {
             for (int col0 = 0; col0 < COUNT; col0++) {
                 storage[row0][col0] = new Location(row0, col0);
+                byOrdinal[storage[row0][col0].ordinal] = storage[row0][col0];
             }
         }
     }
@@ -37,6 +45,14 @@ public class Location implements Comparable<Location> {
         return obtain0(row1 - 1, col1 - 1);
     }
 
+    /**
+     * Factory call. Obtain the Location with the given ordinal.
+     */
+
+    public static Location fromOrdinal(int ordinal) {
+        return byOrdinal[ordinal];
+    }
+
     /**
      * Private constructor. Only obtain Locations through the factory call!
      */
@@ -44,6 +60,7 @@ public class Location implements Comparable<Location> {
     private Location(int row0, int col0) {
         this.row0 = row0;
         this.col0 = col0;
+        this.ordinal = row0 * COUNT + col0;
     }
 
     @Override
@@ -59,7 +76,7 @@ public class Location implements Comparable<Location> {
 
     @Override
     public int hashCode() {
-        return Integer.hashCode(row0) ^ Integer.hashCode(col0);
+        return ordinal; // distinct for all 81 instances
     }
 
     @Override
@@ -0,0 +1,244 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A mutable map from Locations to values, as an array indexed by their ordinals, with a
+ * LocationSet of the keys. Iterates in ordinal order, i.e. row by row.
+ * <p>
+ * Does not accept null keys or values.
+ */
+
+public final class LocationMap<V> extends AbstractMap<Location, V> {
+
+    private final Object[] values = new Object[Location.ORDINAL_COUNT];
+    private final LocationSet keys = new LocationSet();
+
+    public LocationMap() {
+    }
+
+    /**
+     * A copy of "map". Cheap if "map" is a LocationMap too.
+     */
+
+    public LocationMap(Map<Location, ? extends V> map) {
+        putAll(map);
+    }
+
+    @Override
+    public void putAll(Map<? extends Location, ? extends V> map) {
+        if (map instanceof LocationMap<?> other) {
+            if (keys.isEmpty()) {
+                System.arraycopy(other.values, 0, values, 0, values.length);
+            } else {
+                for (Location loc : other.keys) {
+                    values[loc.ordinal] = other.values[loc.ordinal];
+                }
+            }
+            keys.addAll(other.keys);
+        } else {
+            super.putAll(map);
+        }
+    }
+
+    @Override
+    public V put(Location loc, V value) {
+        if (value == null) {
+            throw new NullPointerException("null value at " + loc);
+        }
+        V old = get(loc);
+        values[loc.ordinal] = value;
+        keys.add(loc);
+        return old;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object obj) {
+        return (obj instanceof Location loc) ? (V) values[loc.ordinal] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object obj) {
+        return keys.contains(obj);
+    }
+
+    @Override
+    public V remove(Object obj) {
+        V old = get(obj);
+        if (old != null) {
+            values[((Location) obj).ordinal] = null;
+            keys.remove(obj);
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        for (Location loc : keys) {
+            values[loc.ordinal] = null;
+        }
+        keys.clear();
+    }
+
+    @Override
+    public int size() {
+        return keys.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    /**
+     * A copy of the keys.
+     */
+
+    public LocationSet getLocations() {
+        return new LocationSet(keys);
+    }
+
+    /**
+     * The keys, as a view that supports removal.
+     */
+
+    @Override
+    public Set<Location> keySet() {
+        return new AbstractSet<>() {
+
+            @Override
+            public Iterator<Location> iterator() {
+                Iterator<Location> it = keys.iterator();
+                return new Iterator<>() {
+
+                    private Location last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Location next() {
+                        last = it.next();
+                        return last;
+                    }
+
+                    @Override
+                    public void remove() {
+                        it.remove();
+                        values[last.ordinal] = null;
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object obj) {
+                return keys.contains(obj);
+            }
+
+            @Override
+            public boolean remove(Object obj) {
+                return LocationMap.this.remove(obj) != null;
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+
+    /**
+     * The values, in ordinal order of their keys, without going through entries.
+     */
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+
+            @Override
+            public Iterator<V> iterator() {
+                return new Iterator<>() {
+
+                    private int next = keys.nextOrdinal(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next >= 0;
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public V next() {
+                        if (next < 0) {
+                            throw new NoSuchElementException();
+                        }
+                        V res = (V) values[next];
+                        next = keys.nextOrdinal(next + 1);
+                        return res;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<Location, V>> entrySet() {
+        return new AbstractSet<>() {
+
+            @Override
+            public Iterator<Entry<Location, V>> iterator() {
+                return new Iterator<>() {
+
+                    private int next = keys.nextOrdinal(0);
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next >= 0;
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public Entry<Location, V> next() {
+                        if (next < 0) {
+                            throw new NoSuchElementException();
+                        }
+                        last = next;
+                        next = keys.nextOrdinal(next + 1);
+                        return new SimpleImmutableEntry<>(Location.fromOrdinal(last), (V) values[last]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0) {
+                            throw new IllegalStateException();
+                        }
+                        LocationMap.this.remove(Location.fromOrdinal(last));
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+
+}
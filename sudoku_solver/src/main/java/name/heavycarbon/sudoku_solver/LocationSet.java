@@ -0,0 +1,169 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A mutable set of Locations, as a bitset over their ordinals held in two longs (ordinals 0..63 in
+ * "low", 64..80 in "high"). Iterates in ordinal order, i.e. row by row.
+ * <p>
+ * Does not accept null.
+ */
+
+public final class LocationSet extends AbstractSet<Location> {
+
+    private long low;
+    private long high;
+
+    public LocationSet() {
+    }
+
+    public LocationSet(Collection<Location> locs) {
+        addAll(locs);
+    }
+
+    public static LocationSet of(Location... locs) {
+        LocationSet res = new LocationSet();
+        for (Location loc : locs) {
+            res.add(loc);
+        }
+        return res;
+    }
+
+    @Override
+    public boolean add(Location loc) {
+        int i = loc.ordinal;
+        if (i < Long.SIZE) {
+            long old = low;
+            low |= 1L << i;
+            return low != old;
+        } else {
+            long old = high;
+            high |= 1L << (i - Long.SIZE);
+            return high != old;
+        }
+    }
+
+    @Override
+    public boolean contains(Object obj) {
+        if (!(obj instanceof Location loc)) {
+            return false;
+        }
+        int i = loc.ordinal;
+        if (i < Long.SIZE) {
+            return (low & (1L << i)) != 0;
+        } else {
+            return (high & (1L << (i - Long.SIZE))) != 0;
+        }
+    }
+
+    @Override
+    public boolean remove(Object obj) {
+        if (!contains(obj)) {
+            return false;
+        }
+        int i = ((Location) obj).ordinal;
+        if (i < Long.SIZE) {
+            low &= ~(1L << i);
+        } else {
+            high &= ~(1L << (i - Long.SIZE));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Location> locs) {
+        if (locs instanceof LocationSet other) {
+            long oldLow = low;
+            long oldHigh = high;
+            low |= other.low;
+            high |= other.high;
+            return low != oldLow || high != oldHigh;
+        }
+        return super.addAll(locs);
+    }
+
+    @Override
+    public void clear() {
+        low = 0;
+        high = 0;
+    }
+
+    @Override
+    public int size() {
+        return Long.bitCount(low) + Long.bitCount(high);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (low | high) == 0;
+    }
+
+    /**
+     * The smallest ordinal in the set that is at least "from", or -1 if there is none.
+     */
+
+    public int nextOrdinal(int from) {
+        if (from < Long.SIZE) {
+            long bits = low & (-1L << from);
+            if (bits != 0) {
+                return Long.numberOfTrailingZeros(bits);
+            }
+            from = Long.SIZE;
+        }
+        if (from >= Location.ORDINAL_COUNT) {
+            return -1;
+        }
+        long bits = high & (-1L << (from - Long.SIZE));
+        return (bits != 0) ? Long.SIZE + Long.numberOfTrailingZeros(bits) : -1;
+    }
+
+    @Override
+    public Iterator<Location> iterator() {
+        return new Iterator<>() {
+
+            private int next = nextOrdinal(0);
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Location next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = nextOrdinal(next + 1);
+                return Location.fromOrdinal(last);
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                LocationSet.this.remove(Location.fromOrdinal(last));
+                last = -1;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof LocationSet other) {
+            return low == other.low && high == other.high;
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode(); // as for any Set, the sum of the elements' hash codes
+    }
+
+}
@@ -0,0 +1,178 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.*;
+
+import name.heavycarbon.sudoku_solver.ValueCellBijectionConstraint.Type;
+
+/**
+ * "Locked candidates" over the intersection of a block with a row or column (3 cells).
+ * <p>
+ * - Pointing: if, within the block, a value can only go into the intersection, it cannot go
+ *   anywhere else on the line.
+ * - Claiming: if, within the line, a value can only go into the intersection, it cannot go
+ *   anywhere else in the block.
+ * <p>
+ * The rows, columns and blocks only reason about their own cells, so neither is found by them.
+ * <p>
+ * The value supports on the Board are per-value bitmasks of the positions within each unit, so
+ * both rules are a few bit operations per value: the intersection is a fixed mask in the
+ * positions of the block and another in the positions of the line.
+ * <p>
+ * There is one such constraint for each of the 54 block-line pairs that intersect. They run once
+ * the singles found by the units are exhausted (see Constraint.Cost).
+ */
+
+public class LockedCandidatesConstraint implements Constraint {
+
+    private final int blockUnit; // unit index of the block
+    private final int lineUnit; // unit index of the line
+    private final int blockMask; // positions of the intersection within the block
+    private final int lineMask; // positions of the intersection within the line
+    private final Location[] blockByPosition;
+    private final Location[] lineByPosition;
+    private final List<Location> locations; // the block and the line, 15 cells
+    private final String name;
+
+    private LockedCandidatesConstraint(int block0, Type lineType, int line0) {
+        assert lineType != Type.block;
+        int topRow0 = (block0 / 3) * 3;
+        int leftCol0 = (block0 % 3) * 3;
+        this.blockUnit = Type.block.ordinal() * Board.COUNT + block0;
+        this.lineUnit = lineType.ordinal() * Board.COUNT + line0;
+        this.blockByPosition = new Location[Board.COUNT];
+        this.lineByPosition = new Location[Board.COUNT];
+        for (int pos = 0; pos < Board.COUNT; pos++) {
+            blockByPosition[pos] = Location.obtain0(topRow0 + pos / 3, leftCol0 + pos % 3);
+            lineByPosition[pos] = (lineType == Type.row) ? Location.obtain0(line0, pos) : Location.obtain0(pos, line0);
+        }
+        if (lineType == Type.row) {
+            this.blockMask = 0b111 << ((line0 % 3) * 3);
+            this.lineMask = 0b111 << leftCol0;
+        } else {
+            this.blockMask = 0b001001001 << (line0 % 3);
+            this.lineMask = 0b111 << topRow0;
+        }
+        Set<Location> tmp = new LinkedHashSet<>(Arrays.asList(blockByPosition));
+        tmp.addAll(Arrays.asList(lineByPosition));
+        this.locations = List.copyOf(tmp);
+        this.name = "locked(block(" + (block0 + 1) + ")," + lineType + "(" + (line0 + 1) + "))";
+    }
+
+    /**
+     * The 54 constraints: each block with each of the 3 rows and 3 columns crossing it.
+     */
+
+    public static List<LockedCandidatesConstraint> all() {
+        List<LockedCandidatesConstraint> res = new ArrayList<>(Board.COUNT * 6);
+        for (int block0 = 0; block0 < Board.COUNT; block0++) {
+            for (int i = 0; i < 3; i++) {
+                res.add(new LockedCandidatesConstraint(block0, Type.row, (block0 / 3) * 3 + i));
+            }
+            for (int i = 0; i < 3; i++) {
+                res.add(new LockedCandidatesConstraint(block0, Type.col, (block0 % 3) * 3 + i));
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public Collection<Location> getMonitoredLocations() {
+        return locations;
+    }
+
+    /**
+     * The positions, within the line, from which "v" can be removed, as bits.
+     */
+
+    private int pointing(Board board, Value v) {
+        int inBlock = board.getSupport(blockUnit, v);
+        if (inBlock == 0 || (inBlock & ~blockMask) != 0) {
+            return 0;
+        }
+        return board.getSupport(lineUnit, v) & ~lineMask;
+    }
+
+    /**
+     * The positions, within the block, from which "v" can be removed, as bits.
+     */
+
+    private int claiming(Board board, Value v) {
+        int inLine = board.getSupport(lineUnit, v);
+        if (inLine == 0 || (inLine & ~lineMask) != 0) {
+            return 0;
+        }
+        return board.getSupport(blockUnit, v) & ~blockMask;
+    }
+
+    /**
+     * Only the removal of a value can confine that value to the intersection.
+     */
+
+    @Override
+    public boolean isWokenBy(DomainChange change, Board board) {
+        for (int bits = change.getRemovedBits(); bits != 0; bits &= bits - 1) {
+            Value v = Value.fromIndex(Integer.numberOfTrailingZeros(bits));
+            if (pointing(board, v) != 0 || claiming(board, v) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collect "removedBits" of value "vi" at the positions "positions" of "byPosition" into "removals".
+     */
+
+    private static void collect(LocationMap<Integer> removals, Location[] byPosition, int positions, int vi) {
+        for (int bits = positions; bits != 0; bits &= bits - 1) {
+            removals.merge(byPosition[Integer.numberOfTrailingZeros(bits)], 1 << vi, (a, b) -> a | b);
+        }
+    }
+
+    @Override
+    public UpdateResult update(Board board) throws EmptyDomainException {
+        LocationMap<Integer> removals = null;
+        for (Value v : Value.values()) {
+            int fromLine = pointing(board, v);
+            int fromBlock = claiming(board, v);
+            if ((fromLine | fromBlock) != 0) {
+                if (removals == null) {
+                    removals = new LocationMap<>();
+                }
+                collect(removals, lineByPosition, fromLine, v.index);
+                collect(removals, blockByPosition, fromBlock, v.index);
+            }
+        }
+        if (removals == null) {
+            return new UpdateResult(board, new LocationSet());
+        }
+        LocationMap<Cell> overrides = new LocationMap<>();
+        for (Map.Entry<Location, Integer> e : removals.entrySet()) {
+            Cell updatedCell = new Cell(board.board.get(e.getKey()), e.getValue());
+            if (updatedCell.isEmpty()) {
+                throw new EmptyDomainException();
+            }
+            overrides.put(e.getKey(), updatedCell);
+        }
+        return new UpdateResult(new Board(board, overrides), overrides.getLocations());
+    }
+
+    /**
+     * Nothing to check beyond what the rows, columns and blocks check.
+     */
+
+    @Override
+    public void throwIfNotfulfillsSolutionCriterium(Board board) {
+    }
+
+    @Override
+    public Cost getCost() {
+        return Cost.expensive;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,231 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import name.heavycarbon.sudoku_solver.Constraint.UpdateResult;
+
+/**
+ * A bounded store of "nogoods", filled during search.
+ * <p>
+ * A nogood is a set of (cell, value) assignments that, given the initial settings, cannot be
+ * extended to a solution. When a trial value fails in "findByTrial()", the decisions on the path
+ * to the trial board, plus the failed one, form such a set: propagating them led to an empty
+ * domain in the whole subtree. If the trial failed by propagation alone, without further search,
+ * and its path is short, the set is made smaller first, by dropping each decision whose absence
+ * still leads to an empty domain by propagation (see "Sudoku.recordNogood()"). Short nogoods are
+ * what prunes.
+ * <p>
+ * A nogood does not care how its assignments came about, so it also prunes branches in which
+ * some of them were reached by propagation rather than by decision, or by decisions taken in
+ * another order (e.g. after a restart). It acts like a constraint: if all of its assignments
+ * hold on a board, the board is a dead end; if all but one hold, the remaining value is
+ * removed from its cell.
+ * <p>
+ * The store keeps at most "capacity" nogoods. When full, the one least recently recorded or
+ * used for pruning is evicted.
+ * <p>
+ * A nogood of two or more assignments can only act on a board on which at least one of any two
+ * of them holds. Each is thus "watched" by two of its literals, and "update()" only looks at the
+ * nogoods watched by the literals of the fixed cells, not at the whole store.
+ */
+
+public class NogoodStore {
+
+    private final static int VALUE_COUNT = Value.values().length;
+    private final static int CELL_COUNT = Board.COUNT * Board.COUNT;
+
+    private final int capacity;
+
+    // Nogood -> Nogood, in access order, so that the least recently used one comes first
+    private final LinkedHashMap<Nogood, Nogood> nogoods;
+
+    private final List<List<Nogood>> watchers = new ArrayList<>(CELL_COUNT * VALUE_COUNT); // by literal
+    private final List<Nogood> units = new ArrayList<>(); // the nogoods of a single literal, not watched
+    private final List<Nogood> candidates = new ArrayList<>(); // those to look at in "update()"
+    private int pass; // counts the calls to "update()"
+
+    private long recorded; // over the lifetime of the store
+    private long prunings; // dead ends found or values removed
+
+    /**
+     * A nogood as a sorted array of "literals", where literal "loc.ordinal * 9 + v.index" stands for
+     * "the cell at loc has value v".
+     */
+
+    private static class Nogood {
+
+        final int[] literals;
+        final int hashCode;
+        int pass; // the last call to "update()" that looked at this nogood
+
+        Nogood(int[] literals) {
+            this.literals = literals;
+            this.hashCode = Arrays.hashCode(literals);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Nogood other) && Arrays.equals(literals, other.literals);
+        }
+
+    }
+
+    public NogoodStore(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1, not " + capacity);
+        }
+        this.capacity = capacity;
+        this.nogoods = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Nogood, Nogood> eldest) {
+                if (size() > NogoodStore.this.capacity) {
+                    unwatch(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+        for (int i = 0; i < CELL_COUNT * VALUE_COUNT; i++) {
+            watchers.add(new ArrayList<>());
+        }
+    }
+
+    static int literal(Location loc, Value v) {
+        return loc.ordinal * VALUE_COUNT + v.index;
+    }
+
+    static Value valueOf(int literal) {
+        return Value.fromIndex(literal % VALUE_COUNT);
+    }
+
+    static Location locationOf(int literal) {
+        return Location.fromOrdinal(literal / VALUE_COUNT);
+    }
+
+    private void watch(Nogood ng) {
+        if (ng.literals.length == 1) {
+            units.add(ng);
+        } else {
+            watchers.get(ng.literals[0]).add(ng);
+            watchers.get(ng.literals[1]).add(ng);
+        }
+    }
+
+    private void unwatch(Nogood ng) {
+        if (ng.literals.length == 1) {
+            units.remove(ng);
+        } else {
+            watchers.get(ng.literals[0]).remove(ng);
+            watchers.get(ng.literals[1]).remove(ng);
+        }
+    }
+
+    /**
+     * Record "literals" (which may get reordered) as a nogood.
+     */
+
+    void record(int[] literals) {
+        Arrays.sort(literals);
+        Nogood ng = new Nogood(literals);
+        if (nogoods.putIfAbsent(ng, ng) == null) {
+            watch(ng);
+            recorded++;
+        }
+    }
+
+    /**
+     * Narrow "board" with the nogoods in the store. Throws if some nogood holds completely.
+     * The returned result lists the locations whose cells changed.
+     */
+
+    UpdateResult update(Board board) throws EmptyDomainException {
+        // the nogoods watched by a fixed cell's value; those fixed by this pass are left to the next one
+        pass++;
+        candidates.clear();
+        candidates.addAll(units);
+        for (int ordinal = 0; ordinal < CELL_COUNT; ordinal++) {
+            Cell cell = board.board.get(Location.fromOrdinal(ordinal));
+            if (cell.isUnique()) {
+                for (Nogood ng : watchers.get(ordinal * VALUE_COUNT + cell.getUnique().index)) {
+                    if (ng.pass != pass) {
+                        ng.pass = pass;
+                        candidates.add(ng);
+                    }
+                }
+            }
+        }
+        LocationMap<Cell> overrides = new LocationMap<>();
+        List<Nogood> useful = new ArrayList<>();
+        boolean deadEnd = false;
+        for (Nogood ng : candidates) {
+            int open = -1; // the single literal that does not hold yet
+            boolean fires = true;
+            for (int lit : ng.literals) {
+                Location loc = locationOf(lit);
+                Cell cell = overrides.getOrDefault(loc, board.board.get(loc));
+                Value v = valueOf(lit);
+                if (cell.isUnique() && cell.getUnique() == v) {
+                    continue; // holds
+                }
+                if (open < 0 && cell.domainContains(v)) {
+                    open = lit; // may still hold
+                } else {
+                    fires = false; // cannot hold, or two literals that may still hold
+                    break;
+                }
+            }
+            if (fires) {
+                useful.add(ng);
+                if (open < 0) {
+                    deadEnd = true;
+                    break;
+                }
+                Location loc = locationOf(open);
+                Cell narrowed = new Cell(overrides.getOrDefault(loc, board.board.get(loc)), valueOf(open));
+                if (narrowed.cardinality == 0) {
+                    deadEnd = true;
+                    break;
+                }
+                overrides.put(loc, narrowed);
+            }
+        }
+        // mark as recently used
+        for (Nogood ng : useful) {
+            nogoods.get(ng);
+        }
+        prunings += useful.size();
+        if (deadEnd) {
+            throw new EmptyDomainException();
+        }
+        if (overrides.isEmpty()) {
+            return new UpdateResult(board, new LocationSet());
+        }
+        return new UpdateResult(new Board(board, overrides), overrides.getLocations());
+    }
+
+    public int size() {
+        return nogoods.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getRecorded() {
+        return recorded;
+    }
+
+    public long getPrunings() {
+        return prunings;
+    }
+
+}
@@ -0,0 +1,164 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A "portfolio" solver: several search strategies race on the same puzzle, each on its own thread,
+ * and the first one to finish provides the answer. The others are then cancelled through their
+ * SearchContext, which they notice at their next search node.
+ * <p>
+ * No strategy is fastest on every puzzle, but the fastest of a few different ones usually is fast.
+ * The portfolio counts how often each strategy won, which shows which one deserves to be the default.
+ * <p>
+ * A finished search is conclusive whether it found a solution or proved there is none, as all the
+ * strategies are complete (restarting ones included, as their node limits grow without bound).
+ * <p>
+ * Printing must stay off (the default), as the strategies run concurrently.
+ */
+
+public class Portfolio implements AutoCloseable {
+
+    /**
+     * A named way of searching. "ctxFactory" yields a fresh SearchContext for each puzzle.
+     */
+
+    public static class Strategy {
+
+        public final String name;
+        public final Supplier<SearchContext> ctxFactory;
+
+        public Strategy(String name, Supplier<SearchContext> ctxFactory) {
+            this.name = name;
+            this.ctxFactory = ctxFactory;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static class Result {
+
+        public final Board board;
+        public final String winner; // the name of the strategy that finished first
+        public final long nanos; // from start to the winner finishing
+
+        private Result(Board board, String winner, long nanos) {
+            this.board = board;
+            this.winner = winner;
+            this.nanos = nanos;
+        }
+    }
+
+    private final List<Strategy> strategies;
+    private final Constraints cos;
+    private final ExecutorService pool;
+    private final Map<String, AtomicLong> wins = new LinkedHashMap<>(); // keys fixed at construction
+
+    /**
+     * A portfolio mixing the plain deterministic search, randomized restarts with two
+     * schedules and seeds, and nogood recording.
+     */
+
+    public static List<Strategy> defaultStrategies() {
+        return List.of(
+                new Strategy("deterministic", SearchContext::deterministic),
+                new Strategy("luby(64,seed=1)", () -> SearchContext.restarting(SearchContext.Schedule.luby, 64, 1)),
+                new Strategy("geometric(32,seed=2)", () -> SearchContext.restarting(SearchContext.Schedule.geometric, 32, 2)),
+                new Strategy("nogoods(1024)", () -> SearchContext.deterministic().withNogoods(1024)));
+    }
+
+    public Portfolio() {
+        this(defaultStrategies(), new Constraints());
+    }
+
+    public Portfolio(List<Strategy> strategies, Constraints cos) {
+        if (strategies.isEmpty()) {
+            throw new IllegalArgumentException("A portfolio needs at least one strategy");
+        }
+        this.strategies = List.copyOf(strategies);
+        this.cos = cos;
+        for (Strategy s : strategies) {
+            if (wins.put(s.name, new AtomicLong()) != null) {
+                throw new IllegalArgumentException("Duplicate strategy name '" + s.name + "'");
+            }
+        }
+        this.pool = Executors.newFixedThreadPool(strategies.size(), r -> {
+            Thread t = new Thread(r, "sudoku-portfolio");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Race all strategies on "settings". Returns the first solution found, or throws if the first
+     * strategy to finish found that there is none.
+     */
+
+    public Result solve(List<Setting> settings) throws EmptyDomainException, InterruptedException {
+        long start = System.nanoTime();
+        CompletionService<Board> done = new ExecutorCompletionService<>(pool);
+        List<SearchContext> ctxs = new ArrayList<>(strategies.size());
+        Map<Future<Board>, Strategy> byFuture = new HashMap<>();
+        for (Strategy s : strategies) {
+            SearchContext ctx = s.ctxFactory.get();
+            ctxs.add(ctx);
+            byFuture.put(done.submit(() -> Sudoku.solve(settings, cos, ctx)), s);
+        }
+        try {
+            RuntimeException firstFailure = null;
+            for (int i = 0; i < strategies.size(); i++) {
+                Future<Board> f = done.take();
+                try {
+                    Board board = f.get();
+                    String winner = byFuture.get(f).name;
+                    wins.get(winner).incrementAndGet();
+                    return new Result(board, winner, System.nanoTime() - start);
+                } catch (ExecutionException exe) {
+                    if (exe.getCause() instanceof EmptyDomainException ede) {
+                        wins.get(byFuture.get(f).name).incrementAndGet();
+                        throw ede; // conclusive as well
+                    }
+                    if (exe.getCause() instanceof RuntimeException re && firstFailure == null) {
+                        firstFailure = re; // a broken strategy, keep waiting for the others
+                    }
+                }
+            }
+            throw new IllegalStateException("All strategies failed", firstFailure);
+        } finally {
+            for (SearchContext ctx : ctxs) {
+                ctx.cancel(); // no effect on the ones that are done
+            }
+        }
+    }
+
+    /**
+     * How often each strategy won, in the order the strategies were given.
+     */
+
+    public Map<String, Long> getWins() {
+        Map<String, Long> res = new LinkedHashMap<>();
+        for (Map.Entry<String, AtomicLong> e : wins.entrySet()) {
+            res.put(e.getKey(), e.getValue().get());
+        }
+        return res;
+    }
+
+    public List<Strategy> getStrategies() {
+        return strategies;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+}
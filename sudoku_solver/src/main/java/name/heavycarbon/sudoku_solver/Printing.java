@@ -1,81 +1,184 @@
 package name.heavycarbon.sudoku_solver;
 
+import java.io.PrintStream;
 import java.util.Set;
 
+/**
+ * The step-by-step trace of Sudoku.solve() as text.
+ * <p>
+ * The solver calls the methods of "Printing.get()". By default, that is a sink whose methods do
+ * nothing, so nothing is printed and nothing is formatted. "Sudoku.main()", for which the trace is
+ * the point, switches printing on with "setEnabled(true)", which swaps in a Printing that writes to
+ * System.out (as it is at that moment). Whether printing is on is thus decided once, when switching,
+ * not in every method.
+ */
+
 public class Printing {
 
-    private static String getHeader(int depth, int counter) {
-        return getSpaces(depth) + depth + ": " + counter + ": ";
+    private final static Printing NONE = new Printing();
+
+    private static volatile Printing current = NONE;
+
+    protected Printing() {
+    }
+
+    public static Printing get() {
+        return current;
     }
 
-    private static String getHeader(int depth) {
-        return getSpaces(depth) + depth + ": ";
+    public static void setEnabled(boolean enabled) {
+        current = enabled ? new ToStream(System.out) : NONE;
+    }
+
+    public static boolean isEnabled() {
+        return current != NONE;
+    }
+
+    // ---
+    // The trace events; these print nothing
+    // ---
+
+    public void atPropagateStart(int depth, ActiveConstraints acos) {
     }
 
-    private static String getSpaces(int x) {
-        return " ".repeat(Math.max(0, x));
+    public void inPropagate(int depth, int counter, Constraint cos, ActiveConstraints acos, Set<Location> changedLocs) {
     }
 
-    public static void atPropagateStart(int depth, ActiveConstraints acos) {
-        System.out.println(getSpaces(depth) + depth + ": Active constraints at propagation start: " + acos);
+    public void afterPropagationQuiescence(int depth, Board board) {
     }
 
-    public static void inPropagate(int depth, int counter, ValueCellBijectionConstraint cos, ActiveConstraints acos, Set<Location> changedLocs) {
-        String header = getHeader(depth, counter);
-        System.out.println(header + "Board updated via constraint " + cos);
-        System.out.println(header + "Locations that changed through the update: " + changedLocs);
-        System.out.println(header + "Updated active constraints: " + acos);
+    public void needToFindByTrial(int depth) {
     }
 
-    public static void afterPropagationQuiescence(int depth, Board board) {
-        String header = getHeader(depth);
-        System.out.println(header + "Board after propagation quiescence");
-        System.out.println(board);
+    public void initialBoard(Board board) {
     }
 
-    public static void needToFindByTrial(int depth) {
-        String header = getHeader(depth);
-        System.out.println(header + "Need to 'find by trial'");
+    public void restarting(int runs, long totalNodes) {
     }
 
-    public static void initialBoard(Board board) {
-        System.out.println("Initial board");
-        System.out.println("=============");
-        System.out.println(board);
+    public void solutionBoard(Board board) {
     }
 
-    public static void solutionBoard(Board board) {
-        System.out.println("Found a solution!");
-        System.out.println("=================");
-        System.out.println(board);
+    public void findByTrialStart(int depth, Location pivotLoc, Cell cell) {
     }
 
-    public static void findByTrialStart(int depth, Location pivotLoc, Cell cell) {
-        String header = getHeader(depth);
-        System.out.println(header + "Selected a pivot location " + pivotLoc.toStringOneBased() + " with domain [" + cell + "]");
+    public void findByTrialInLoop(int depth, Value v) {
     }
 
-    public static void findByTrialInLoop(int depth, Value v) {
-        String header = getHeader(depth);
-        System.out.println(header + "Trying value " + v);
+    public void findByTrialFailed(int depth, Value v, Location pivotLoc) {
     }
 
-    public static void findByTrialFailed(int depth, Value v, Location pivotLoc) {
-        String header = getHeader(depth);
-        System.out.println(header + "Value " + v + " at pivot location " + pivotLoc.toStringOneBased() + " failed");
+    public void findByTrialFailedCompletely(int depth, Location pivotLoc) {
     }
 
-    public static void findByTrialFailedCompletely(int depth, Location pivotLoc) {
-        String header = getHeader(depth);
-        System.out.println(header + "Everything at pivot location " + pivotLoc.toStringOneBased() + " failed");
+    public void initialChangedLocations(Set<Location> locs) {
     }
 
-    public static void initialChangedLocations(Set<Location> locs) {
-        System.out.println("Initial changed locations:\n" + locs);
+    public void initialActiveConstraints(ActiveConstraints acos) {
     }
 
-    public static void initialActiveConstraints(ActiveConstraints acos) {
-        System.out.println("Initial active constraints:\n" + acos);
+    /**
+     * The Printing that actually prints, to "out".
+     */
+
+    private static class ToStream extends Printing {
+
+        private final PrintStream out;
+
+        ToStream(PrintStream out) {
+            this.out = out;
+        }
+
+        private static String getHeader(int depth, int counter) {
+            return getSpaces(depth) + depth + ": " + counter + ": ";
+        }
+
+        private static String getHeader(int depth) {
+            return getSpaces(depth) + depth + ": ";
+        }
+
+        private static String getSpaces(int x) {
+            return " ".repeat(Math.max(0, x));
+        }
+
+        @Override
+        public void atPropagateStart(int depth, ActiveConstraints acos) {
+            out.println(getSpaces(depth) + depth + ": Active constraints at propagation start: " + acos);
+        }
+
+        @Override
+        public void inPropagate(int depth, int counter, Constraint cos, ActiveConstraints acos, Set<Location> changedLocs) {
+            String header = getHeader(depth, counter);
+            out.println(header + "Board updated via constraint " + cos);
+            out.println(header + "Locations that changed through the update: " + changedLocs);
+            out.println(header + "Updated active constraints: " + acos);
+        }
+
+        @Override
+        public void afterPropagationQuiescence(int depth, Board board) {
+            String header = getHeader(depth);
+            out.println(header + "Board after propagation quiescence");
+            out.println(board);
+        }
+
+        @Override
+        public void needToFindByTrial(int depth) {
+            String header = getHeader(depth);
+            out.println(header + "Need to 'find by trial'");
+        }
+
+        @Override
+        public void initialBoard(Board board) {
+            out.println("Initial board");
+            out.println("=============");
+            out.println(board);
+        }
+
+        @Override
+        public void restarting(int runs, long totalNodes) {
+            out.println("Node limit of run " + runs + " reached after " + totalNodes + " nodes in total, restarting");
+        }
+
+        @Override
+        public void solutionBoard(Board board) {
+            out.println("Found a solution!");
+            out.println("=================");
+            out.println(board);
+        }
+
+        @Override
+        public void findByTrialStart(int depth, Location pivotLoc, Cell cell) {
+            String header = getHeader(depth);
+            out.println(header + "Selected a pivot location " + pivotLoc.toStringOneBased() + " with domain [" + cell + "]");
+        }
+
+        @Override
+        public void findByTrialInLoop(int depth, Value v) {
+            String header = getHeader(depth);
+            out.println(header + "Trying value " + v);
+        }
+
+        @Override
+        public void findByTrialFailed(int depth, Value v, Location pivotLoc) {
+            String header = getHeader(depth);
+            out.println(header + "Value " + v + " at pivot location " + pivotLoc.toStringOneBased() + " failed");
+        }
+
+        @Override
+        public void findByTrialFailedCompletely(int depth, Location pivotLoc) {
+            String header = getHeader(depth);
+            out.println(header + "Everything at pivot location " + pivotLoc.toStringOneBased() + " failed");
+        }
+
+        @Override
+        public void initialChangedLocations(Set<Location> locs) {
+            out.println("Initial changed locations:\n" + locs);
+        }
+
+        @Override
+        public void initialActiveConstraints(ActiveConstraints acos) {
+            out.println("Initial active constraints:\n" + acos);
+        }
     }
 
 }
@@ -0,0 +1,221 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A propagation kernel working on packed candidate masks instead of Boards, for batches of boards.
+ * <p>
+ * It applies the same rules as ValueCellBijectionConstraint, over the same 27 units, until quiescence:
+ * <p>
+ * - the values of the fixed cells of a unit are OR-ed together and AND-NOT-ed into the other cells
+ * - a value found in exactly one cell of a unit (a "hidden single") fixes that cell
+ * <p>
+ * Each board is 81 masks of 9 bits (bit "v.index" set if "v" is a candidate). A batch of "n" boards
+ * is stored "cell-major": the mask of cell "c" (its Location.ordinal) of board "b" is at index
+ * "c * n + b". Consecutive boards of the same cell are thus adjacent, which is what the
+ * vectorized kernel (VectorPropagationKernel) needs to process one board per lane in lock-step.
+ * <p>
+ * This class is the scalar implementation; obtain() returns the vectorized one if the system
+ * property "sudoku.kernel" is "vector" and the "jdk.incubator.vector" module is available.
+ */
+
+public class PropagationKernel {
+
+    public final static int STUCK = 0; // quiescent, but some cells are not fixed
+    public final static int SOLVED = 1; // quiescent, all cells are fixed
+    public final static int CONTRADICTION = -1; // the masks of this board are then unspecified
+
+    protected final static int CELL_COUNT = Board.COUNT * Board.COUNT;
+    protected final static int ALL = (1 << Board.COUNT) - 1;
+    protected final static int[][] UNITS = makeUnits(); // the 27 units, as 9 cell indexes each
+
+    private static int[][] makeUnits() {
+        List<ValueCellBijectionConstraint> all = new Constraints().getUnits(); // the classic 27
+        int[][] units = new int[all.size()][Board.COUNT];
+        for (int u = 0; u < all.size(); u++) {
+            for (int pos = 0; pos < Board.COUNT; pos++) {
+                Location loc = all.get(u).getLocationAtPosition(pos);
+                units[u][pos] = loc.ordinal;
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Obtain the kernel selected by the system property "sudoku.kernel" ("scalar", the default, or "vector").
+     * Falls back to the scalar kernel if the Vector API is not available at runtime; "getName()"
+     * of the result says which one it is.
+     */
+
+    public static PropagationKernel obtain() {
+        if ("vector".equals(System.getProperty("sudoku.kernel"))) {
+            try {
+                return (PropagationKernel) Class.forName(PropagationKernel.class.getPackageName() + ".VectorPropagationKernel")
+                        .getDeclaredConstructor()
+                        .newInstance();
+            } catch (ReflectiveOperationException | LinkageError exe) {
+                // "--add-modules jdk.incubator.vector" was not given, fall back
+            }
+        }
+        return new PropagationKernel();
+    }
+
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Propagate each of the "boardCount" boards in "masks" (laid out cell-major) to quiescence,
+     * in place. The outcome for board "b" is written to "status[b]".
+     */
+
+    public void propagate(int[] masks, int boardCount, int[] status) {
+        for (int b = 0; b < boardCount; b++) {
+            status[b] = propagateLane(masks, boardCount, b);
+        }
+    }
+
+    protected static boolean isSingle(int m) {
+        return m != 0 && (m & (m - 1)) == 0;
+    }
+
+    /**
+     * Propagate a single board "b" of a batch with the given stride to quiescence.
+     */
+
+    protected static int propagateLane(int[] masks, int stride, int b) {
+        boolean changed;
+        do {
+            changed = false;
+            for (int[] unit : UNITS) {
+                int fixed = 0;
+                for (int cell : unit) {
+                    int m = masks[cell * stride + b];
+                    if (m == 0 || (isSingle(m) && (fixed & m) != 0)) {
+                        return CONTRADICTION; // empty cell, or the same value fixed twice
+                    }
+                    if (isSingle(m)) {
+                        fixed |= m;
+                    }
+                }
+                int once = 0;
+                int twice = 0;
+                for (int cell : unit) {
+                    int i = cell * stride + b;
+                    int m = masks[i];
+                    if (!isSingle(m)) {
+                        int n = m & ~fixed;
+                        if (n != m) {
+                            masks[i] = n;
+                            changed = true;
+                            m = n;
+                        }
+                    }
+                    twice |= once & m;
+                    once |= m;
+                }
+                if (once != ALL) {
+                    return CONTRADICTION; // some value has no place left in this unit
+                }
+                int hidden = once & ~twice & ~fixed;
+                if (hidden != 0) {
+                    for (int cell : unit) {
+                        int i = cell * stride + b;
+                        int h = masks[i] & hidden;
+                        if (h != 0 && h != masks[i]) {
+                            if (!isSingle(h)) {
+                                return CONTRADICTION; // two hidden singles in the same cell
+                            }
+                            masks[i] = h;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        } while (changed);
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            if (!isSingle(masks[cell * stride + b])) {
+                return STUCK;
+            }
+        }
+        return SOLVED;
+    }
+
+    // ---
+    // Conversion between Boards and masks
+    // ---
+
+    /**
+     * Pack "boards" into an array of masks laid out cell-major.
+     */
+
+    public static int[] toMasks(List<Board> boards) {
+        int n = boards.size();
+        int[] masks = new int[CELL_COUNT * n];
+        for (int b = 0; b < n; b++) {
+            for (Map.Entry<Location, Cell> e : boards.get(b).board.entrySet()) {
+                masks[e.getKey().ordinal * n + b] = e.getValue().getDomainBits();
+            }
+        }
+        return masks;
+    }
+
+    /**
+     * Unpack board "b" of a batch of "boardCount" boards, using "template" for the cells that are unchanged.
+     */
+
+    public static Board fromMasks(int[] masks, int boardCount, int b, Board template) {
+        LocationMap<Cell> overrides = new LocationMap<>();
+        for (Map.Entry<Location, Cell> e : template.board.entrySet()) {
+            int m = masks[e.getKey().ordinal * boardCount + b];
+            if (m != e.getValue().getDomainBits()) {
+                overrides.put(e.getKey(), new Cell(e.getValue(), ~m));
+            }
+        }
+        return overrides.isEmpty() ? template : new Board(template, overrides);
+    }
+
+    // ---
+    // Measuring
+    // ---
+
+    /**
+     * Compare the scalar and the selected kernel on a batch of random boards.
+     * Run with "--add-modules jdk.incubator.vector -Dsudoku.kernel=vector".
+     * The optional arguments are the batch size and the number of rounds.
+     */
+
+    public static void main(String[] argv) throws EmptyDomainException {
+        int boardCount = (argv.length > 0) ? Integer.parseInt(argv[0]) : 4096;
+        int rounds = (argv.length > 1) ? Integer.parseInt(argv[1]) : 50;
+        Board solution = Sudoku.solve(CourseraSettings.getSettings());
+        Random random = new Random(4711);
+        List<Board> boards = new ArrayList<>(boardCount);
+        for (int b = 0; b < boardCount; b++) {
+            Board board = new Board();
+            for (Map.Entry<Location, Cell> e : solution.board.entrySet()) {
+                if (random.nextInt(100) < 30) {
+                    board = board.setCell(e.getKey(), e.getValue().getUnique()).board;
+                }
+            }
+            boards.add(board);
+        }
+        int[] pristine = toMasks(boards);
+        int[] status = new int[boardCount];
+        for (PropagationKernel kernel : List.of(new PropagationKernel(), obtain())) {
+            long best = Long.MAX_VALUE;
+            for (int r = 0; r < rounds; r++) {
+                int[] masks = pristine.clone();
+                long start = System.nanoTime();
+                kernel.propagate(masks, boardCount, status);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%-8s %d boards in %.3f ms (best of %d), %.0f boards/s%n",
+                    kernel.getName(), boardCount, best / 1e6, rounds, boardCount / (best / 1e9));
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The "81-char" line format used to exchange puzzles with other programs.
+ * <p>
+ * A puzzle is written row by row, top-left to bottom-right, as 81 characters.
+ * The digits 1..9 are clues, '0' or '.' mark an empty cell.
+ * A solved (or partially solved) Board is written the same way, with '.' for
+ * any cell whose domain does not have cardinality 1.
+ */
+
+public class PuzzleFormat {
+
+    public final static int LENGTH = Board.COUNT * Board.COUNT;
+
+    /**
+     * Parse an 81-char line into the list of Settings it describes.
+     * Leading and trailing whitespace is ignored.
+     * Throws IllegalArgumentException if the line is malformed.
+     */
+
+    public static List<Setting> parse(CharSequence line) {
+        String trimmed = line.toString().strip();
+        if (trimmed.length() != LENGTH) {
+            throw new IllegalArgumentException("Expected " + LENGTH + " characters but got " + trimmed.length());
+        }
+        List<Setting> settings = new LinkedList<>();
+        for (int i = 0; i < LENGTH; i++) {
+            char ch = trimmed.charAt(i);
+            if (ch >= '1' && ch <= '9') {
+                int row1 = i / Board.COUNT + 1;
+                int col1 = i % Board.COUNT + 1;
+                settings.add(Setting.f(row1, col1, Value.fromDigit(ch - '0')));
+            } else if (ch != '0' && ch != '.') {
+                throw new IllegalArgumentException("Unexpected character '" + ch + "' at position " + i);
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * The next puzzle line from "reader", stripped, skipping blank lines and lines starting with
+     * '#'; null at the end of the input. The line is not checked.
+     */
+
+    static String readPuzzleLine(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isBlank() && !line.startsWith("#")) {
+                return line.strip();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parse an 81-char line into "digits", row by row, with 0 for an empty cell. Unlike parse(),
+     * this does not allocate, and does not ignore whitespace.
+     * Throws IllegalArgumentException if the line is malformed.
+     */
+
+    public static void parseDigits(CharSequence line, int[] digits) {
+        if (line.length() != LENGTH) {
+            throw new IllegalArgumentException("Expected " + LENGTH + " characters but got " + line.length());
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            char ch = line.charAt(i);
+            if (ch >= '1' && ch <= '9') {
+                digits[i] = ch - '0';
+            } else if (ch == '0' || ch == '.') {
+                digits[i] = 0;
+            } else {
+                throw new IllegalArgumentException("Unexpected character '" + ch + "' at position " + i);
+            }
+        }
+    }
+
+    /**
+     * The number of bytes of a "packed" puzzle or solution: two digits per byte, the first
+     * digit of a pair in the high nibble, the last nibble of the last byte unused.
+     */
+
+    public final static int PACKED_LENGTH = (LENGTH + 1) / 2;
+
+    /**
+     * Pack the 81 "digits" (0..9) into PACKED_LENGTH bytes of "out" starting at "offset".
+     */
+
+    public static void pack(int[] digits, byte[] out, int offset) {
+        for (int i = 0; i < PACKED_LENGTH; i++) {
+            int high = digits[2 * i];
+            int low = (2 * i + 1 < LENGTH) ? digits[2 * i + 1] : 0;
+            out[offset + i] = (byte) ((high << 4) | low);
+        }
+    }
+
+    /**
+     * Unpack PACKED_LENGTH bytes of "in" starting at "offset" into 81 "digits".
+     */
+
+    public static void unpack(byte[] in, int offset, int[] digits) {
+        for (int i = 0; i < LENGTH; i++) {
+            int b = in[offset + i / 2];
+            digits[i] = (i % 2 == 0) ? (b >> 4) & 0xF : b & 0xF;
+        }
+    }
+
+    /**
+     * Whether the 81 "solution" digits fill the grid by the classic rules and keep the clues of the
+     * 81 "puzzle" digits (0 for an empty cell).
+     */
+
+    static boolean isSolution(int[] puzzle, int[] solution) {
+        int[] rows = new int[Board.COUNT];
+        int[] cols = new int[Board.COUNT];
+        int[] blocks = new int[Board.COUNT];
+        for (int i = 0; i < LENGTH; i++) {
+            int d = solution[i];
+            if (d < 1 || d > Board.COUNT || (puzzle[i] != 0 && puzzle[i] != d)) {
+                return false;
+            }
+            int bit = 1 << (d - 1);
+            int row = i / Board.COUNT;
+            int col = i % Board.COUNT;
+            int block = (row / 3) * 3 + col / 3;
+            if (((rows[row] | cols[col] | blocks[block]) & bit) != 0) {
+                return false;
+            }
+            rows[row] |= bit;
+            cols[col] |= bit;
+            blocks[block] |= bit;
+        }
+        return true;
+    }
+
+    /**
+     * Write a Board as an 81-char line.
+     */
+
+    public static String format(Board board) {
+        StringBuilder buf = new StringBuilder(LENGTH);
+        for (int row0 = 0; row0 < Board.COUNT; row0++) {
+            for (int col0 = 0; col0 < Board.COUNT; col0++) {
+                Cell cell = board.board.get(Location.obtain0(row0, col0));
+                if (cell.isUnique()) {
+                    buf.append((char) ('0' + cell.getUnique().toDigit()));
+                } else {
+                    buf.append('.');
+                }
+            }
+        }
+        return buf.toString();
+    }
+
+}
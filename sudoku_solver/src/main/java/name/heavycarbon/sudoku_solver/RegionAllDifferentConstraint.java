@@ -0,0 +1,125 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.*;
+
+/**
+ * "All different" over an arbitrary region of at most 9 cells: the diagonals of "X-Sudoku",
+ * the irregular regions of "jigsaw Sudoku", or the extra regions of other variants.
+ * <p>
+ * A region of exactly 9 cells gets the same treatment as a row, column or block: it is a
+ * bijection between values and cells, so hidden singles are found too. As the Board only keeps
+ * value supports for rows, columns and blocks, the supports of the region are collected at each update.
+ */
+
+public class RegionAllDifferentConstraint implements Constraint {
+
+    private final List<Location> locations; // in the order given, which defines the positions
+    private final Location[] byPosition;
+    private final String name;
+
+    public RegionAllDifferentConstraint(List<Location> locations, String name) {
+        if (locations.isEmpty() || locations.size() > Board.COUNT || new HashSet<>(locations).size() != locations.size()) {
+            throw new IllegalArgumentException("A region must have 1.." + Board.COUNT + " distinct cells, not " + locations);
+        }
+        this.locations = List.copyOf(locations);
+        this.byPosition = locations.toArray(new Location[0]);
+        this.name = name;
+    }
+
+    /**
+     * The two main diagonals of "X-Sudoku".
+     */
+
+    public static List<RegionAllDifferentConstraint> diagonals() {
+        List<Location> down = new ArrayList<>(Board.COUNT);
+        List<Location> up = new ArrayList<>(Board.COUNT);
+        for (int i = 0; i < Board.COUNT; i++) {
+            down.add(Location.obtain0(i, i));
+            up.add(Location.obtain0(Board.COUNT - 1 - i, i));
+        }
+        return List.of(new RegionAllDifferentConstraint(down, "diagonal(1)"), new RegionAllDifferentConstraint(up, "diagonal(2)"));
+    }
+
+    /**
+     * The regions of a "jigsaw Sudoku", given as 81 characters (row by row) where the digit
+     * 1..9 at a cell's position names the region the cell belongs to.
+     * Use with "new Constraints(false, ...)", as the regions replace the blocks.
+     */
+
+    public static List<RegionAllDifferentConstraint> jigsaw(String layout) {
+        String trimmed = layout.strip();
+        if (trimmed.length() != Board.COUNT * Board.COUNT) {
+            throw new IllegalArgumentException("Expected " + Board.COUNT * Board.COUNT + " characters but got " + trimmed.length());
+        }
+        List<List<Location>> regions = new ArrayList<>(Board.COUNT);
+        for (int i = 0; i < Board.COUNT; i++) {
+            regions.add(new ArrayList<>(Board.COUNT));
+        }
+        for (int i = 0; i < trimmed.length(); i++) {
+            int region = trimmed.charAt(i) - '1';
+            if (region < 0 || region >= Board.COUNT) {
+                throw new IllegalArgumentException("Unexpected character '" + trimmed.charAt(i) + "' at position " + i);
+            }
+            regions.get(region).add(Location.obtain0(i / Board.COUNT, i % Board.COUNT));
+        }
+        List<RegionAllDifferentConstraint> res = new ArrayList<>(Board.COUNT);
+        for (int i = 0; i < Board.COUNT; i++) {
+            if (regions.get(i).size() != Board.COUNT) {
+                throw new IllegalArgumentException("Region " + (i + 1) + " has " + regions.get(i).size() + " cells instead of " + Board.COUNT);
+            }
+            res.add(new RegionAllDifferentConstraint(regions.get(i), "region(" + (i + 1) + ")"));
+        }
+        return res;
+    }
+
+    @Override
+    public Collection<Location> getMonitoredLocations() {
+        return locations;
+    }
+
+    private boolean isBijection() {
+        return byPosition.length == Board.COUNT;
+    }
+
+    private final static Set<DomainChange.Kind> FIXED_ONLY = EnumSet.of(DomainChange.Kind.fixed);
+
+    /**
+     * Without hidden singles, only a cell becoming fixed can lead to a narrowing.
+     */
+
+    @Override
+    public Set<DomainChange.Kind> getSubscribedKinds() {
+        return isBijection() ? ALL_KINDS : FIXED_ONLY;
+    }
+
+    @Override
+    public UpdateResult update(Board board) throws EmptyDomainException {
+        Cell[] cells = new Cell[byPosition.length];
+        int[] support = new int[Board.COUNT];
+        for (int pos = 0; pos < byPosition.length; pos++) {
+            cells[pos] = board.board.get(byPosition[pos]);
+            for (Value v : cells[pos]) {
+                support[v.index] |= (1 << pos);
+            }
+        }
+        int changes = ValueCellBijectionConstraint.updateUnit(cells, support, isBijection());
+        return ValueCellBijectionConstraint.makeUpdateResult(board, byPosition, cells, changes);
+    }
+
+    @Override
+    public void throwIfNotfulfillsSolutionCriterium(Board board) {
+        Set<Value> seen = EnumSet.noneOf(Value.class);
+        for (Location loc : locations) {
+            Cell cell = board.board.get(loc);
+            if (!cell.isUnique() || !seen.add(cell.getUnique())) {
+                throw new IllegalStateException("Not a solution state because constraint " + this + " finds [" + cell + "] at " + loc);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,320 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The state of one search, threaded through "Sudoku.find()" and "Sudoku.findByTrial()".
+ * <p>
+ * Boards and ActiveConstraints belong to a single depth of the search; the SearchContext is
+ * shared by all depths and survives restarts. It decides which pivot cell to branch on and in
+ * which order to try its values, and it counts the search nodes (the trial boards).
+ * <p>
+ * The "deterministic" context branches on the first cell with the smallest domain and tries the
+ * values in ascending order, as the solver always did. A "restarting" context instead breaks ties
+ * among the cells with the smallest domain by preferring cells whose trials failed often before
+ * (their "weight"), then at random, and tries the values in random order. Whenever the number of
+ * nodes exceeds the limit for the current run, the search is abandoned and restarted from the
+ * top with a larger limit, but with the weights learned so far. This avoids getting stuck in the
+ * huge failing subtrees that an unlucky early choice can lead to ("heavy-tailed" runtimes).
+ * <p>
+ * Either kind of context may additionally record nogoods (see NogoodStore) from the failed
+ * trials, keeping track of the decisions on the path to the current trial board for that.
+ * Like the weights, the nogoods survive restarts.
+ * <p>
+ * It may also use a TranspositionTable, which may outlive the context and be shared with others:
+ * propagated boards already known to be unsatisfiable are not searched again.
+ * <p>
+ * A SearchContext is confined to the thread running the search, except for "cancel()", which
+ * another thread may call to make the search stop soon (at the next search node) with a
+ * CancelledException.
+ */
+
+public class SearchContext {
+
+    /**
+     * How the node limit grows from one run to the next. The limit of run "i" (counting from 1)
+     * is "unit" times the factor given here.
+     */
+
+    public enum Schedule {
+
+        luby, // 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ...
+        geometric; // 1, 1.5, 2.25, ...
+
+        public long getLimit(int run, long unit) {
+            double factor = (this == luby) ? luby(run) : Math.pow(1.5, run - 1);
+            return (long) Math.min(Long.MAX_VALUE / 2, unit * factor);
+        }
+
+    }
+
+    /**
+     * Thrown when the node limit of the current run has been reached. Not a checked exception, as it
+     * must pass through the "catch (EmptyDomainException ex)" of "findByTrial()" untouched.
+     */
+
+    static class LimitReachedException extends RuntimeException {
+
+        private final static long serialVersionUID = 1L;
+
+        LimitReachedException() {
+            super(null, null, false, false); // no stack trace, it is thrown often
+        }
+
+    }
+
+    /**
+     * Thrown once "cancel()" has been called on the context, at the next search node.
+     */
+
+    public static class CancelledException extends RuntimeException {
+
+        private final static long serialVersionUID = 1L;
+
+        CancelledException() {
+            super("Search cancelled", null, false, false);
+        }
+
+    }
+
+    private final Random random; // null if deterministic
+    private final Schedule schedule; // null if not restarting
+    private final long unit; // nodes in a run of schedule factor 1
+    private final int[] weights = new int[Board.COUNT * Board.COUNT]; // failed trials, by location, across restarts
+
+    private final int[] decisions = new int[Board.COUNT * Board.COUNT]; // as NogoodStore literals, from the top
+    private int decisionCount;
+    private NogoodStore nogoods; // null if not recording nogoods
+    private TraceRecorder trace; // null if not tracing
+    private TranspositionTable transpositions; // null if none
+    private Board startBoard; // the board every run starts from, set by "Sudoku.solve()"
+
+    private long nodeLimit = Long.MAX_VALUE; // for the current run
+    private long nodes; // in the current run
+    private long totalNodes; // over all runs
+    private int runs; // started so far
+    private volatile boolean cancelled; // set from another thread
+
+    private SearchContext(Random random, Schedule schedule, long unit) {
+        this.random = random;
+        this.schedule = schedule;
+        this.unit = unit;
+    }
+
+    public static SearchContext deterministic() {
+        return new SearchContext(null, null, 0);
+    }
+
+    public static SearchContext restarting(Schedule schedule, long unit, long seed) {
+        if (unit < 1) {
+            throw new IllegalArgumentException("The unit of the restart schedule must be at least 1, not " + unit);
+        }
+        return new SearchContext(new Random(seed), schedule, unit);
+    }
+
+    /**
+     * The i-th element (counting from 1) of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, ...
+     */
+
+    public static long luby(int i) {
+        if (i < 1) {
+            throw new IllegalArgumentException("The Luby sequence starts at 1, not " + i);
+        }
+        int k = 1;
+        while ((1L << k) - 1 < i) {
+            k++;
+        }
+        // now 2^(k-1) <= i <= 2^k - 1
+        if (i == (1L << k) - 1) {
+            return 1L << (k - 1);
+        } else {
+            return luby(i - (1 << (k - 1)) + 1);
+        }
+    }
+
+    /**
+     * Record nogoods from failed trials, in a store of the given capacity, and prune with them.
+     */
+
+    public SearchContext withNogoods(int capacity) {
+        this.nogoods = new NogoodStore(capacity);
+        return this;
+    }
+
+    public NogoodStore getNogoods() {
+        return nogoods;
+    }
+
+    /**
+     * Record the search to "trace" (see TraceRecorder).
+     */
+
+    public SearchContext withTrace(TraceRecorder trace) {
+        this.trace = trace;
+        return this;
+    }
+
+    public TraceRecorder getTrace() {
+        return trace;
+    }
+
+    /**
+     * Skip the boards that "tt" knows to be unsatisfiable, and record those found to be.
+     * The table must only be used with the same Constraints.
+     */
+
+    public SearchContext withTranspositionTable(TranspositionTable tt) {
+        this.transpositions = tt;
+        return this;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return transpositions;
+    }
+
+    public boolean isRestarting() {
+        return schedule != null;
+    }
+
+    /**
+     * Start the next run, with the node limit given by the schedule.
+     */
+
+    void startRun() {
+        throwIfCancelled();
+        runs++;
+        decisionCount = 0;
+        nodes = 0;
+        nodeLimit = isRestarting() ? schedule.getLimit(runs, unit) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Called for each trial board. Throws if the node limit of the current run has been reached.
+     */
+
+    void countNode() {
+        throwIfCancelled();
+        nodes++;
+        totalNodes++;
+        if (nodes > nodeLimit) {
+            throw new LimitReachedException();
+        }
+    }
+
+    /**
+     * Ask the search using this context to stop. May be called from any thread.
+     */
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancelledException();
+        }
+    }
+
+    /**
+     * Called before descending into the trial of "v" at "pivotLoc".
+     */
+
+    void pushDecision(Location pivotLoc, Value v) {
+        decisions[decisionCount++] = NogoodStore.literal(pivotLoc, v);
+    }
+
+    /**
+     * Called when leaving the trial entered by the last "pushDecision()", however that happens.
+     */
+
+    void popDecision() {
+        decisionCount--;
+    }
+
+    void setStartBoard(Board startBoard) {
+        this.startBoard = startBoard;
+    }
+
+    Board getStartBoard() {
+        return startBoard;
+    }
+
+    /**
+     * A copy of the decisions on the path to the current trial board, the last one pushed last.
+     */
+
+    int[] getDecisions() {
+        return Arrays.copyOf(decisions, decisionCount);
+    }
+
+    /**
+     * Called when the trial of the last pushed decision failed, while it is still pushed.
+     */
+
+    void trialFailed(Location pivotLoc) {
+        weights[pivotLoc.row0 * Board.COUNT + pivotLoc.col0]++;
+    }
+
+    /**
+     * Select the cell to branch on among those with the smallest domain.
+     */
+
+    Location choosePivot(Board board) {
+        List<Location> smallest = board.findCellsWithSmallestDomainThatIsNotOne();
+        if (random == null) {
+            return smallest.getFirst();
+        }
+        Location best = null;
+        int bestWeight = -1;
+        int ties = 0;
+        for (Location loc : smallest) {
+            int w = weights[loc.row0 * Board.COUNT + loc.col0];
+            if (w > bestWeight) {
+                best = loc;
+                bestWeight = w;
+                ties = 1;
+            } else if (w == bestWeight && random.nextInt(++ties) == 0) {
+                best = loc; // reservoir sampling among the ties
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The values of "cell" in the order in which they shall be tried.
+     */
+
+    List<Value> orderValues(Cell cell) {
+        List<Value> res = new ArrayList<>(cell.cardinality);
+        for (Value v : cell) {
+            res.add(v);
+        }
+        if (random != null) {
+            for (int i = res.size() - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                res.set(i, res.set(j, res.get(i)));
+            }
+        }
+        return res;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getTotalNodes() {
+        return totalNodes;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+}
@@ -0,0 +1,122 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes all the solutions of a puzzle to "Flow" subscribers, searching only as far as they
+ * have requested.
+ * <p>
+ * Every subscriber gets its own SolutionSpliterator, so it sees all the solutions from the start.
+ * The search runs on "executor", in the order of SolutionSpliterator, and only while the
+ * subscriber has outstanding demand: once it has received all it requested, the search stops
+ * where it is, until "request()" is called again. After "cancel()", the search stops at the next
+ * solution at the latest.
+ */
+
+public class SolutionPublisher implements Flow.Publisher<Board> {
+
+    private final List<Setting> settings;
+    private final Constraints cos;
+    private final Executor executor;
+
+    public SolutionPublisher(List<Setting> settings, Constraints cos, Executor executor) {
+        this.settings = List.copyOf(settings);
+        this.cos = cos;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Board> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        Subscription subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Delivers solutions to one subscriber. Signals are sent by "drain()", which runs on the
+     * executor; "pending" makes sure that only one "drain()" runs at a time, and that a request
+     * coming in while it runs is not missed.
+     */
+
+    private class Subscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Board> subscriber;
+        private final AtomicLong demand = new AtomicLong(); // Long.MAX_VALUE means unbounded
+        private final AtomicInteger pending = new AtomicInteger(); // requests to drain not yet handled
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException badRequest;
+        private SolutionSpliterator solutions; // created by the first "drain()"
+        private boolean terminated; // onComplete or onError has been sent
+        private Board next;
+
+        Subscription(Flow.Subscriber<? super Board> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Non-positive request " + n); // as demanded by rule 3.9
+            } else {
+                demand.getAndAccumulate(n, (cur, add) -> (cur + add < 0) ? Long.MAX_VALUE : cur + add);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                while (!cancelled && !terminated) {
+                    if (badRequest != null) {
+                        terminated = true;
+                        subscriber.onError(badRequest);
+                        break;
+                    }
+                    if (demand.get() == 0) {
+                        break;
+                    }
+                    boolean advanced;
+                    try {
+                        if (solutions == null) {
+                            solutions = SolutionSpliterator.of(settings, cos);
+                        }
+                        advanced = solutions.tryAdvance(board -> next = board);
+                    } catch (RuntimeException ex) {
+                        terminated = true;
+                        subscriber.onError(ex);
+                        break;
+                    }
+                    if (!advanced) {
+                        terminated = true;
+                        subscriber.onComplete();
+                        break;
+                    }
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    Board board = next;
+                    next = null;
+                    subscriber.onNext(board);
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Enumerates all the solutions of a puzzle, lazily: the search stops at each solution it finds,
+ * and resumes from there when the next one is asked for.
+ * <p>
+ * "Sudoku.find()" keeps the search on the Java stack, which is lost once it returns. Here the
+ * search is kept in an explicit stack of branches not yet explored, each a Board with a trial
+ * value set at a pivot cell. As Boards are immutable, a branch is self-contained and can be
+ * explored by any thread. This makes "trySplit()" easy: it hands off half of the branches, the
+ * ones nearest the root, which have the largest subtrees, so that "parallel()" streams split the
+ * search tree between threads.
+ * <p>
+ * The search is that of the deterministic SearchContext (smallest domain first, values in
+ * ascending order), so a sequential enumeration starts with the solution that "Sudoku.solve()"
+ * finds. After a split, the two halves enumerate in no particular order relative to each other,
+ * so the spliterator is not ORDERED.
+ * <p>
+ * A SolutionSpliterator is not thread-safe, but the Constraints may be shared by the spliterators
+ * that "trySplit()" makes.
+ */
+
+public class SolutionSpliterator implements Spliterator<Board> {
+
+    private static class Branch {
+
+        final Board board;
+        final Location loc; // the pivot cell set for the trial, null if "board" has been propagated already
+        final int depth; // for Printing
+
+        Branch(Board board, Location loc, int depth) {
+            this.board = board;
+            this.loc = loc;
+            this.depth = depth;
+        }
+    }
+
+    private final Constraints cos;
+    private final Deque<Branch> stack; // the next branch to explore at the head, those nearest the root at the tail
+    private Board found; // found by "trySplit()", to be returned by the next "tryAdvance()"
+    private long nodes;
+
+    private SolutionSpliterator(Constraints cos, Deque<Branch> stack) {
+        this.cos = cos;
+        this.stack = stack;
+    }
+
+    public static SolutionSpliterator of(List<Setting> settings) {
+        return of(settings, new Constraints());
+    }
+
+    /**
+     * The solutions of a variant, as described by "cos".
+     */
+
+    public static SolutionSpliterator of(List<Setting> settings, Constraints cos) {
+        Deque<Branch> stack = new ArrayDeque<>();
+        try {
+            ActiveConstraints acos = new ActiveConstraints();
+            Board initBoard = Sudoku.initialBoardSetupAndConstraintActivation(settings, cos, acos);
+            stack.push(new Branch(Sudoku.propagate(0, cos, acos, initBoard), null, 0));
+        } catch (EmptyDomainException ex) {
+            // the clues contradict each other: there are no solutions
+        }
+        return new SolutionSpliterator(cos, stack);
+    }
+
+    /**
+     * A stream of all the solutions, sequential unless "parallel" is set.
+     */
+
+    public static Stream<Board> stream(List<Setting> settings, Constraints cos, boolean parallel) {
+        return StreamSupport.stream(of(settings, cos), parallel);
+    }
+
+    /**
+     * Explore the branch at the head of the stack: propagate it, then replace it by its children,
+     * unless it fails or is a solution. Returns the solution, or null.
+     */
+
+    private Board step() {
+        Branch branch = stack.pop();
+        Board board = branch.board;
+        if (branch.loc != null) {
+            nodes++;
+            ActiveConstraints acos = new ActiveConstraints();
+            acos.activateAllConstraintsMonitoringThisLocation(branch.loc, null, cos, true);
+            try {
+                board = Sudoku.propagate(branch.depth, cos, acos, board);
+            } catch (EmptyDomainException ex) {
+                return null; // this trial failed
+            }
+        }
+        if (board.isDone()) {
+            // throws if a constraint is violated or a cell has a domain of cardinality != 1
+            cos.throwIfNotFulfillsSolutionCriterium(board);
+            return board;
+        }
+        Location pivotLoc = board.findCellsWithSmallestDomainThatIsNotOne().getFirst();
+        List<Value> values = new ArrayList<>();
+        for (Value v : board.board.get(pivotLoc)) {
+            values.add(v);
+        }
+        // pushed in reverse, so that the smallest value is explored first
+        for (int i = values.size() - 1; i >= 0; i--) {
+            stack.push(new Branch(new Board(board, new Cell(values.get(i)), pivotLoc), pivotLoc, branch.depth + 1));
+        }
+        return null;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Board> action) {
+        if (found != null) {
+            Board board = found;
+            found = null;
+            action.accept(board);
+            return true;
+        }
+        while (!stack.isEmpty()) {
+            Board board = step();
+            if (board != null) {
+                action.accept(board);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hand off the half of the unexplored branches nearest the root. If there is only one, explore
+     * it until there are more.
+     */
+
+    @Override
+    public Spliterator<Board> trySplit() {
+        while (found == null && stack.size() == 1) {
+            found = step();
+        }
+        if (stack.size() < 2) {
+            return null;
+        }
+        Deque<Branch> handOff = new ArrayDeque<>();
+        for (int i = stack.size() / 2; i > 0; i--) {
+            handOff.addFirst(stack.removeLast());
+        }
+        return new SolutionSpliterator(cos, handOff);
+    }
+
+    /**
+     * The number of solutions is not known in advance.
+     */
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | DISTINCT;
+    }
+
+    /**
+     * The number of trials (search nodes) explored so far by this spliterator.
+     */
+
+    public long getNodes() {
+        return nodes;
+    }
+
+}
@@ -0,0 +1,498 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.List;
+
+/**
+ * A reusable solver that does not allocate once constructed.
+ * <p>
+ * "Sudoku.solve()" builds a new immutable Board for every narrowing, and new ActiveConstraints,
+ * maps and lists at every depth. That makes it easy to follow, but a program solving many puzzles
+ * spends much of its time allocating. A Solver instead holds all the state a solve needs, allocated
+ * once, for boards of "Board.COUNT" x "Board.COUNT" cells, and reuses it for every puzzle:
+ * <p>
+ * - the board, as one candidate mask per cell (as in PropagationKernel)
+ * - the trail, recording (cell, old mask) for every narrowing, so that backtracking undoes
+ *   narrowings instead of going back to an older Board
+ * - the propagation queue, holding the units to examine, each at most once
+ * - per-depth buffers: the pivot cell, the values still to try, and the trail mark to undo to
+ * - the Zobrist hash of the masks (see Zobrist), updated by narrowing and by undoing
+ * <p>
+ * With a TranspositionTable, a propagated state already known to be unsatisfiable is not searched
+ * again, and every exhausted state is recorded as such. The table may be shared by the Solvers of
+ * several threads.
+ * <p>
+ * The rules are those of ValueCellBijectionConstraint over the 27 classic units; the search is
+ * that of the deterministic SearchContext (smallest domain first, ties broken by position on the
+ * board, values in ascending order).
+ * <p>
+ * A Solver is confined to the thread that created it. Use one per thread, e.g. in a ThreadLocal.
+ */
+
+public class Solver {
+
+    private final static int CELL_COUNT = Board.COUNT * Board.COUNT;
+    private final static int ALL = (1 << Board.COUNT) - 1;
+    private final static int[][] UNITS = PropagationKernel.UNITS;
+    private final static int[][] UNITS_OF_CELL = makeUnitsOfCell();
+
+    private static int[][] makeUnitsOfCell() {
+        int[][] res = new int[CELL_COUNT][];
+        int[] count = new int[CELL_COUNT];
+        for (int[] unit : UNITS) {
+            for (int cell : unit) {
+                count[cell]++;
+            }
+        }
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            res[cell] = new int[count[cell]];
+            count[cell] = 0;
+        }
+        for (int u = 0; u < UNITS.length; u++) {
+            for (int cell : UNITS[u]) {
+                res[cell][count[cell]++] = u;
+            }
+        }
+        return res;
+    }
+
+    private final Thread owner = Thread.currentThread();
+
+    // the board
+
+    private final int[] masks = new int[CELL_COUNT];
+
+    // the trail: a cell loses at least one candidate per narrowing, so there are at most
+    // CELL_COUNT * (Board.COUNT - 1) narrowings on any path from the top
+
+    private final int[] trailCell = new int[CELL_COUNT * Board.COUNT];
+    private final int[] trailMask = new int[CELL_COUNT * Board.COUNT];
+    private int trailSize;
+    private long hash; // Zobrist hash of "masks"
+
+    // the propagation queue: a ring buffer of unit indexes, each unit in it at most once
+
+    private final int[] queue = new int[UNITS.length];
+    private final boolean[] queued = new boolean[UNITS.length];
+    private int queueHead;
+    private int queueSize;
+
+    // per-depth buffers: every decision fixes a cell that was not fixed, so the depth is at most CELL_COUNT
+
+    private final int[] depthCell = new int[CELL_COUNT];
+    private final int[] depthRemaining = new int[CELL_COUNT];
+    private final int[] depthTrailMark = new int[CELL_COUNT];
+    private final long[] depthHash = new long[CELL_COUNT]; // of the propagated state before the decision
+
+    private long nodes; // over the lifetime of the Solver
+    private boolean solved; // outcome of the last solve
+    private boolean timedOut; // the last solve gave up because of the time limit
+    private long timeLimitNanos; // for each solve, 0 for none
+    private long deadline; // System.nanoTime() value at which the current solve gives up
+    private TranspositionTable transpositions; // null if none
+
+    private void throwIfWrongThread() {
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("Solver created on " + owner + " used on " + Thread.currentThread());
+        }
+    }
+
+    // ---
+    // Narrowing and undoing
+    // ---
+
+    /**
+     * Set the mask of "cell" to "newMask", which must be a subset of the current one.
+     * Returns false if that leaves the cell without candidates.
+     */
+
+    private boolean narrow(int cell, int newMask) {
+        int old = masks[cell];
+        if (newMask == old) {
+            return true;
+        }
+        if (newMask == 0) {
+            return false;
+        }
+        trailCell[trailSize] = cell;
+        trailMask[trailSize] = old;
+        trailSize++;
+        masks[cell] = newMask;
+        hash ^= Zobrist.delta(cell, old, newMask);
+        for (int u : UNITS_OF_CELL[cell]) {
+            enqueue(u);
+        }
+        return true;
+    }
+
+    private void undo(int trailMark) {
+        while (trailSize > trailMark) {
+            trailSize--;
+            int cell = trailCell[trailSize];
+            hash ^= Zobrist.delta(cell, masks[cell], trailMask[trailSize]);
+            masks[cell] = trailMask[trailSize];
+        }
+    }
+
+    private void enqueue(int u) {
+        if (!queued[u]) {
+            queued[u] = true;
+            queue[(queueHead + queueSize) % queue.length] = u;
+            queueSize++;
+        }
+    }
+
+    private void clearQueue() {
+        while (queueSize > 0) {
+            queued[queue[queueHead]] = false;
+            queueHead = (queueHead + 1) % queue.length;
+            queueSize--;
+        }
+    }
+
+    // ---
+    // Propagation
+    // ---
+
+    private static boolean isSingle(int m) {
+        return m != 0 && (m & (m - 1)) == 0;
+    }
+
+    /**
+     * Examine the units in the queue until it is empty. Returns false on contradiction,
+     * in which case the queue is left empty but the board is not undone.
+     */
+
+    private boolean propagate() {
+        while (queueSize > 0) {
+            int u = queue[queueHead];
+            queueHead = (queueHead + 1) % queue.length;
+            queueSize--;
+            queued[u] = false;
+            if (!updateUnit(UNITS[u])) {
+                clearQueue();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean updateUnit(int[] unit) {
+        int fixed = 0;
+        for (int cell : unit) {
+            int m = masks[cell];
+            if (isSingle(m)) {
+                if ((fixed & m) != 0) {
+                    return false; // the same value fixed twice
+                }
+                fixed |= m;
+            }
+        }
+        int once = 0;
+        int twice = 0;
+        for (int cell : unit) {
+            int m = masks[cell];
+            if (!isSingle(m)) {
+                m &= ~fixed;
+                if (!narrow(cell, m)) {
+                    return false;
+                }
+            }
+            twice |= once & m;
+            once |= m;
+        }
+        if (once != ALL) {
+            return false; // some value has no place left in this unit
+        }
+        int hidden = once & ~twice & ~fixed;
+        if (hidden != 0) {
+            for (int cell : unit) {
+                int h = masks[cell] & hidden;
+                if (h != 0) {
+                    if (!isSingle(h)) {
+                        return false; // two hidden singles in the same cell
+                    }
+                    narrow(cell, h); // cannot fail, "h" is not empty
+                }
+            }
+        }
+        return true;
+    }
+
+    // ---
+    // Search
+    // ---
+
+    /**
+     * The first cell with the smallest domain that has more than one value, or -1 if all cells are fixed.
+     */
+
+    private int choosePivot() {
+        int best = -1;
+        int bestCount = Board.COUNT + 1;
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            int count = Integer.bitCount(masks[cell]);
+            if (count > 1 && count < bestCount) {
+                best = cell;
+                bestCount = count;
+                if (count == 2) {
+                    break; // cannot do better
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Whether the current (propagated) state is known to have no solution.
+     */
+
+    private boolean isKnownUnsatisfiable() {
+        return transpositions != null && transpositions.isKnownUnsatisfiable(hash);
+    }
+
+    private boolean search() {
+        int depth = 0;
+        int pivot = choosePivot();
+        if (pivot < 0) {
+            return true;
+        }
+        if (isKnownUnsatisfiable()) {
+            return false;
+        }
+        depthCell[0] = pivot;
+        depthRemaining[0] = masks[pivot];
+        depthTrailMark[0] = trailSize;
+        depthHash[0] = hash;
+        while (true) {
+            if (timeLimitNanos > 0 && (nodes & 0xFF) == 0 && System.nanoTime() - deadline > 0) {
+                timedOut = true;
+                return false;
+            }
+            if (depthRemaining[depth] == 0) {
+                // all values of this pivot failed
+                if (transpositions != null) {
+                    transpositions.recordUnsatisfiable(depthHash[depth]);
+                }
+                if (depth == 0) {
+                    return false;
+                }
+                depth--;
+                continue;
+            }
+            int v = Integer.lowestOneBit(depthRemaining[depth]);
+            depthRemaining[depth] &= ~v;
+            undo(depthTrailMark[depth]);
+            nodes++;
+            if (narrow(depthCell[depth], v) && propagate()) {
+                pivot = choosePivot();
+                if (pivot < 0) {
+                    return true;
+                }
+                if (isKnownUnsatisfiable()) {
+                    continue; // as if the trial had failed
+                }
+                depth++;
+                depthCell[depth] = pivot;
+                depthRemaining[depth] = masks[pivot];
+                depthTrailMark[depth] = trailSize;
+                depthHash[depth] = hash;
+            }
+        }
+    }
+
+    // ---
+    // Public interface
+    // ---
+
+    /**
+     * Solve the puzzle given as 81 digits, row by row, with 0 for an empty cell.
+     * Returns true if a solution was found, which can then be obtained with getDigit() and friends,
+     * and false if there is none (or if the time limit ran out, see hasTimedOut()).
+     */
+
+    public boolean solve(int[] digits) {
+        throwIfWrongThread();
+        if (digits.length != CELL_COUNT) {
+            throw new IllegalArgumentException("Expected " + CELL_COUNT + " digits but got " + digits.length);
+        }
+        begin();
+        boolean ok = true;
+        for (int cell = 0; cell < CELL_COUNT && ok; cell++) {
+            int d = digits[cell];
+            if (d < 0 || d > Board.COUNT) {
+                throw new IllegalArgumentException("Not a digit in 0.." + Board.COUNT + " at position " + cell + ": " + d);
+            }
+            if (d > 0) {
+                ok = narrow(cell, masks[cell] & (1 << (d - 1)));
+            }
+        }
+        return end(ok);
+    }
+
+    /**
+     * Solve the puzzle described by "settings".
+     */
+
+    public boolean solve(List<Setting> settings) {
+        throwIfWrongThread();
+        begin();
+        boolean ok = true;
+        for (Setting s : settings) {
+            int cell = (s.row1 - 1) * Board.COUNT + (s.col1 - 1);
+            ok = narrow(cell, masks[cell] & (1 << s.v.index));
+            if (!ok) {
+                break;
+            }
+        }
+        return end(ok);
+    }
+
+    /**
+     * Solve starting from the given candidate masks, 81 of them row by row, each with bit "v.index"
+     * set if "v" is a candidate. A cell with a single candidate is a clue; a cell without any
+     * makes the puzzle unsolvable.
+     */
+
+    public boolean solveCandidates(int[] candidates) {
+        throwIfWrongThread();
+        if (candidates.length != CELL_COUNT) {
+            throw new IllegalArgumentException("Expected " + CELL_COUNT + " masks but got " + candidates.length);
+        }
+        begin();
+        boolean ok = true;
+        for (int cell = 0; cell < CELL_COUNT && ok; cell++) {
+            if ((candidates[cell] & ~ALL) != 0) {
+                throw new IllegalArgumentException("Not a candidate mask at position " + cell + ": " + candidates[cell]);
+            }
+            ok = narrow(cell, candidates[cell]);
+        }
+        return end(ok);
+    }
+
+    private void begin() {
+        clearQueue();
+        trailSize = 0;
+        hash = Zobrist.emptyBoardHash();
+        solved = false;
+        timedOut = false;
+        deadline = System.nanoTime() + timeLimitNanos;
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            masks[cell] = ALL;
+        }
+    }
+
+    private boolean end(boolean ok) {
+        solved = ok && propagate() && search();
+        clearQueue();
+        return solved;
+    }
+
+    private void throwIfNotSolved() {
+        throwIfWrongThread();
+        if (!solved) {
+            throw new IllegalStateException("The last solve did not find a solution");
+        }
+    }
+
+    /**
+     * The digit at the given 0-based coordinates in the solution found by the last solve.
+     */
+
+    public int getDigit(int row0, int col0) {
+        throwIfNotSolved();
+        return Integer.numberOfTrailingZeros(masks[row0 * Board.COUNT + col0]) + 1;
+    }
+
+    /**
+     * Copy the solution found by the last solve to "out", as 81 digits row by row.
+     */
+
+    public void copySolution(int[] out) {
+        throwIfNotSolved();
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            out[cell] = Integer.numberOfTrailingZeros(masks[cell]) + 1;
+        }
+    }
+
+    /**
+     * Copy the solution found by the last solve to "out", as 81 candidate masks with a single bit each.
+     */
+
+    public void copySolutionMasks(int[] out) {
+        throwIfNotSolved();
+        System.arraycopy(masks, 0, out, 0, CELL_COUNT);
+    }
+
+    /**
+     * The solution found by the last solve, as an 81-char line (see PuzzleFormat). Allocates.
+     */
+
+    public String format() {
+        throwIfNotSolved();
+        char[] buf = new char[CELL_COUNT];
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            buf[cell] = (char) ('1' + Integer.numberOfTrailingZeros(masks[cell]));
+        }
+        return new String(buf);
+    }
+
+    /**
+     * The solution found by the last solve, as a Board. Allocates.
+     */
+
+    public Board toBoard() {
+        throwIfNotSolved();
+        LocationMap<Cell> overrides = new LocationMap<>();
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            Value v = Value.fromIndex(Integer.numberOfTrailingZeros(masks[cell]));
+            overrides.put(Location.obtain0(cell / Board.COUNT, cell % Board.COUNT), new Cell(v));
+        }
+        return new Board(new Board(), overrides);
+    }
+
+    /**
+     * Make every solve give up after "nanos" nanoseconds (checked every 256 search nodes).
+     * 0 means no limit, which is the default.
+     */
+
+    public void setTimeLimit(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("Negative time limit " + nanos);
+        }
+        throwIfWrongThread();
+        this.timeLimitNanos = nanos;
+    }
+
+    /**
+     * Whether the last solve returned false because it ran out of time rather than because there
+     * is no solution.
+     */
+
+    public boolean hasTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Skip the states that "tt" knows to be unsatisfiable, and record those found to be. Null for none,
+     * which is the default. The table must not be used with constraints other than the classic ones.
+     */
+
+    public void setTranspositionTable(TranspositionTable tt) {
+        throwIfWrongThread();
+        this.transpositions = tt;
+    }
+
+    /**
+     * The Zobrist hash of the current masks, which after a successful solve is that of the solution.
+     */
+
+    public long getHash() {
+        throwIfWrongThread();
+        return hash;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+}
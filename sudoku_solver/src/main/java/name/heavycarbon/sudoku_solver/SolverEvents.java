@@ -0,0 +1,95 @@
+package name.heavycarbon.sudoku_solver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted by "Sudoku.solve()", to see the solver's work next to GC and
+ * CPU activity in the same recording.
+ * <p>
+ * They are controlled like any JFR event, through the settings of the recording. "Solve" is
+ * enabled by default. "Trial" and "Propagation" happen thousands of times per solve and are
+ * disabled by default; enable them e.g. with
+ * <p>
+ * -XX:StartFlightRecording:name.heavycarbon.sudoku.Trial#enabled=true,name.heavycarbon.sudoku.Propagation#enabled=true
+ * <p>
+ * When an event is disabled, or no recording is running, emitting it costs about as much as
+ * filling in a few fields of an object that the JIT can usually do away with.
+ */
+
+public class SolverEvents {
+
+    @Name("name.heavycarbon.sudoku.Solve")
+    @Label("Sudoku Solve")
+    @Category("Sudoku")
+    @Description("A call to Sudoku.solve(), from the settings to the solution or the proof that there is none")
+    @StackTrace(false)
+    public static class Solve extends Event {
+
+        @Label("Clues")
+        int clueCount;
+
+        @Label("Result")
+        @Description("solved, unsolvable, cancelled or failed (an unexpected exception)")
+        String result;
+
+        @Label("Search Nodes")
+        long nodes;
+
+        @Label("Runs")
+        @Description("More than 1 if the search restarted")
+        int runs;
+    }
+
+    @Name("name.heavycarbon.sudoku.Trial")
+    @Label("Sudoku Trial")
+    @Category("Sudoku")
+    @Description("A search node: trying a value at a pivot cell in findByTrial(), including the whole subtree below it")
+    @StackTrace(false)
+    @Enabled(false)
+    public static class Trial extends Event {
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Row")
+        int row1;
+
+        @Label("Column")
+        int col1;
+
+        @Label("Value")
+        int value;
+
+        @Label("Failed")
+        @Description("True if the value failed and the search backtracked")
+        boolean failed;
+    }
+
+    @Name("name.heavycarbon.sudoku.Propagation")
+    @Label("Sudoku Propagation")
+    @Category("Sudoku")
+    @Description("Running the active constraints in Sudoku.propagate() until a fixpoint or a contradiction")
+    @StackTrace(false)
+    @Enabled(false)
+    public static class Propagation extends Event {
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Constraint Updates")
+        int updates;
+
+        @Label("Cells Narrowed")
+        int narrowed;
+
+        @Label("Contradiction")
+        boolean contradiction;
+    }
+
+}
@@ -0,0 +1,356 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A command-line filter solving a stream of puzzles, e.g. for corpora of millions of puzzles:
+ * <p>
+ * SolverPipeline [options] [file ...]
+ * <p>
+ * Reads one 81-char puzzle per line (digits, with 0 or '.' for an empty cell) from the files, or
+ * from stdin if there are none or a file is "-". Blank lines and lines starting with '#' are
+ * skipped. Writes one result per puzzle to stdout. In "text" format, a result is a line with the
+ * 81-char solution, or one of the words "unsolvable", "timeout" or "invalid". In "binary" format,
+ * a result is 1 + PuzzleFormat.PACKED_LENGTH bytes: a status byte (see Status), then the packed
+ * solution, all zeros if there is none.
+ * <p>
+ * Options:
+ * <p>
+ * --threads=N          number of worker threads (default: the number of processors)
+ * --unordered          write results as they are done instead of in input order
+ * --timeout-millis=N   give up on a puzzle after N ms (default: no limit)
+ * --format=text|binary output format (default: text)
+ * --window=N           most puzzles read but not yet written (default: 1024 per thread)
+ * --stats              write counts and throughput to stderr at the end
+ * <p>
+ * There are three stages: a reader thread, the workers, each with its own Solver, and the writer,
+ * which is the calling thread. They hand over puzzles through bounded queues. The reader may not
+ * get more than "window" puzzles ahead of the writer, so when stdout is slow, the reader stops
+ * reading, and memory use does not depend on the size of the input. In input order, results that
+ * are done early wait in the writer until those before them are written; they also count against
+ * the window.
+ */
+
+public class SolverPipeline {
+
+    /**
+     * The outcome for a single puzzle; the ordinal is the status byte of the binary format.
+     */
+
+    public enum Status {
+
+        solved, unsolvable, timeout, invalid;
+
+        private final static Status[] byOrdinal = values();
+
+        static Status fromOrdinal(int ordinal) {
+            return byOrdinal[ordinal];
+        }
+    }
+
+    public final static int BINARY_RECORD_SIZE = 1 + PuzzleFormat.PACKED_LENGTH;
+
+    /**
+     * A puzzle going through the pipeline. The reader creates it, a worker fills in the result.
+     */
+
+    private static class Item {
+
+        final long seq; // position in the input, from 0
+        final String line;
+        Status status;
+        final int[] solution = new int[PuzzleFormat.LENGTH]; // all zeros unless solved
+
+        Item(long seq, String line) {
+            this.seq = seq;
+            this.line = line;
+        }
+    }
+
+    private final static Item END = new Item(-1, null); // no more puzzles
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean ordered = true;
+    private long timeoutMillis = 0;
+    private boolean binary = false;
+    private int window = 0; // 0: 1024 per thread
+    private boolean stats = false;
+    private final List<String> files = new ArrayList<>();
+
+    // counters, updated by the writer only
+
+    private final long[] counts = new long[Status.values().length];
+
+    private SolverPipeline() {
+    }
+
+    static int parsePositive(String option, String value) {
+        try {
+            int res = Integer.parseInt(value);
+            if (res > 0) {
+                return res;
+            }
+        } catch (NumberFormatException ex) {
+            // fall through
+        }
+        throw new IllegalArgumentException("Option " + option + " needs a positive number, not '" + value + "'");
+    }
+
+    private static SolverPipeline fromArguments(String[] argv) {
+        SolverPipeline p = new SolverPipeline();
+        for (String arg : argv) {
+            if (arg.startsWith("--threads=")) {
+                p.threads = parsePositive("--threads", arg.substring("--threads=".length()));
+            } else if (arg.equals("--unordered")) {
+                p.ordered = false;
+            } else if (arg.equals("--ordered")) {
+                p.ordered = true;
+            } else if (arg.startsWith("--timeout-millis=")) {
+                p.timeoutMillis = parsePositive("--timeout-millis", arg.substring("--timeout-millis=".length()));
+            } else if (arg.startsWith("--format=")) {
+                String format = arg.substring("--format=".length());
+                switch (format) {
+                    case "text" -> p.binary = false;
+                    case "binary" -> p.binary = true;
+                    default -> throw new IllegalArgumentException("Unknown format '" + format + "'");
+                }
+            } else if (arg.startsWith("--window=")) {
+                p.window = parsePositive("--window", arg.substring("--window=".length()));
+            } else if (arg.equals("--stats")) {
+                p.stats = true;
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                p.files.add(arg);
+            }
+        }
+        if (p.files.isEmpty()) {
+            p.files.add("-");
+        }
+        if (p.window == 0) {
+            p.window = 1024 * p.threads;
+        }
+        return p;
+    }
+
+    // ---
+    // Stages
+    // ---
+
+    /**
+     * Read the puzzles of all the input files into "in", then one END per worker. A failure to read
+     * is stored into "readFailure" and ends the input there.
+     */
+
+    private void read(InputStream stdin, Semaphore inFlight, BlockingQueue<Item> in, IOException[] readFailure) throws InterruptedException {
+        long seq = 0;
+        try {
+            for (String file : files) {
+                BufferedReader reader = new BufferedReader(file.equals("-")
+                        ? new InputStreamReader(stdin, StandardCharsets.US_ASCII)
+                        : Files.newBufferedReader(Path.of(file), StandardCharsets.US_ASCII), 1 << 16);
+                try {
+                    String line;
+                    while ((line = PuzzleFormat.readPuzzleLine(reader)) != null) {
+                        inFlight.acquire(); // released by the writer, once the result is written
+                        in.put(new Item(seq++, line));
+                    }
+                } finally {
+                    if (!file.equals("-")) {
+                        reader.close();
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            readFailure[0] = ex;
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                in.put(END);
+            }
+        }
+    }
+
+    /**
+     * Solve puzzles from "in" into "out" until END, which is passed on to the writer.
+     */
+
+    private void work(BlockingQueue<Item> in, BlockingQueue<Item> out) throws InterruptedException {
+        Solver solver = new Solver(); // confined to this thread
+        solver.setTimeLimit(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        int[] digits = new int[PuzzleFormat.LENGTH];
+        while (true) {
+            Item item = in.take();
+            if (item == END) {
+                out.put(END);
+                return;
+            }
+            try {
+                PuzzleFormat.parseDigits(item.line, digits);
+                if (solver.solve(digits)) {
+                    solver.copySolution(item.solution);
+                    item.status = Status.solved;
+                } else {
+                    item.status = solver.hasTimedOut() ? Status.timeout : Status.unsolvable;
+                }
+            } catch (IllegalArgumentException ex) {
+                item.status = Status.invalid;
+            }
+            out.put(item);
+        }
+    }
+
+    /**
+     * Write the result given as a record of the binary format, at "offset" in "record", to "out"
+     * in the binary or the text format. "line" is room for a line of text, "digits" for a solution.
+     * Returns the status of the result.
+     */
+
+    static Status writeResult(byte[] record, int offset, boolean binary, OutputStream out, byte[] line, int[] digits) throws IOException {
+        Status status = Status.fromOrdinal(record[offset]);
+        if (binary) {
+            out.write(record, offset, BINARY_RECORD_SIZE);
+        } else if (status == Status.solved) {
+            PuzzleFormat.unpack(record, offset + 1, digits);
+            for (int i = 0; i < PuzzleFormat.LENGTH; i++) {
+                line[i] = (byte) ('0' + digits[i]);
+            }
+            line[PuzzleFormat.LENGTH] = '\n';
+            out.write(line, 0, PuzzleFormat.LENGTH + 1);
+        } else {
+            out.write((status + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+        return status;
+    }
+
+    private void write(Item item, OutputStream out, byte[] record, byte[] line, int[] digits) throws IOException {
+        record[0] = (byte) item.status.ordinal();
+        PuzzleFormat.pack(item.solution, record, 1);
+        counts[writeResult(record, 0, binary, out, line, digits).ordinal()]++;
+    }
+
+    /**
+     * Write the results from "results" until all workers have sent END.
+     */
+
+    private void writeAll(BlockingQueue<Item> results, Semaphore inFlight, OutputStream out) throws IOException, InterruptedException {
+        byte[] record = new byte[BINARY_RECORD_SIZE];
+        byte[] line = new byte[PuzzleFormat.LENGTH + 1];
+        int[] digits = new int[PuzzleFormat.LENGTH];
+        Map<Long, Item> early = new HashMap<>(); // done, but waiting for those before them (ordered only)
+        long next = 0; // sequence number of the next result to write (ordered only)
+        int ended = 0;
+        while (ended < threads) {
+            Item item = results.take();
+            if (item == END) {
+                ended++;
+                continue;
+            }
+            if (!ordered) {
+                write(item, out, record, line, digits);
+                inFlight.release();
+                continue;
+            }
+            early.put(item.seq, item);
+            while ((item = early.remove(next)) != null) {
+                write(item, out, record, line, digits);
+                inFlight.release();
+                next++;
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Run the pipeline on "stdin" and "stdout" (which is flushed, but not closed). Returns the exit
+     * status: 0 if all went well, 1 if an input could not be read, 2 for bad arguments.
+     */
+
+    public static int run(String[] argv, InputStream stdin, OutputStream stdout, PrintStream stderr) throws InterruptedException {
+        SolverPipeline p;
+        try {
+            p = fromArguments(argv);
+        } catch (IllegalArgumentException ex) {
+            stderr.println(ex.getMessage());
+            stderr.println("Usage: SolverPipeline [--threads=N] [--unordered] [--timeout-millis=N] [--format=text|binary] [--window=N] [--stats] [file ...]");
+            return 2;
+        }
+        return p.run(stdin, stdout, stderr);
+    }
+
+    private int run(InputStream stdin, OutputStream stdout, PrintStream stderr) throws InterruptedException {
+        long start = System.nanoTime();
+        Semaphore inFlight = new Semaphore(window);
+        // neither queue can hold more than "window" items plus the ENDs, so "put()" into
+        // "results" never blocks, and "in" only blocks the reader
+        BlockingQueue<Item> in = new ArrayBlockingQueue<>(Math.min(window, 4 * threads) + threads);
+        BlockingQueue<Item> results = new ArrayBlockingQueue<>(window + threads);
+        IOException[] readFailure = new IOException[1];
+        List<Thread> stages = new ArrayList<>();
+        stages.add(Thread.ofPlatform().name("pipeline-reader").daemon().unstarted(() -> {
+            try {
+                read(stdin, inFlight, in, readFailure);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        for (int i = 0; i < threads; i++) {
+            stages.add(Thread.ofPlatform().name("pipeline-worker-" + i).daemon().unstarted(() -> {
+                try {
+                    work(in, results);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        stages.forEach(Thread::start);
+        try {
+            writeAll(results, inFlight, new BufferedOutputStream(stdout, 1 << 16));
+        } catch (IOException ex) {
+            // e.g. stdout was closed by the next process in the shell pipeline
+            stderr.println("Cannot write results: " + ex.getMessage());
+            stages.forEach(Thread::interrupt);
+            return 1;
+        }
+        for (Thread t : stages) {
+            t.join();
+        }
+        if (stats) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            for (Status s : Status.values()) {
+                stderr.println(s + ": " + counts[s.ordinal()]);
+            }
+            stderr.printf("%d puzzles in %.3f s, %.0f puzzles/s, %d threads%n", total, seconds, total / seconds, threads);
+        }
+        if (readFailure[0] != null) {
+            stderr.println("Cannot read input: " + readFailure[0].getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+    public static void main(String[] argv) throws InterruptedException {
+        System.exit(run(argv, System.in, System.out, System.err));
+    }
+
+}
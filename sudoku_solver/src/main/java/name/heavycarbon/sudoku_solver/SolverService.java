@@ -0,0 +1,438 @@
+package name.heavycarbon.sudoku_solver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lightweight local HTTP service around the solver, using only the JDK's own HTTP server.
+ * <p>
+ * - "GET /solve?puzzle=<81 chars>" solves a single puzzle.
+ * - "POST /solve" with one 81-char puzzle per line in the body solves a batch.
+ * - "GET /metrics" returns counters as "name value" lines.
+ * <p>
+ * The response to "/solve" has one line per puzzle, in request order: the 81-char solution
+ * or the word "unsolvable".
+ * <p>
+ * HTTP exchanges are handled on virtual threads, which just park while their puzzles are
+ * being solved. The solving itself is CPU-bound and is done on a fixed pool of platform
+ * threads, each with its own reusable Solver. Puzzles from concurrent requests are queued and coalesced into "micro-batches",
+ * one batch per task given to the worker pool. The number of puzzles admitted but not yet
+ * solved is bounded; a request that would exceed the bound is answered with "429 Too Many Requests",
+ * unless it has more puzzles than the bound, which is answered with "413 Content Too Large".
+ */
+
+public class SolverService {
+
+    private final static String UNSOLVABLE = "unsolvable";
+    private final static long REPLY_TIMEOUT_SECONDS = 60; // longest wait of a request for its puzzles
+
+    /**
+     * A single puzzle waiting to be solved, and the place to put its outcome.
+     */
+
+    private static class Job {
+
+        final List<Setting> settings;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        Job(List<Setting> settings) {
+            this.settings = settings;
+        }
+    }
+
+    /**
+     * A batch handed to the worker pool; named, so that "stop()" can cancel the jobs of batches
+     * that the pool drops.
+     */
+
+    private class BatchTask implements Runnable {
+
+        final List<Job> batch;
+
+        BatchTask(List<Job> batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            solveBatch(batch);
+        }
+    }
+
+    /**
+     * Counters exposed by "/metrics". All monotonically increasing, except where noted.
+     */
+
+    private static class Metrics {
+
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong requestsRejected = new AtomicLong(); // answered with 429
+        final AtomicLong requestsInvalid = new AtomicLong(); // answered with 4xx other than 429, e.g. 413
+        final AtomicLong puzzlesSolved = new AtomicLong();
+        final AtomicLong puzzlesUnsolvable = new AtomicLong();
+        final AtomicLong puzzlesFailed = new AtomicLong(); // the solver threw something unexpected
+        final AtomicLong batches = new AtomicLong();
+        final AtomicLong batchedPuzzles = new AtomicLong();
+        final AtomicLong solveNanos = new AtomicLong();
+    }
+
+    private final HttpServer server;
+    private final ExecutorService httpExecutor; // virtual threads, one per exchange
+    private final ExecutorService workerPool; // platform threads, solving batches
+    private final Semaphore idleWorkers; // a batch is only formed once a worker is free to take it
+    private final Semaphore admission; // bounds puzzles admitted but not yet solved
+    private final BlockingQueue<Job> pending = new LinkedBlockingQueue<>(); // bounded through "admission"
+    private final Thread batcher;
+    private final int workers;
+    private final int queueCapacity;
+    private final int maxBodyBytes; // enough for "queueCapacity" puzzles with CRLF line ends
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final Metrics metrics = new Metrics();
+    private final ThreadLocal<Solver> solvers = ThreadLocal.withInitial(Solver::new); // one per worker, reused
+    private volatile boolean running;
+
+    /**
+     * Create a service listening on localhost. Use port 0 to obtain an ephemeral port,
+     * which can then be retrieved with getPort().
+     */
+
+    public SolverService(int port, int workers, int queueCapacity, int maxBatchSize, long maxBatchDelayMicros) throws IOException {
+        if (workers < 1 || queueCapacity < 1 || maxBatchSize < 1 || maxBatchDelayMicros < 0) {
+            throw new IllegalArgumentException("Bad service parameters");
+        }
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.maxBodyBytes = (int) Math.min(Integer.MAX_VALUE - 1, (long) queueCapacity * (PuzzleFormat.LENGTH + 2));
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxBatchDelayMicros);
+        this.admission = new Semaphore(queueCapacity);
+        this.idleWorkers = new Semaphore(workers);
+        this.workerPool = Executors.newFixedThreadPool(workers);
+        this.httpExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.setExecutor(httpExecutor);
+        this.server.createContext("/solve", this::handleSolve);
+        this.server.createContext("/metrics", this::handleMetrics);
+        this.batcher = new Thread(this::batchLoop, "solver-service-batcher");
+        this.batcher.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        batcher.start();
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests and cancel all puzzles not yet solved; the requests waiting for them
+     * are answered with "503 Service Unavailable".
+     */
+
+    public void stop() {
+        running = false;
+        batcher.interrupt();
+        try {
+            batcher.join(TimeUnit.SECONDS.toMillis(1)); // it cancels its own jobs when interrupted
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        for (Runnable dropped : workerPool.shutdownNow()) {
+            if (dropped instanceof BatchTask task) {
+                task.batch.forEach(SolverService::cancel);
+            }
+        }
+        Job job;
+        while ((job = pending.poll()) != null) {
+            cancel(job);
+        }
+        server.stop(1); // waits a little for the handlers to answer
+        httpExecutor.shutdownNow();
+    }
+
+    /**
+     * Stop handing batches to the workers until "resume()", so that puzzles stay queued; for tests.
+     * Waits for the batches being solved to be done.
+     */
+
+    void pause() throws InterruptedException {
+        idleWorkers.acquire(workers);
+    }
+
+    void resume() {
+        idleWorkers.release(workers);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // ---
+    // Batching and solving
+    // ---
+
+    /**
+     * Take the first pending job, wait for a free worker, then gather whatever else is pending
+     * (lingering at most "maxBatchDelayNanos" for more) into a batch and hand it over.
+     * While all workers are busy, jobs accumulate, so batches grow with the load.
+     */
+
+    private void batchLoop() {
+        Job first = null;
+        List<Job> batch = null;
+        try {
+            while (running) {
+                first = pending.take();
+                idleWorkers.acquire();
+                batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+                long deadline = System.nanoTime() + maxBatchDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long left = deadline - System.nanoTime();
+                    Job next = (left > 0) ? pending.poll(left, TimeUnit.NANOSECONDS) : pending.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                metrics.batches.incrementAndGet();
+                metrics.batchedPuzzles.addAndGet(batch.size());
+                try {
+                    workerPool.execute(new BatchTask(batch));
+                } catch (RejectedExecutionException exe) {
+                    // shutting down
+                    idleWorkers.release();
+                    batch.forEach(SolverService::cancel);
+                }
+                first = null;
+                batch = null;
+            }
+        } catch (InterruptedException exe) {
+            // shutting down; the jobs taken but not handed over would otherwise never be completed
+            if (first != null) {
+                cancel(first);
+            }
+            if (batch != null) {
+                batch.forEach(SolverService::cancel);
+            }
+        }
+    }
+
+    private static void cancel(Job job) {
+        job.result.cancel(false);
+    }
+
+    private void solveBatch(List<Job> batch) {
+        try {
+            for (Job job : batch) {
+                solveOne(job);
+            }
+        } finally {
+            idleWorkers.release();
+        }
+    }
+
+    private void solveOne(Job job) {
+        if (job.result.isDone()) {
+            // cancelled, as its request timed out
+            admission.release();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            Solver solver = solvers.get();
+            if (solver.solve(job.settings)) {
+                metrics.puzzlesSolved.incrementAndGet();
+                job.result.complete(solver.format());
+            } else {
+                metrics.puzzlesUnsolvable.incrementAndGet();
+                job.result.complete(UNSOLVABLE);
+            }
+        } catch (RuntimeException exe) {
+            metrics.puzzlesFailed.incrementAndGet();
+            job.result.completeExceptionally(exe);
+        } finally {
+            metrics.solveNanos.addAndGet(System.nanoTime() - start);
+            admission.release();
+        }
+    }
+
+    // ---
+    // HTTP handling
+    // ---
+
+    /**
+     * The puzzle lines of the request, or null if its body is longer than "maxBodyBytes". A longer
+     * body is not read beyond that.
+     */
+
+    private static List<String> readPuzzleLines(HttpExchange exchange, int maxBodyBytes) throws IOException {
+        List<String> lines = new ArrayList<>();
+        if ("GET".equals(exchange.getRequestMethod())) {
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String param : query.split("&")) {
+                    if (param.startsWith("puzzle=")) {
+                        lines.add(URLDecoder.decode(param.substring("puzzle=".length()), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        } else {
+            byte[] bytes = exchange.getRequestBody().readNBytes(maxBodyBytes + 1);
+            if (bytes.length > maxBodyBytes) {
+                return null;
+            }
+            String body = new String(bytes, StandardCharsets.US_ASCII);
+            for (String line : body.split("\n")) {
+                if (!line.isBlank()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    private void handleSolve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            metrics.requests.incrementAndGet();
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"POST".equals(method)) {
+                metrics.requestsInvalid.incrementAndGet();
+                respond(exchange, 405, "Use GET or POST\n");
+                return;
+            }
+            if (!running) {
+                respond(exchange, 503, "The service is shutting down\n");
+                return;
+            }
+            List<String> lines = readPuzzleLines(exchange, maxBodyBytes);
+            if (lines == null || lines.size() > queueCapacity) {
+                // could never be admitted, so there is no point in retrying
+                metrics.requestsInvalid.incrementAndGet();
+                respond(exchange, 413, "At most " + queueCapacity + " puzzles per request\n");
+                return;
+            }
+            List<Job> jobs = new ArrayList<>();
+            try {
+                for (String line : lines) {
+                    jobs.add(new Job(PuzzleFormat.parse(line)));
+                }
+            } catch (IllegalArgumentException exe) {
+                metrics.requestsInvalid.incrementAndGet();
+                respond(exchange, 400, exe.getMessage() + "\n");
+                return;
+            }
+            if (jobs.isEmpty()) {
+                metrics.requestsInvalid.incrementAndGet();
+                respond(exchange, 400, "No puzzle given\n");
+                return;
+            }
+            if (!admission.tryAcquire(jobs.size())) {
+                metrics.requestsRejected.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                respond(exchange, 429, "Queue is full\n");
+                return;
+            }
+            pending.addAll(jobs);
+            if (!running) {
+                jobs.forEach(SolverService::cancel); // "stop()" may have missed them
+            }
+            StringBuilder buf = new StringBuilder();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(REPLY_TIMEOUT_SECONDS);
+            try {
+                for (Job job : jobs) {
+                    buf.append(job.result.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)).append('\n');
+                }
+            } catch (ExecutionException exe) {
+                respond(exchange, 500, "Solving failed: " + exe.getCause() + "\n");
+                return;
+            } catch (CancellationException exe) {
+                respond(exchange, 503, "The service is shutting down\n");
+                return;
+            } catch (TimeoutException exe) {
+                jobs.forEach(SolverService::cancel); // those still pending are skipped when their turn comes
+                respond(exchange, 503, "Timed out\n");
+                return;
+            } catch (InterruptedException exe) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "The service is shutting down\n");
+                return;
+            }
+            respond(exchange, 200, buf.toString());
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            StringBuilder buf = new StringBuilder();
+            appendMetric(buf, "requests_total", metrics.requests.get());
+            appendMetric(buf, "requests_rejected_total", metrics.requestsRejected.get());
+            appendMetric(buf, "requests_invalid_total", metrics.requestsInvalid.get());
+            appendMetric(buf, "puzzles_solved_total", metrics.puzzlesSolved.get());
+            appendMetric(buf, "puzzles_unsolvable_total", metrics.puzzlesUnsolvable.get());
+            appendMetric(buf, "puzzles_failed_total", metrics.puzzlesFailed.get());
+            appendMetric(buf, "batches_total", metrics.batches.get());
+            appendMetric(buf, "batched_puzzles_total", metrics.batchedPuzzles.get());
+            appendMetric(buf, "solve_nanos_total", metrics.solveNanos.get());
+            appendMetric(buf, "queue_depth", queueCapacity - admission.availablePermits()); // not monotonic
+            appendMetric(buf, "queue_capacity", queueCapacity);
+            respond(exchange, 200, buf.toString());
+        }
+    }
+
+    private static void appendMetric(StringBuilder buf, String name, long value) {
+        buf.append("sudoku_").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=us-ascii");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // ---
+    // Command line
+    // ---
+
+    private static int intOption(String arg, String name, int current) {
+        String prefix = "--" + name + "=";
+        return arg.startsWith(prefix) ? Integer.parseInt(arg.substring(prefix.length())) : current;
+    }
+
+    /**
+     * Options are "--port=", "--workers=", "--queue=", "--batch=" and "--linger-micros=".
+     */
+
+    public static void main(String[] argv) throws IOException {
+        int port = 8080;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = 10_000;
+        int batch = 32;
+        int lingerMicros = 200;
+        for (String arg : argv) {
+            port = intOption(arg, "port", port);
+            workers = intOption(arg, "workers", workers);
+            queue = intOption(arg, "queue", queue);
+            batch = intOption(arg, "batch", batch);
+            lingerMicros = intOption(arg, "linger-micros", lingerMicros);
+        }
+        SolverService service = new SolverService(port, workers, queue, batch, lingerMicros);
+        service.start();
+        System.out.println("Listening on http://localhost:" + service.getPort() + "/solve with " + workers + " workers");
+    }
+
+}
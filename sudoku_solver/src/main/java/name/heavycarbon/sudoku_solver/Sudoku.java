@@ -1,10 +1,9 @@
 package name.heavycarbon.sudoku_solver;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
-import name.heavycarbon.sudoku_solver.ValueCellBijectionConstraint.UpdateResult;
+import name.heavycarbon.sudoku_solver.Constraint.DomainChange;
+import name.heavycarbon.sudoku_solver.Constraint.UpdateResult;
 
 /*
 
@@ -17,12 +16,16 @@ import name.heavycarbon.sudoku_solver.ValueCellBijectionConstraint.UpdateResult;
 
 public class Sudoku {
 
+    // Nogoods on longer paths are recorded as they are: making one smaller takes a propagation
+    // from the start board per decision on its path, which costs more than its pruning saves
+    private final static int MAX_MINIMIZED_DECISIONS = 8;
+
     /*
      * Apply a Setting to a Board, generating a new Board (which is returned) while
      * registering the location of the changed cell in "changedLocs".
      */
 
-    private static Board setupOne(final Board board, final Setting s, final Set<Location> changedLocs) throws EmptyDomainException {
+    private static Board setupOne(final Board board, final Setting s, final LocationSet changedLocs) throws EmptyDomainException {
         Location loc = Location.obtain1(s.row1, s.col1);
         Board.SetResult sres = board.setCell(loc, s.v);
         if (sres.changed) {
@@ -35,7 +38,7 @@ public class Sudoku {
      * Apply multiple settings in turn.
      */
 
-    private static Board applySettings(final Board board, final List<Setting> settings, final Set<Location> changedLocs) throws EmptyDomainException {
+    private static Board applySettings(final Board board, final List<Setting> settings, final LocationSet changedLocs) throws EmptyDomainException {
         Board curBoard = board;
         for (Setting s : settings) {
             curBoard = setupOne(curBoard, s, changedLocs);
@@ -43,86 +46,350 @@ public class Sudoku {
         return curBoard;
     }
 
-    private static Board initialBoardSetupAndConstraintActivation(final List<Setting> settings, final Constraints cos, final ActiveConstraints acos) throws EmptyDomainException {
-        Set<Location> changedLocs = new HashSet<>();
+    static Board initialBoardSetupAndConstraintActivation(final List<Setting> settings, final Constraints cos, final ActiveConstraints acos) throws EmptyDomainException {
+        LocationSet changedLocs = new LocationSet();
         Board board = applySettings(new Board(), settings, changedLocs);
-        Printing.initialChangedLocations(changedLocs);
+        Printing.get().initialChangedLocations(changedLocs);
         for (Location loc : changedLocs) {
-            acos.activateAllConstraintsMonitoringThisLocation(loc, null, cos);
+            acos.activateAllConstraintsMonitoringThisLocation(loc, null, cos, true); // clues are fixed
+        }
+        for (Constraint c : cos.getAllConstraints()) {
+            if (c.isActiveInitially()) {
+                acos.activate(c);
+            }
         }
-        Printing.initialActiveConstraints(acos);
+        Printing.get().initialActiveConstraints(acos);
         return board;
     }
 
 
-    private static Board propagate(int depth, final Constraints cos, final ActiveConstraints acos, final Board board) throws EmptyDomainException {
+    /**
+     * Run the active constraints until there are none left, i.e. until quiescence.
+     * Every constraint that updates the board activates the constraints monitoring
+     * the locations it changed. Throws if a cell ends up with an empty domain.
+     */
+
+    static Board propagate(int depth, final Constraints cos, final ActiveConstraints acos, final Board board) throws EmptyDomainException {
+        return propagate(depth, null, cos, acos, board);
+    }
+
+    /**
+     * Propagate, recording the narrowings to "trace" unless it is null.
+     */
+
+    private static Board propagate(int depth, final TraceRecorder trace, final Constraints cos, final ActiveConstraints acos, final Board board) throws EmptyDomainException {
         Board curBoard = board;
-        Printing.atPropagateStart(depth, acos);
+        Printing.get().atPropagateStart(depth, acos);
+        if (trace != null) {
+            trace.record(TraceRecorder.Kind.propagateStart, depth, 0, 0);
+        }
+        SolverEvents.Propagation event = new SolverEvents.Propagation();
+        event.begin();
+        event.depth = depth;
         // loop until quiescence
         int counter = 0;
-        while (!acos.isEmpty()) {
-            ValueCellBijectionConstraint curCos = acos.getNext();
-            UpdateResult ur = curCos.update(curBoard);
-            for (Location loc : ur.changedLocs) {
-                acos.activateAllConstraintsMonitoringThisLocation(loc, curCos, cos);
+        try {
+            while (!acos.isEmpty()) {
+                Constraint curCos = acos.getNext();
+                UpdateResult ur = curCos.update(curBoard);
+                for (Location loc : ur.changedLocs) {
+                    DomainChange change = new DomainChange(loc, curBoard.board.get(loc).getDomainBits(), ur.board.board.get(loc).getDomainBits());
+                    acos.activateAllConstraintsWokenByThisChange(change, ur.board, curCos, cos);
+                }
+                Printing.get().inPropagate(depth, counter, curCos, acos, ur.changedLocs);
+                if (trace != null) {
+                    recordNarrowings(depth, trace, cos.indexOf(curCos), ur);
+                }
+                event.narrowed += ur.changedLocs.size();
+                counter++;
+                curBoard = ur.board;
             }
-            Printing.inPropagate(depth, counter, curCos, acos, ur.changedLocs);
-            counter++;
-            curBoard = ur.board;
+        } catch (EmptyDomainException ex) {
+            event.contradiction = true;
+            throw ex;
+        } finally {
+            event.updates = counter;
+            event.commit();
         }
         return curBoard;
     }
 
-    private static Board find(int depth, final Constraints cos, final ActiveConstraints acos, final Board board) throws EmptyDomainException {
-        Board newBoard = propagate(depth, cos, acos, board);
-        Printing.afterPropagationQuiescence(depth, newBoard);
+    private static void recordNarrowings(int depth, final TraceRecorder trace, int constraintIndex, final UpdateResult ur) {
+        for (Location loc : ur.changedLocs) {
+            trace.record(TraceRecorder.Kind.narrowed, depth, loc.ordinal, ur.board.board.get(loc).getDomainBits());
+        }
+        trace.record(TraceRecorder.Kind.fired, depth, constraintIndex, ur.changedLocs.size());
+    }
+
+    /**
+     * Alternate between the nogoods and the constraints until neither narrows the board any further.
+     */
+
+    private static Board propagateWithNogoods(int depth, final NogoodStore nogoods, final TraceRecorder trace, final Constraints cos, final Board board) throws EmptyDomainException {
+        Board curBoard = board;
+        while (true) {
+            UpdateResult ur = nogoods.update(curBoard);
+            if (ur.changedLocs.isEmpty()) {
+                return curBoard;
+            }
+            if (trace != null) {
+                recordNarrowings(depth, trace, -1, ur); // -1: not a constraint
+            }
+            ActiveConstraints acos = new ActiveConstraints();
+            for (Location loc : ur.changedLocs) {
+                DomainChange change = new DomainChange(loc, curBoard.board.get(loc).getDomainBits(), ur.board.board.get(loc).getDomainBits());
+                acos.activateAllConstraintsWokenByThisChange(change, ur.board, null, cos);
+            }
+            curBoard = propagate(depth, trace, cos, acos, ur.board);
+        }
+    }
+
+    /**
+     * Does propagating "literals" (all of them except the one at index "skip") from the start board fail?
+     */
+
+    private static boolean failsByPropagation(int depth, final SearchContext ctx, final Constraints cos, final int[] literals, int skip) {
+        try {
+            Board board = ctx.getStartBoard();
+            ActiveConstraints acos = new ActiveConstraints();
+            for (int i = 0; i < literals.length; i++) {
+                if (i != skip && literals[i] >= 0) {
+                    Location loc = NogoodStore.locationOf(literals[i]);
+                    Board.SetResult sres = board.setCell(loc, NogoodStore.valueOf(literals[i]));
+                    if (sres.changed) {
+                        acos.activateAllConstraintsMonitoringThisLocation(loc, null, cos, true);
+                    }
+                    board = sres.board;
+                }
+            }
+            propagateWithNogoods(depth, ctx.getNogoods(), null, cos, propagate(depth, cos, acos, board));
+            return false;
+        } catch (EmptyDomainException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * Record the decisions on the path to the trial board that just failed as a nogood. If the trial
+     * failed by propagation alone ("leaf") and the path is short, first drop the decisions that are
+     * not needed for that.
+     */
+
+    private static void recordNogood(int depth, final SearchContext ctx, final Constraints cos, boolean leaf) {
+        int[] literals = ctx.getDecisions();
+        int kept = literals.length;
+        if (leaf && literals.length <= MAX_MINIMIZED_DECISIONS) {
+            // the last decision is the one that failed, it surely is needed
+            for (int i = 0; i < literals.length - 1; i++) {
+                if (failsByPropagation(depth, ctx, cos, literals, i)) {
+                    literals[i] = -1; // not needed
+                    kept--;
+                }
+            }
+        }
+        int[] nogood = new int[kept];
+        int j = 0;
+        for (int lit : literals) {
+            if (lit >= 0) {
+                nogood[j++] = lit;
+            }
+        }
+        ctx.getNogoods().record(nogood);
+    }
+
+    private static Board find(int depth, final SearchContext ctx, final Constraints cos, final ActiveConstraints acos, final Board board) throws EmptyDomainException {
+        Board newBoard = propagate(depth, ctx.getTrace(), cos, acos, board);
+        if (ctx.getNogoods() != null) {
+            newBoard = propagateWithNogoods(depth, ctx.getNogoods(), ctx.getTrace(), cos, newBoard);
+        }
+        Printing.get().afterPropagationQuiescence(depth, newBoard);
         if (newBoard.isDone()) {
             return newBoard; // solution found
+        } else if (ctx.getTranspositionTable() != null && ctx.getTranspositionTable().isKnownUnsatisfiable(newBoard.getHash())) {
+            throw new EmptyDomainException(); // failed before, in another branch or another search
         } else {
-            Printing.needToFindByTrial(depth);
-            return findByTrial(depth, cos, newBoard); // returns solution or throws
+            Printing.get().needToFindByTrial(depth);
+            return findByTrial(depth, ctx, cos, newBoard); // returns solution or throws
         }
     }
 
-    private static Board findByTrial(int depth, final Constraints cos, final Board board) throws EmptyDomainException {
-        List<Location> smallest = board.findCellsWithSmallestDomainThatIsNotOne();
-        Location pivotLoc = smallest.getFirst();
+    private static Board findByTrial(int depth, final SearchContext ctx, final Constraints cos, final Board board) throws EmptyDomainException {
+        Location pivotLoc = ctx.choosePivot(board);
         Cell cell = board.board.get(pivotLoc);
         assert (cell.cardinality > 1);
-        Printing.findByTrialStart(depth, pivotLoc, cell);
-        for (Value v : cell) {
+        Printing.get().findByTrialStart(depth, pivotLoc, cell);
+        TraceRecorder trace = ctx.getTrace();
+        if (trace != null) {
+            trace.record(TraceRecorder.Kind.pivot, depth, pivotLoc.ordinal, cell.getDomainBits());
+        }
+        for (Value v : ctx.orderValues(cell)) {
+            Printing.get().findByTrialInLoop(depth, v);
+            if (trace != null) {
+                trace.record(TraceRecorder.Kind.trial, depth, pivotLoc.ordinal, v.index);
+            }
+            ctx.countNode(); // throws if the run is over
+            ctx.pushDecision(pivotLoc, v);
+            long nodesBefore = ctx.getTotalNodes();
+            SolverEvents.Trial event = new SolverEvents.Trial();
+            event.begin();
+            event.depth = depth;
+            event.row1 = pivotLoc.row0 + 1;
+            event.col1 = pivotLoc.col0 + 1;
+            event.value = v.toDigit();
             try {
-                Printing.findByTrialInLoop(depth, v);
                 Board trialBoard = new Board(board, new Cell(v), pivotLoc);
                 ActiveConstraints trialAcos = new ActiveConstraints();
-                trialAcos.activateAllConstraintsMonitoringThisLocation(pivotLoc, null, cos);
-                return find(depth + 1, cos, trialAcos, trialBoard); // returns normally on success
+                trialAcos.activateAllConstraintsMonitoringThisLocation(pivotLoc, null, cos, true);
+                return find(depth + 1, ctx, cos, trialAcos, trialBoard); // returns normally on success
             } catch (EmptyDomainException ex) {
                 // failure - try again with the next value
-                Printing.findByTrialFailed(depth, v, pivotLoc);
+                event.failed = true;
+                Printing.get().findByTrialFailed(depth, v, pivotLoc);
+                if (trace != null) {
+                    trace.record(TraceRecorder.Kind.failed, depth, pivotLoc.ordinal, v.index);
+                }
+                ctx.trialFailed(pivotLoc);
+                if (ctx.getNogoods() != null) {
+                    recordNogood(depth, ctx, cos, ctx.getTotalNodes() == nodesBefore);
+                }
+            } finally {
+                ctx.popDecision();
+                event.commit();
             }
         }
         // no solution on this branch!
-        Printing.findByTrialFailedCompletely(depth, pivotLoc);
+        Printing.get().findByTrialFailedCompletely(depth, pivotLoc);
+        if (trace != null) {
+            trace.record(TraceRecorder.Kind.exhausted, depth, pivotLoc.ordinal, 0);
+        }
+        if (ctx.getTranspositionTable() != null) {
+            ctx.getTranspositionTable().recordUnsatisfiable(board.getHash());
+        }
         throw new EmptyDomainException();
     }
 
     public static Board solve(List<Setting> settings) throws EmptyDomainException {
-        Constraints cos = new Constraints(); // just need 1 instance for the whole program
+        return solve(settings, new Constraints()); // just need 1 instance for the whole program
+    }
+
+    /**
+     * Solve a variant, as described by "cos", which may have additional constraints.
+     */
+
+    public static Board solve(List<Setting> settings, Constraints cos) throws EmptyDomainException {
+        return solve(settings, cos, SearchContext.deterministic());
+    }
+
+    /**
+     * Solve, branching and restarting as "ctx" says. The initial propagation is done only once;
+     * each run of a restarting search starts from the board it yields.
+     */
+
+    public static Board solve(List<Setting> settings, Constraints cos, SearchContext ctx) throws EmptyDomainException {
+        SolverEvents.Solve event = new SolverEvents.Solve();
+        event.begin();
+        event.clueCount = settings.size();
+        event.result = "failed"; // unless it ends otherwise
+        try {
+            Board solBoard = solveRuns(settings, cos, ctx);
+            event.result = "solved";
+            return solBoard;
+        } catch (EmptyDomainException ex) {
+            event.result = "unsolvable";
+            throw ex;
+        } catch (SearchContext.CancelledException ex) {
+            event.result = "cancelled";
+            throw ex;
+        } finally {
+            event.nodes = ctx.getTotalNodes();
+            event.runs = ctx.getRuns();
+            event.commit();
+        }
+    }
+
+    private static Board solveRuns(List<Setting> settings, Constraints cos, SearchContext ctx) throws EmptyDomainException {
+        TraceRecorder trace = ctx.getTrace();
+        if (trace != null) {
+            trace.record(TraceRecorder.Kind.solveStart, 0, 0, settings.size());
+        }
         ActiveConstraints acos = new ActiveConstraints(); // valid only in this stack frame
         Board initBoard = initialBoardSetupAndConstraintActivation(settings, cos, acos);
-        Printing.initialBoard(initBoard);
-        Board solBoard = find(0, cos, acos, initBoard);
+        Printing.get().initialBoard(initBoard);
+        Board startBoard = propagate(0, trace, cos, acos, initBoard);
+        ctx.setStartBoard(startBoard);
+        Board solBoard;
+        while (true) {
+            ctx.startRun();
+            try {
+                solBoard = find(0, ctx, cos, new ActiveConstraints(), startBoard);
+                break;
+            } catch (SearchContext.LimitReachedException ex) {
+                Printing.get().restarting(ctx.getRuns(), ctx.getTotalNodes());
+                if (trace != null) {
+                    trace.record(TraceRecorder.Kind.restart, 0, 0, ctx.getRuns() + 1);
+                }
+            }
+        }
         if (!solBoard.isDone()) {
             throw new IllegalStateException("Board is not done!");
         }
         // throws if a constraint is violated or a cell has a domain of cardinality != 1
         cos.throwIfNotFulfillsSolutionCriterium(solBoard);
-        Printing.solutionBoard(solBoard);
+        Printing.get().solutionBoard(solBoard);
+        if (trace != null) {
+            trace.record(TraceRecorder.Kind.solved, 0, 0, (int) Math.min(Integer.MAX_VALUE, ctx.getTotalNodes()));
+        }
         return solBoard;
     }
 
+    /**
+     * The number of solutions of the puzzle, counted by exhaustive search. The counts of the
+     * propagated boards on the way are recorded in "tt", and boards whose count it knows already
+     * are not searched again. "tt" may be null, and must only be used with the same Constraints.
+     */
+
+    public static long countSolutions(List<Setting> settings, Constraints cos, TranspositionTable tt) {
+        try {
+            ActiveConstraints acos = new ActiveConstraints();
+            Board initBoard = initialBoardSetupAndConstraintActivation(settings, cos, acos);
+            return countSolutions(0, cos, tt, propagate(0, cos, acos, initBoard));
+        } catch (EmptyDomainException ex) {
+            return 0;
+        }
+    }
+
+    private static long countSolutions(int depth, final Constraints cos, final TranspositionTable tt, final Board board) {
+        if (board.isDone()) {
+            // throws if a constraint is violated or a cell has a domain of cardinality != 1
+            cos.throwIfNotFulfillsSolutionCriterium(board);
+            return 1;
+        }
+        if (tt != null) {
+            long known = tt.getSolutionCount(board.getHash());
+            if (known != TranspositionTable.UNKNOWN) {
+                return known;
+            }
+        }
+        Location pivotLoc = board.findCellsWithSmallestDomainThatIsNotOne().getFirst();
+        long count = 0;
+        for (Value v : board.board.get(pivotLoc)) {
+            ActiveConstraints trialAcos = new ActiveConstraints();
+            trialAcos.activateAllConstraintsMonitoringThisLocation(pivotLoc, null, cos, true);
+            try {
+                Board trialBoard = propagate(depth + 1, cos, trialAcos, new Board(board, new Cell(v), pivotLoc));
+                count += countSolutions(depth + 1, cos, tt, trialBoard);
+            } catch (EmptyDomainException ex) {
+                // this trial failed
+            }
+        }
+        if (tt != null) {
+            tt.recordSolutionCount(board.getHash(), count);
+        }
+        return count;
+    }
+
     public static void main(String[] argv) throws EmptyDomainException {
+        Printing.setEnabled(true); // the step-by-step trace is the point of running this
         try {
             solve(CourseraSettings.getSettings());
         } catch (Exception exe) {
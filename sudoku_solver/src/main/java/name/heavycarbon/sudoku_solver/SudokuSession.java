@@ -0,0 +1,131 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An interactive solving session: clues are added and retracted one at a time,
+ * and after each step the Board holds the candidates left by propagation.
+ * There is no search ("find by trial"), only propagation.
+ * <p>
+ * Adding a clue propagates starting from the constraints monitoring the clue's location
+ * only, on top of the already propagated Board. As Boards are immutable, the session simply
+ * keeps the Board obtained after each clue. Retracting a clue goes back to the Board obtained
+ * just before that clue was added and re-adds the clues that came after it; retracting the
+ * most recent clue costs nothing.
+ * <p>
+ * A session is not thread-safe. Printing should stay off (the default) for interactive use.
+ */
+
+public class SudokuSession {
+
+    /**
+     * A clue and the Board obtained after propagating it.
+     */
+
+    private static class Step {
+
+        final Setting clue;
+        final Board board;
+
+        Step(Setting clue, Board board) {
+            this.clue = clue;
+            this.board = board;
+        }
+    }
+
+    private final Constraints cos = new Constraints();
+    private final Board emptyBoard = new Board();
+    private final List<Step> steps = new ArrayList<>(); // in the order the clues were added
+
+    /**
+     * The Board with the candidates left after propagating all clues.
+     */
+
+    public Board getBoard() {
+        return steps.isEmpty() ? emptyBoard : steps.getLast().board;
+    }
+
+    /**
+     * The clues, in the order they were added.
+     */
+
+    public List<Setting> getClues() {
+        List<Setting> res = new ArrayList<>(steps.size());
+        for (Step step : steps) {
+            res.add(step.clue);
+        }
+        return Collections.unmodifiableList(res);
+    }
+
+    /**
+     * Whether propagation alone has fixed every cell.
+     */
+
+    public boolean isSolved() {
+        return getBoard().isDone();
+    }
+
+    /**
+     * Add a clue and propagate its consequences. If the clue contradicts the current Board
+     * (directly or after propagation), an EmptyDomainException is thrown and the session
+     * stays in its last consistent state. Returns the new Board.
+     */
+
+    public Board addClue(Setting clue) throws EmptyDomainException {
+        for (Step step : steps) {
+            if (step.clue.row1 == clue.row1 && step.clue.col1 == clue.col1) {
+                throw new IllegalArgumentException("There already is a clue at " + clue + ", retract it first");
+            }
+        }
+        Board board = propagateClue(getBoard(), clue);
+        steps.add(new Step(clue, board));
+        return board;
+    }
+
+    /**
+     * Retract the clue at the given (1-based) location. Nothing happens if there is none.
+     * Returns the new Board.
+     */
+
+    public Board retractClue(int row1, int col1) {
+        int index = findStep(row1, col1);
+        if (index < 0) {
+            return getBoard();
+        }
+        List<Step> later = new ArrayList<>(steps.subList(index + 1, steps.size()));
+        steps.subList(index, steps.size()).clear();
+        for (Step step : later) {
+            try {
+                steps.add(new Step(step.clue, propagateClue(getBoard(), step.clue)));
+            } catch (EmptyDomainException exe) {
+                // cannot happen: with fewer clues, the domains can only be larger
+                throw new IllegalStateException("Re-adding clue " + step.clue + " failed", exe);
+            }
+        }
+        return getBoard();
+    }
+
+    private int findStep(int row1, int col1) {
+        for (int i = 0; i < steps.size(); i++) {
+            Setting clue = steps.get(i).clue;
+            if (clue.row1 == row1 && clue.col1 == col1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Board propagateClue(Board board, Setting clue) throws EmptyDomainException {
+        Location loc = Location.obtain1(clue.row1, clue.col1);
+        Board.SetResult sres = board.setCell(loc, clue.v);
+        if (!sres.changed) {
+            return board; // the clue had already been deduced
+        }
+        ActiveConstraints acos = new ActiveConstraints();
+        acos.activateAllConstraintsMonitoringThisLocation(loc, null, cos, true);
+        return Sudoku.propagate(0, cos, acos, sres.board);
+    }
+
+}
@@ -0,0 +1,197 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.*;
+
+/**
+ * A "killer Sudoku" cage: the values of the cells of the cage are all different and their
+ * digits add up to a given sum.
+ * <p>
+ * For every cage size and sum, the sets of digits that qualify are precomputed (there are
+ * only 512 subsets of 1..9). At each update, a set of digits is kept only if it contains
+ * the digits already fixed in the cage and the cells can cover all of it. A value stays in a
+ * cell's domain only if some kept set contains it and the other cells can cover the rest of that set.
+ */
+
+public class SumCageConstraint implements Constraint {
+
+    private final static int MAX_SUM = 45; // 1 + 2 + ... + 9
+
+    /**
+     * COMBINATIONS[size][sum] lists the bitmasks of the sets of "size" distinct values whose digits add up to "sum"
+     */
+
+    private final static int[][][] COMBINATIONS = makeCombinations();
+
+    private static int[][][] makeCombinations() {
+        List<List<List<Integer>>> tmp = new ArrayList<>();
+        for (int size = 0; size <= Board.COUNT; size++) {
+            List<List<Integer>> bySum = new ArrayList<>();
+            for (int sum = 0; sum <= MAX_SUM; sum++) {
+                bySum.add(new ArrayList<>());
+            }
+            tmp.add(bySum);
+        }
+        for (int bits = 0; bits < (1 << Board.COUNT); bits++) {
+            int sum = 0;
+            for (int i = 0; i < Board.COUNT; i++) {
+                if ((bits & (1 << i)) != 0) {
+                    sum += i + 1;
+                }
+            }
+            tmp.get(Integer.bitCount(bits)).get(sum).add(bits);
+        }
+        int[][][] res = new int[Board.COUNT + 1][MAX_SUM + 1][];
+        for (int size = 0; size <= Board.COUNT; size++) {
+            for (int sum = 0; sum <= MAX_SUM; sum++) {
+                res[size][sum] = tmp.get(size).get(sum).stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+        return res;
+    }
+
+    private final Location[] cells;
+    private final List<Location> locations;
+    private final int sum;
+    private final String name;
+
+    public SumCageConstraint(List<Location> locations, int sum) {
+        if (locations.isEmpty() || locations.size() > Board.COUNT || new HashSet<>(locations).size() != locations.size()) {
+            throw new IllegalArgumentException("A cage must have 1.." + Board.COUNT + " distinct cells, not " + locations);
+        }
+        if (sum < 1 || sum > MAX_SUM || COMBINATIONS[locations.size()][sum].length == 0) {
+            throw new IllegalArgumentException("No " + locations.size() + " distinct digits add up to " + sum);
+        }
+        this.locations = List.copyOf(locations);
+        this.cells = locations.toArray(new Location[0]);
+        this.sum = sum;
+        this.name = "cage(" + sum + "@" + cells[0].toStringOneBased() + ")";
+    }
+
+    @Override
+    public Collection<Location> getMonitoredLocations() {
+        return locations;
+    }
+
+    /**
+     * Enumerating the combinations is far more work than the all-different rules.
+     */
+
+    @Override
+    public Cost getCost() {
+        return Cost.expensive;
+    }
+
+    @Override
+    public boolean isActiveInitially() {
+        return true;
+    }
+
+    /**
+     * The union of the bits of all cells except "skip", restricted to "mask"
+     */
+
+    private static int coverExcept(int[] bits, int skip, int mask) {
+        int cover = 0;
+        for (int j = 0; j < bits.length; j++) {
+            if (j != skip) {
+                cover |= bits[j] & mask;
+            }
+        }
+        return cover;
+    }
+
+    private static boolean eachCellMeets(int[] bits, int mask) {
+        for (int b : bits) {
+            if ((b & mask) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One round of narrowing. Returns the new domain bits of each cell.
+     */
+
+    private int[] narrowOnce(int[] bits) throws EmptyDomainException {
+        int k = bits.length;
+        int fixedBits = 0;
+        for (int b : bits) {
+            if (Integer.bitCount(b) == 1) {
+                if ((fixedBits & b) != 0) {
+                    throw new EmptyDomainException(); // same value twice in the cage
+                }
+                fixedBits |= b;
+            }
+        }
+        int[] allowed = new int[k];
+        for (int combo : COMBINATIONS[k][sum]) {
+            if ((combo & fixedBits) != fixedBits || coverExcept(bits, -1, combo) != combo || !eachCellMeets(bits, combo)) {
+                continue;
+            }
+            for (int i = 0; i < k; i++) {
+                for (int vbits = bits[i] & combo; vbits != 0; vbits &= vbits - 1) {
+                    int v = Integer.lowestOneBit(vbits);
+                    int rest = combo & ~v;
+                    if (coverExcept(bits, i, rest) == rest) {
+                        allowed[i] |= v;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < k; i++) {
+            if (Integer.bitCount(bits[i]) != 1) {
+                allowed[i] &= ~fixedBits;
+            }
+            if (allowed[i] == 0) {
+                throw new EmptyDomainException();
+            }
+        }
+        return allowed;
+    }
+
+    @Override
+    public UpdateResult update(Board board) throws EmptyDomainException {
+        int[] bits = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            bits[i] = board.board.get(cells[i]).getDomainBits();
+        }
+        int[] original = bits.clone();
+        int[] narrowed;
+        while (!Arrays.equals(narrowed = narrowOnce(bits), bits)) {
+            bits = narrowed;
+        }
+        LocationMap<Cell> overrides = new LocationMap<>();
+        for (int i = 0; i < cells.length; i++) {
+            if (bits[i] != original[i]) {
+                overrides.put(cells[i], new Cell(board.board.get(cells[i]), ~bits[i]));
+            }
+        }
+        if (overrides.isEmpty()) {
+            return new UpdateResult(board, new LocationSet());
+        }
+        return new UpdateResult(new Board(board, overrides), overrides.getLocations());
+    }
+
+    @Override
+    public void throwIfNotfulfillsSolutionCriterium(Board board) {
+        Set<Value> seen = EnumSet.noneOf(Value.class);
+        int total = 0;
+        for (Location loc : cells) {
+            Cell cell = board.board.get(loc);
+            if (!cell.isUnique() || !seen.add(cell.getUnique())) {
+                throw new IllegalStateException("Not a solution state because constraint " + this + " finds [" + cell + "] at " + loc);
+            }
+            total += cell.getUnique().toDigit();
+        }
+        if (total != sum) {
+            throw new IllegalStateException("Not a solution state because constraint " + this + " adds up to " + total);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,163 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A binary trace of a search, as an alternative to the text written by Printing.
+ * <p>
+ * Every event is written as a fixed-size record into a buffer allocated up front: either on the
+ * heap ("inMemory()") or a memory-mapped file ("mapped()"). The buffer is a ring: once it is full,
+ * the oldest records are overwritten, so a trace only ever keeps the latest "capacity" events.
+ * Writing a record is a handful of stores, so tracing can stay on for (sampled) production solves.
+ * TraceReplay turns a trace back into text like that of Printing, or into summary statistics.
+ * <p>
+ * Layout (big-endian, as ByteBuffer is by default):
+ * <p>
+ * - header, HEADER_SIZE bytes: MAGIC (long), RECORD_SIZE (int), capacity in records (int),
+ *   number of records written so far (long), 8 bytes reserved
+ * - records, RECORD_SIZE bytes each: kind (byte), depth (byte), "where" (short), "what" (int),
+ *   sequence number (long)
+ * <p>
+ * Record "n" (counting from 0) is found at slot "n % capacity". The meaning of "where" and "what"
+ * depends on the kind, see Kind.
+ * <p>
+ * A TraceRecorder is confined to the thread running the search it records.
+ */
+
+public class TraceRecorder {
+
+    public final static long MAGIC = 0x5355444f4b555452L; // "SUDOKUTR"
+    public final static int HEADER_SIZE = 32;
+    public final static int RECORD_SIZE = 16;
+
+    final static int WRITTEN_OFFSET = 16; // of the number of records written, in the header
+
+    public enum Kind {
+
+        solveStart, // what: number of clues
+        propagateStart, // (nothing)
+        narrowed, // where: the cell's Location.ordinal, what: the cell's new domain bits
+        fired, // where: index of the constraint in Constraints.getAllConstraints(), what: number of cells narrowed
+        pivot, // where: cell index, what: the pivot's domain bits
+        trial, // where: cell index, what: index of the value tried
+        failed, // where: cell index, what: index of the value that failed
+        exhausted, // where: cell index; all values of the pivot failed
+        restart, // what: number of the run that starts
+        solved; // what: total number of search nodes
+
+        private final static Kind[] byOrdinal = values();
+
+        static Kind fromOrdinal(int ordinal) {
+            return byOrdinal[ordinal];
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private long written;
+
+    private TraceRecorder(ByteBuffer buffer, int capacity) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, RECORD_SIZE);
+        buffer.putInt(12, capacity);
+        buffer.putLong(WRITTEN_OFFSET, 0);
+    }
+
+    private static void checkCapacity(int capacity) {
+        if (capacity < 1 || (long) capacity * RECORD_SIZE > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IllegalArgumentException("Bad capacity " + capacity);
+        }
+    }
+
+    /**
+     * A trace kept on the heap, holding the latest "capacity" records.
+     */
+
+    public static TraceRecorder inMemory(int capacity) {
+        checkCapacity(capacity);
+        return new TraceRecorder(ByteBuffer.allocate(HEADER_SIZE + capacity * RECORD_SIZE), capacity);
+    }
+
+    /**
+     * A trace kept in a memory-mapped file, which is created or overwritten. The operating system
+     * writes the records to disk by itself; the file can be replayed even if the process dies.
+     */
+
+    public static TraceRecorder mapped(Path file, int capacity) throws IOException {
+        checkCapacity(capacity);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer mbb = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+            return new TraceRecorder(mbb, capacity);
+        }
+    }
+
+    /**
+     * Append a record, overwriting the oldest one if the buffer is full.
+     */
+
+    public void record(Kind kind, int depth, int where, int what) {
+        int pos = HEADER_SIZE + (int) (written % capacity) * RECORD_SIZE;
+        buffer.put(pos, (byte) kind.ordinal());
+        buffer.put(pos + 1, (byte) Math.min(depth, Byte.MAX_VALUE));
+        buffer.putShort(pos + 2, (short) where);
+        buffer.putInt(pos + 4, what);
+        buffer.putLong(pos + 8, written);
+        written++;
+        buffer.putLong(WRITTEN_OFFSET, written);
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * A read-only view of the trace, header included, for TraceReplay.
+     */
+
+    public ByteBuffer asReadOnlyBuffer() {
+        return buffer.asReadOnlyBuffer().clear();
+    }
+
+    /**
+     * Write the trace to a file, in the same layout as a mapped trace.
+     */
+
+    public void writeTo(Path file) throws IOException {
+        ByteBuffer bb = asReadOnlyBuffer();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bb.hasRemaining()) {
+                ch.write(bb);
+            }
+        }
+    }
+
+    /**
+     * Make sure a mapped trace is on disk. Does nothing for a trace in memory.
+     */
+
+    public void force() {
+        if (buffer instanceof MappedByteBuffer mbb) {
+            mbb.force();
+        }
+    }
+
+    static ByteBuffer readFile(Path file) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file));
+    }
+
+}
@@ -0,0 +1,186 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import name.heavycarbon.sudoku_solver.TraceRecorder.Kind;
+
+/**
+ * Offline reader for the traces written by TraceRecorder.
+ * <p>
+ * "text" reproduces the step-by-step log that Printing writes (see "example.log"), as far as the
+ * trace has the information: boards and the active constraints are not recorded.
+ * "summary" counts the events by kind and the firings by constraint.
+ * <p>
+ * Constraints are named after "new Constraints()", i.e. the classic 27. The trace of a variant
+ * shows its additional constraints by their index; narrowings by nogoods show as "nogoods".
+ * <p>
+ * Usage: TraceReplay <trace file> [text|summary]
+ */
+
+public class TraceReplay {
+
+    public static class Record {
+
+        public final Kind kind;
+        public final int depth;
+        public final int where;
+        public final int what;
+        public final long seq;
+
+        private Record(Kind kind, int depth, int where, int what, long seq) {
+            this.kind = kind;
+            this.depth = depth;
+            this.where = where;
+            this.what = what;
+            this.seq = seq;
+        }
+    }
+
+    public static class Trace {
+
+        public final List<Record> records; // oldest first
+        public final long written; // including the records that were overwritten
+
+        private Trace(List<Record> records, long written) {
+            this.records = records;
+            this.written = written;
+        }
+
+        public long getLost() {
+            return written - records.size();
+        }
+    }
+
+    /**
+     * Decode a trace as laid out by TraceRecorder.
+     */
+
+    public static Trace read(ByteBuffer bb) {
+        if (bb.getLong(0) != TraceRecorder.MAGIC) {
+            throw new IllegalArgumentException("Not a trace: bad magic number");
+        }
+        if (bb.getInt(8) != TraceRecorder.RECORD_SIZE) {
+            throw new IllegalArgumentException("Unsupported record size " + bb.getInt(8));
+        }
+        int capacity = bb.getInt(12);
+        long written = bb.getLong(TraceRecorder.WRITTEN_OFFSET);
+        int count = (int) Math.min(written, capacity);
+        List<Record> records = new ArrayList<>(count);
+        for (long n = written - count; n < written; n++) {
+            int pos = TraceRecorder.HEADER_SIZE + (int) (n % capacity) * TraceRecorder.RECORD_SIZE;
+            records.add(new Record(Kind.fromOrdinal(bb.get(pos)), bb.get(pos + 1), bb.getShort(pos + 2), bb.getInt(pos + 4), bb.getLong(pos + 8)));
+        }
+        return new Trace(records, written);
+    }
+
+    public static Trace read(Path file) throws IOException {
+        return read(TraceRecorder.readFile(file));
+    }
+
+    private static String header(int depth) {
+        return " ".repeat(depth) + depth + ": ";
+    }
+
+    private static String locationOf(int cellIndex) {
+        return Location.fromOrdinal(cellIndex).toStringOneBased();
+    }
+
+    private static String domainOf(int bits) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < Board.COUNT; i++) {
+            if ((bits & (1 << i)) != 0) {
+                buf.append(buf.isEmpty() ? "" : ",").append(Value.fromIndex(i));
+            }
+        }
+        return buf.toString();
+    }
+
+    private static String constraintName(List<Constraint> classic, int index) {
+        if (index < 0) {
+            return "nogoods";
+        }
+        return (index < classic.size()) ? classic.get(index).toString() : "#" + index;
+    }
+
+    /**
+     * Write the trace as text, in the style of Printing.
+     */
+
+    public static void text(Trace trace, PrintStream out) {
+        List<Constraint> classic = new ArrayList<>(new Constraints().getAllConstraints());
+        if (trace.getLost() > 0) {
+            out.println("(" + trace.getLost() + " earlier records were overwritten)");
+        }
+        List<Location> changed = new ArrayList<>();
+        int counter = 0;
+        for (Record r : trace.records) {
+            switch (r.kind) {
+                case solveStart -> out.println("Solving with " + r.what + " clues");
+                case propagateStart -> counter = 0;
+                case narrowed -> changed.add(Location.fromOrdinal(r.where));
+                case fired -> {
+                    String header = header(r.depth) + counter + ": ";
+                    out.println(header + "Board updated via constraint " + constraintName(classic, r.where));
+                    out.println(header + "Locations that changed through the update: " + changed);
+                    changed.clear();
+                    counter++;
+                }
+                case pivot -> out.println(header(r.depth) + "Selected a pivot location " + locationOf(r.where) + " with domain [" + domainOf(r.what) + "]");
+                case trial -> out.println(header(r.depth) + "Trying value " + Value.fromIndex(r.what));
+                case failed -> out.println(header(r.depth) + "Value " + Value.fromIndex(r.what) + " at pivot location " + locationOf(r.where) + " failed");
+                case exhausted -> out.println(header(r.depth) + "Everything at pivot location " + locationOf(r.where) + " failed");
+                case restart -> out.println("Restarting, run " + r.what);
+                case solved -> out.println("Found a solution! (" + r.what + " search nodes)");
+            }
+        }
+    }
+
+    /**
+     * Write summary statistics of the trace.
+     */
+
+    public static void summary(Trace trace, PrintStream out) {
+        List<Constraint> classic = new ArrayList<>(new Constraints().getAllConstraints());
+        Map<Kind, Long> byKind = new EnumMap<>(Kind.class);
+        Map<String, Long> byConstraint = new TreeMap<>();
+        int maxDepth = 0;
+        for (Record r : trace.records) {
+            byKind.merge(r.kind, 1L, Long::sum);
+            maxDepth = Math.max(maxDepth, r.depth);
+            if (r.kind == Kind.fired) {
+                byConstraint.merge(constraintName(classic, r.where), 1L, Long::sum);
+            }
+        }
+        out.println("records: " + trace.records.size() + " (" + trace.getLost() + " overwritten)");
+        out.println("max depth: " + maxDepth);
+        for (Kind k : Kind.values()) {
+            out.println(k + ": " + byKind.getOrDefault(k, 0L));
+        }
+        out.println("firings by constraint:");
+        for (Map.Entry<String, Long> e : byConstraint.entrySet()) {
+            out.println("  " + e.getKey() + ": " + e.getValue());
+        }
+    }
+
+    public static void main(String[] argv) throws IOException {
+        if (argv.length < 1 || argv.length > 2) {
+            System.err.println("Usage: TraceReplay <trace file> [text|summary]");
+            System.exit(2);
+        }
+        Trace trace = read(Path.of(argv[0]));
+        if (argv.length == 2 && argv[1].equals("summary")) {
+            summary(trace, System.out);
+        } else {
+            text(trace, System.out);
+        }
+    }
+
+}
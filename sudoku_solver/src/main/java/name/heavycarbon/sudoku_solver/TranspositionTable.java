@@ -0,0 +1,100 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded table of what is known about propagated board states, by their Zobrist hash:
+ * that a state has no solution, or how many solutions it has. Searches that reach a state
+ * that is already known (in another branch, on another thread, or for another puzzle) skip it.
+ * <p>
+ * The table has a fixed number of slots; a state goes into the slot given by its hash and simply
+ * replaces what was there. So the table never grows, and may forget.
+ * <p>
+ * It is shared between threads without locking, as in Hyatt's "lockless transposition tables":
+ * a slot holds the data and "hash ^ data", written separately. A reader that sees a slot half
+ * written by another thread finds that the two do not match its hash, and treats the slot as
+ * empty.
+ * <p>
+ * What a state's solutions are depends on the constraints. A table must only be used with
+ * a single Constraints instance (or equivalent ones).
+ */
+
+public class TranspositionTable {
+
+    public final static long UNKNOWN = -1;
+
+    private final AtomicLongArray checks; // hash ^ data
+    private final AtomicLongArray data; // 0: empty, else the number of solutions + 1
+    private final int mask; // number of slots - 1
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * A table with at least "capacity" slots (rounded up to a power of two).
+     */
+
+    public TranspositionTable(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Bad capacity " + capacity);
+        }
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) {
+            slots <<= 1;
+        }
+        this.checks = new AtomicLongArray(slots);
+        this.data = new AtomicLongArray(slots);
+        this.mask = slots - 1;
+    }
+
+    private int slotOf(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * The number of solutions of the state with the given hash, 0 if it is known to have none,
+     * or UNKNOWN.
+     */
+
+    public long getSolutionCount(long hash) {
+        int slot = slotOf(hash);
+        long d = data.getAcquire(slot);
+        if (d != 0 && (checks.getAcquire(slot) ^ d) == hash) {
+            hits.increment();
+            return d - 1;
+        }
+        misses.increment();
+        return UNKNOWN;
+    }
+
+    public boolean isKnownUnsatisfiable(long hash) {
+        return getSolutionCount(hash) == 0;
+    }
+
+    public void recordSolutionCount(long hash, long count) {
+        if (count < 0 || count == Long.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad solution count " + count);
+        }
+        int slot = slotOf(hash);
+        long d = count + 1;
+        data.setRelease(slot, d);
+        checks.setRelease(slot, hash ^ d);
+    }
+
+    public void recordUnsatisfiable(long hash) {
+        recordSolutionCount(hash, 0);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+}
@@ -9,8 +9,37 @@ public enum Value {
 
     final int index;
 
+    private final static Value[] byIndex = values(); // values() creates a fresh array on each call
+
     Value(int index) {
         this.index = index;
     }
 
+    /**
+     * Obtain the Value written as the digit 1..9 in the usual textual notation
+     */
+
+    public static Value fromDigit(int digit) {
+        if (digit < 1 || digit > byIndex.length) {
+            throw new IllegalArgumentException("Not a digit in 1.." + byIndex.length + ": " + digit);
+        }
+        return byIndex[digit - 1];
+    }
+
+    /**
+     * Obtain the Value with the given 0-based index
+     */
+
+    static Value fromIndex(int index) {
+        return byIndex[index];
+    }
+
+    /**
+     * The digit 1..9 used to write this Value in the usual textual notation
+     */
+
+    public int toDigit() {
+        return index + 1;
+    }
+
 }
@@ -1,27 +1,86 @@
 package name.heavycarbon.sudoku_solver;
 
 import java.util.*;
-import java.util.Map.Entry;
 
-public class ValueCellBijectionConstraint {
+public class ValueCellBijectionConstraint implements Constraint {
 
     public enum Type {row, col, block}
 
     private final SortedSet<Location> locations; // locations under this constraint's purview
+    private final Location[] byPosition; // the same locations, indexed by their position in the unit
     private final Type type; // does this check a row, column or block ?
     private final int where0; // and which one (0-based)
+    private final int unitIndex; // index of the unit in 0..26, used to find its value supports on the Board
     private final int hashCode; // a buffer for the hash code
     private final String name; // a buffer for printing
 
     public ValueCellBijectionConstraint(List<Location> locations, Type type, int where0) {
         SortedSet<Location> tmp = new TreeSet<>(locations);
         this.locations = Collections.unmodifiableSortedSet(tmp);
+        this.byPosition = new Location[Board.COUNT];
+        for (Location loc : locations) {
+            byPosition[positionInUnit(type, loc)] = loc;
+        }
         this.name = type + "(" + (where0 + 1) + ")";
         this.type = type;
         this.where0 = where0;
+        this.unitIndex = type.ordinal() * Board.COUNT + where0;
         this.hashCode = this.type.hashCode() ^ Integer.hashCode(this.where0);
     }
 
+    /**
+     * The index (0..26) of the unit of the given type that contains "loc".
+     */
+
+    public static int unitIndex(Type type, Location loc) {
+        return type.ordinal() * Board.COUNT + whereOf(type, loc);
+    }
+
+    /**
+     * The 0-based number of the row, column or block (numbered left-to-right, top-to-bottom) containing "loc".
+     */
+
+    public static int whereOf(Type type, Location loc) {
+        return switch (type) {
+            case row -> loc.row0;
+            case col -> loc.col0;
+            case block -> (loc.row0 / 3) * 3 + (loc.col0 / 3);
+        };
+    }
+
+    /**
+     * The position (0..8) of "loc" within the unit of the given type that contains it.
+     * This is the bit used for "loc" in the value supports.
+     */
+
+    public static int positionInUnit(Type type, Location loc) {
+        return switch (type) {
+            case row -> loc.col0;
+            case col -> loc.row0;
+            case block -> (loc.row0 % 3) * 3 + (loc.col0 % 3);
+        };
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getWhere0() {
+        return where0;
+    }
+
+    public SortedSet<Location> getLocations() {
+        return locations;
+    }
+
+    public int getUnitIndex() {
+        return unitIndex;
+    }
+
+    public Location getLocationAtPosition(int pos) {
+        return byPosition[pos];
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -44,40 +103,49 @@ public class ValueCellBijectionConstraint {
     }
 
     /**
-     * Pull the cells whose locations we are interested in from a Board
+     * Pull the cells whose locations we are interested in from a Board, indexed by position
      */
 
-    private Map<Location, Cell> pullFromBoard(Board board) {
-        Map<Location, Cell> pulled = new HashMap<>();
-        for (Location loc : locations) {
-            pulled.put(loc, board.board.get(loc));
+    private Cell[] pullFromBoard(Board board) {
+        Cell[] pulled = new Cell[Board.COUNT];
+        for (int pos = 0; pos < Board.COUNT; pos++) {
+            pulled[pos] = board.board.get(byPosition[pos]);
         }
         return pulled;
     }
 
     /**
-     * Helper: Create the initial structure that will be used to collect
-     * the Locations associated to a given value over the constraint's
-     * locations of interest. Every value will be encountered, so the
-     * Map will have an initial entry for each one.
+     * Pull the value supports of this unit from a Board, indexed by value index
      */
 
-    private static Map<Value, List<Location>> freshValueToLocationsMap() {
-        Map<Value, List<Location>> map = new HashMap<>();
+    private int[] pullSupport(Board board) {
+        int[] support = new int[Board.COUNT];
         for (Value v : Value.values()) {
-            map.put(v, new LinkedList<>());
+            support[v.index] = board.getSupport(unitIndex, v);
         }
-        return map;
+        return support;
     }
 
-    private static Map<Value, List<Location>> getDomainTotals(Map<Location, Cell> cells) {
-        Map<Value, List<Location>> map = freshValueToLocationsMap();
-        for (Entry<Location, Cell> e : cells.entrySet()) {
-            Location loc = e.getKey();
-            Cell cell = e.getValue();
-            cell.updateDomainTotals(map, loc);
+    /**
+     * Narrow the cell at "pos" by removing the values in "impossibleBits", keeping "support"
+     * up to date: each removed value loses the cell's position bit.
+     * Throws an exception if this implies an empty domain or (if "bijection") leaves a value without support.
+     */
+
+    private static void narrow(Cell[] cells, int[] support, int pos, int impossibleBits, boolean bijection) throws EmptyDomainException {
+        Cell updatedCell = new Cell(cells[pos], impossibleBits);
+        if (updatedCell.isEmpty()) {
+            throw new EmptyDomainException();
+        }
+        int removed = cells[pos].getDomainBits() & impossibleBits;
+        for (int bits = removed; bits != 0; bits &= bits - 1) {
+            int vi = Integer.numberOfTrailingZeros(bits);
+            support[vi] &= ~(1 << pos);
+            if (bijection && support[vi] == 0) {
+                throw new EmptyDomainException(); // the value can no longer be placed in this unit
+            }
         }
-        return map;
+        cells[pos] = updatedCell;
     }
 
     /**
@@ -87,29 +155,21 @@ public class ValueCellBijectionConstraint {
      * "For any value that appears as unique member of a cell's domain: it cannot appear anywhere else"
      * <p>
      * Throws an exception if this implies an empty domain on some cell.
-     * Returns the set of updated locations, which may be empty.
+     * Returns the bitmask of the updated positions, which may be empty.
      * If this changed something, it should be run again by the caller.
      */
 
-    private Set<Location> updateDomains_allDifferent(Map<Location, Cell> cells) throws EmptyDomainException {
-        Set<Location> res = new HashSet<>();
-        for (Location loc : cells.keySet()) { // should be the same as "locations"
-            Cell cell = cells.get(loc);
+    private static int updateDomains_allDifferent(Cell[] cells, int[] support, boolean bijection) throws EmptyDomainException {
+        int res = 0;
+        for (int pos = 0; pos < cells.length; pos++) {
+            Cell cell = cells[pos];
             if (cell.isUnique()) {
-                Value v = cell.getUnique();
-                for (Location loc2 : cells.keySet()) {
-                    if (!loc2.equals(loc)) {
-                        Cell oldCell = cells.get(loc2);
-                        if (oldCell.domainContains(v)) {
-                            Cell updatedCell = new Cell(oldCell, v);
-                            if (updatedCell.isEmpty()) {
-                                throw new EmptyDomainException();
-                            }
-                            cells.put(loc2, updatedCell);
-                            res.add(loc2);
-                        }
-                    }
+                int vi = cell.getUnique().index;
+                int others = support[vi] & ~(1 << pos);
+                for (int bits = others; bits != 0; bits &= bits - 1) {
+                    narrow(cells, support, Integer.numberOfTrailingZeros(bits), 1 << vi, bijection);
                 }
+                res |= others;
             }
         }
         return res;
@@ -122,74 +182,122 @@ public class ValueCellBijectionConstraint {
      * "For any domain that contains a value that appears in only that domain among all cells, the domain
      * can be reduced to that value alone."
      * <p>
-     * Throws an exception if this implies an empty domain on some cell.
-     * Returns the set of updated locations, which may be empty.
+     * With the value supports, this is a check of "count == 1" for each value.
+     * Throws an exception if this implies an empty domain on some cell, or if a value has no support left.
+     * Returns the bitmask of the updated positions, which may be empty.
      * If this changed something, it should be run again by the caller.
      */
 
-    private Set<Location> updateDomains_inverseAllDifferent(Map<Location, Cell> cells) throws EmptyDomainException {
-        Set<Location> res = new HashSet<>();
-        Map<Value, List<Location>> map = getDomainTotals(cells);
-        for (Value v : Value.values()) {
-            int count = map.get(v).size();
-            assert (count > 0);
-            if (count == 1) {
-                Location loc = map.get(v).getFirst();
-                Cell cell = cells.get(loc);
-                if (!cell.isUnique()) {
-                    cells.put(loc, new Cell(v)); // now it is unique!
-                    res.add(loc);
+    private static int updateDomains_inverseAllDifferent(Cell[] cells, int[] support) throws EmptyDomainException {
+        int res = 0;
+        for (int vi = 0; vi < Board.COUNT; vi++) {
+            if (support[vi] == 0) {
+                throw new EmptyDomainException(); // the value can no longer be placed in this unit
+            }
+            if (Integer.bitCount(support[vi]) == 1) {
+                int pos = Integer.numberOfTrailingZeros(support[vi]);
+                if (!cells[pos].isUnique()) {
+                    narrow(cells, support, pos, ~(1 << vi), true); // now it is unique!
+                    res |= (1 << pos);
                 }
             }
         }
         return res;
     }
 
-    public static class UpdateResult {
+    /**
+     * Apply both rules to the cells of a unit until neither changes anything any more.
+     * This is shared with RegionAllDifferentConstraint: for a region of fewer than 9 cells,
+     * "bijection" is false and only the "all different" rule holds.
+     * Returns the bitmask of the updated positions, which may be empty.
+     */
+
+    static int updateUnit(Cell[] cells, int[] support, boolean bijection) throws EmptyDomainException {
+        int collectedChanges = 0;
+        int changed;
+        do {
+            changed = updateDomains_allDifferent(cells, support, bijection);
+            if (bijection) {
+                changed |= updateDomains_inverseAllDifferent(cells, support);
+            }
+            collectedChanges |= changed;
+        } while (changed != 0);
+        return collectedChanges;
+    }
 
-        public final Board board;
-        public final Set<Location> changedLocs;
+    /**
+     * Build the result of an update from the updated positions.
+     */
 
-        public UpdateResult(Board board, Set<Location> changedLocs) {
-            this.board = board;
-            this.changedLocs = changedLocs;
+    static UpdateResult makeUpdateResult(Board board, Location[] byPosition, Cell[] cells, int changes) {
+        if (changes == 0) {
+            return new UpdateResult(board, new LocationSet());
+        }
+        LocationMap<Cell> overrides = new LocationMap<>();
+        for (int bits = changes; bits != 0; bits &= bits - 1) {
+            int pos = Integer.numberOfTrailingZeros(bits);
+            overrides.put(byPosition[pos], cells[pos]);
         }
+        return new UpdateResult(new Board(board, overrides), overrides.getLocations());
+    }
 
+    @Override
+    public Collection<Location> getMonitoredLocations() {
+        return locations;
     }
 
-    public UpdateResult update(Board board) throws EmptyDomainException {
-        // Collect the current cells into a modifiable structure that we shall update
-        Map<Location, Cell> cellsOfInterest = pullFromBoard(board);
-        Set<Location> collectedChanges = new HashSet<>();
-        boolean changed1 = false;
-        boolean changed2 = false;
-        do {
-            Set<Location> locs1 = updateDomains_allDifferent(cellsOfInterest);
-            Set<Location> locs2 = updateDomains_inverseAllDifferent(cellsOfInterest);
-            changed1 = !(locs1.isEmpty());
-            changed2 = !(locs2.isEmpty());
-            collectedChanges.addAll(locs1);
-            collectedChanges.addAll(locs2);
-        } while (changed1 || changed2);
-        Board newBoard;
-        if (collectedChanges.isEmpty()) {
-            newBoard = board;
-        } else {
-            newBoard = new Board(board, cellsOfInterest);
+    /**
+     * Before "change", there was nothing left to narrow in this unit. Afterwards there may be if:
+     * <p>
+     * - the cell became fixed and its value is still a candidate elsewhere in the unit
+     * - a removed value can now be placed in at most one cell of the unit, which is not fixed
+     *   to it yet (a hidden single), or in none (a contradiction)
+     */
+
+    @Override
+    public boolean isWokenBy(DomainChange change, Board board) {
+        if (change.is(DomainChange.Kind.fixed)) {
+            int vi = Integer.numberOfTrailingZeros(change.after);
+            if (Integer.bitCount(board.getSupport(unitIndex, Value.fromIndex(vi))) > 1) {
+                return true;
+            }
+        }
+        for (int bits = change.getRemovedBits(); bits != 0; bits &= bits - 1) {
+            int support = board.getSupport(unitIndex, Value.fromIndex(Integer.numberOfTrailingZeros(bits)));
+            if (support == 0) {
+                return true;
+            }
+            if (Integer.bitCount(support) == 1 && !board.board.get(byPosition[Integer.numberOfTrailingZeros(support)]).isUnique()) {
+                return true;
+            }
         }
-        return new UpdateResult(newBoard, collectedChanges);
+        return false;
+    }
+
+    @Override
+    public UpdateResult update(Board board) throws EmptyDomainException {
+        // Collect the current cells and value supports into modifiable arrays that we shall update
+        Cell[] cellsOfInterest = pullFromBoard(board);
+        int[] support = pullSupport(board);
+        int changes = updateUnit(cellsOfInterest, support, true);
+        return makeUpdateResult(board, byPosition, cellsOfInterest, changes);
     }
 
     /*
      * Check that "Board" is a solution according to this constraint. Throws if not.
      */
 
+    @Override
     public void throwIfNotfulfillsSolutionCriterium(Board board) {
-        Map<Value, List<Location>> map = getDomainTotals(pullFromBoard(board));
-        for (Entry<Value, List<Location>> e : map.entrySet()) {
-            if (e.getValue().size() != 1) {
-                throw new IllegalStateException("Not a solution state because constraint " + this + " finds " + e.getValue().size() + " entries for value " + e.getValue());
+        for (Value v : Value.values()) {
+            int supportBits = board.getSupport(unitIndex, v);
+            if (Integer.bitCount(supportBits) != 1) {
+                List<Location> supporting = new LinkedList<>();
+                for (int bits = supportBits; bits != 0; bits &= bits - 1) {
+                    supporting.add(byPosition[Integer.numberOfTrailingZeros(bits)]);
+                }
+                throw new IllegalStateException("Not a solution state because constraint " + this + " finds " + supporting.size() + " entries for value " + v + ": " + supporting);
             }
         }
     }
-}
\ No newline at end of file
+}
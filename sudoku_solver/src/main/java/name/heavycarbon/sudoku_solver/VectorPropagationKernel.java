@@ -0,0 +1,97 @@
+package name.heavycarbon.sudoku_solver;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The PropagationKernel, vectorized with the (incubating) Vector API: each lane holds one board
+ * of the batch, and all the boards of a group of lanes are propagated in lock-step. A group
+ * keeps going until none of its (non-contradictory) boards changes any more.
+ * <p>
+ * The boards that do not fill a whole group at the end of the batch are done by the scalar code.
+ * <p>
+ * Requires "--add-modules jdk.incubator.vector" at compile time and at runtime.
+ * Only instantiated through PropagationKernel.obtain().
+ */
+
+public class VectorPropagationKernel extends PropagationKernel {
+
+    private final static VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public String getName() {
+        return "vector(" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    public void propagate(int[] masks, int boardCount, int[] status) {
+        int bound = SPECIES.loopBound(boardCount);
+        for (int b = 0; b < bound; b += SPECIES.length()) {
+            propagateGroup(masks, boardCount, b, status);
+        }
+        for (int b = bound; b < boardCount; b++) {
+            status[b] = propagateLane(masks, boardCount, b);
+        }
+    }
+
+    private static VectorMask<Integer> isSingle(IntVector m) {
+        return m.compare(VectorOperators.NE, 0).and(m.and(m.sub(1)).compare(VectorOperators.EQ, 0));
+    }
+
+    private static void propagateGroup(int[] masks, int stride, int b, int[] status) {
+        IntVector zero = IntVector.zero(SPECIES);
+        VectorMask<Integer> failed = SPECIES.maskAll(false);
+        VectorMask<Integer> changed;
+        do {
+            changed = SPECIES.maskAll(false);
+            for (int[] unit : UNITS) {
+                // OR-reduce the fixed values, noting empty cells and values fixed twice
+                IntVector fixed = zero;
+                for (int cell : unit) {
+                    IntVector m = IntVector.fromArray(SPECIES, masks, cell * stride + b);
+                    IntVector single = zero.blend(m, isSingle(m));
+                    failed = failed.or(fixed.and(single).compare(VectorOperators.NE, 0));
+                    failed = failed.or(m.compare(VectorOperators.EQ, 0));
+                    fixed = fixed.or(single);
+                }
+                // AND-NOT the fixed values into the other cells, counting occurrences "once" and "twice or more"
+                IntVector notFixed = fixed.not();
+                IntVector once = zero;
+                IntVector twice = zero;
+                for (int cell : unit) {
+                    int i = cell * stride + b;
+                    IntVector m = IntVector.fromArray(SPECIES, masks, i);
+                    IntVector n = m.blend(m.and(notFixed), isSingle(m).not());
+                    changed = changed.or(n.compare(VectorOperators.NE, m));
+                    n.intoArray(masks, i);
+                    twice = twice.or(once.and(n));
+                    once = once.or(n);
+                }
+                failed = failed.or(once.compare(VectorOperators.NE, ALL));
+                // fix the hidden singles
+                IntVector hidden = once.and(twice.not()).and(notFixed);
+                if (hidden.compare(VectorOperators.NE, 0).anyTrue()) {
+                    for (int cell : unit) {
+                        int i = cell * stride + b;
+                        IntVector m = IntVector.fromArray(SPECIES, masks, i);
+                        IntVector h = m.and(hidden);
+                        VectorMask<Integer> update = h.compare(VectorOperators.NE, 0).and(h.compare(VectorOperators.NE, m));
+                        failed = failed.or(update.andNot(isSingle(h)));
+                        changed = changed.or(update);
+                        m.blend(h, update).intoArray(masks, i);
+                    }
+                }
+            }
+        } while (changed.andNot(failed).anyTrue());
+        VectorMask<Integer> solved = failed.not();
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            solved = solved.and(isSingle(IntVector.fromArray(SPECIES, masks, cell * stride + b)));
+        }
+        for (int lane = 0; lane < SPECIES.length(); lane++) {
+            status[b + lane] = failed.laneIsSet(lane) ? CONTRADICTION : (solved.laneIsSet(lane) ? SOLVED : STUCK);
+        }
+    }
+
+}
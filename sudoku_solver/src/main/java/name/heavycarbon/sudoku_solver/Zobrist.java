@@ -0,0 +1,70 @@
+package name.heavycarbon.sudoku_solver;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist hashing of board states: a random 64-bit key for each pair of (cell, candidate mask),
+ * and the hash of a board is the XOR of the keys of its 81 cells.
+ * <p>
+ * As XOR is its own inverse, narrowing a cell from mask "a" to mask "b" changes the hash by
+ * "key(cell, a) ^ key(cell, b)", and undoing the narrowing changes it back the same way. So
+ * the hash is kept up to date with a couple of XORs per narrowing, by Board and by Solver.
+ * <p>
+ * Two different states get the same hash with a probability of about 2^-64 per pair, which
+ * the TranspositionTable accepts.
+ */
+
+public final class Zobrist {
+
+    private final static int CELL_COUNT = Board.COUNT * Board.COUNT;
+    private final static int MASK_COUNT = 1 << Board.COUNT;
+
+    private final static long[] KEYS = makeKeys(); // indexed by cell * MASK_COUNT + mask
+
+    private static long[] makeKeys() {
+        SplittableRandom random = new SplittableRandom(0x5D0C0_2B0A4DL); // fixed, so that hashes are stable between runs
+        long[] res = new long[CELL_COUNT * MASK_COUNT];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = random.nextLong();
+        }
+        return res;
+    }
+
+    private final static long EMPTY_BOARD_HASH = makeEmptyBoardHash();
+
+    private static long makeEmptyBoardHash() {
+        long res = 0;
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            res ^= key(cell, MASK_COUNT - 1);
+        }
+        return res;
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * The key of the cell with index "cell" (row0 * 9 + col0) having the candidates "mask".
+     */
+
+    public static long key(int cell, int mask) {
+        return KEYS[cell * MASK_COUNT + mask];
+    }
+
+    /**
+     * The hash of a board on which every cell still has all candidates.
+     */
+
+    public static long emptyBoardHash() {
+        return EMPTY_BOARD_HASH;
+    }
+
+    /**
+     * The change to the hash when the cell "cell" is narrowed from "oldMask" to "newMask", or back.
+     */
+
+    public static long delta(int cell, int oldMask, int newMask) {
+        return key(cell, oldMask) ^ key(cell, newMask);
+    }
+
+}
@@ -0,0 +1,80 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestActiveConstraints {
+
+    private static List<String> drain(ActiveConstraints acos) {
+        List<String> res = new ArrayList<>();
+        while (!acos.isEmpty()) {
+            res.add(acos.getNext().toString());
+        }
+        return res;
+    }
+
+    @Test
+    public void runsCheapFixedConstraintsFirstAndExpensiveOnesLast() {
+        SumCageConstraint cage = new SumCageConstraint(List.of(Location.obtain1(9, 8), Location.obtain1(9, 9)), 17);
+        Constraints cos = new Constraints(true, List.of(cage));
+        ActiveConstraints acos = new ActiveConstraints();
+        // the cage is activated first, and sees as many changes as any, but is expensive
+        acos.activateAllConstraintsMonitoringThisLocation(Location.obtain1(9, 8), null, cos, true);
+        acos.activateAllConstraintsMonitoringThisLocation(Location.obtain1(9, 9), null, cos, true);
+        // row 1, column 1 and block 1 see a narrowing, then row 1, column 2 and block 1 a fixed cell
+        acos.activateAllConstraintsMonitoringThisLocation(Location.obtain1(1, 1), null, cos, false);
+        acos.activateAllConstraintsMonitoringThisLocation(Location.obtain1(1, 2), null, cos, true);
+        List<String> order = drain(acos);
+        assertEquals(9, order.size(), order.toString());
+        // woken by a fixed cell, 2 changes each
+        assertEquals(Set.of("row(9)", "block(9)", "row(1)", "block(1)"), Set.copyOf(order.subList(0, 4)));
+        // woken by a fixed cell, 1 change each, in order of activation
+        assertEquals(List.of("col(8)", "col(9)", "col(2)"), order.subList(4, 7));
+        // woken by a narrowing only
+        assertEquals("col(1)", order.get(7));
+        assertEquals(cage.toString(), order.get(8));
+    }
+
+    @Test
+    public void wakesOnlyConstraintsThatTheChangeConcerns() {
+        Location loc = Location.obtain1(1, 1);
+        // a region of fewer than 9 cells finds no hidden singles, so only fixed cells concern it
+        RegionAllDifferentConstraint pair = new RegionAllDifferentConstraint(List.of(loc, Location.obtain1(2, 2)), "pair");
+        Constraints cos = new Constraints(true, List.of(pair));
+        Board before = new Board();
+        // removing a value that still has 8 places in each unit: nothing to deduce
+        Board after = new Board(before, new Cell(before.board.get(loc), Value.fromIndex(0)), loc);
+        Constraint.DomainChange change = new Constraint.DomainChange(loc, before.board.get(loc).getDomainBits(), after.board.get(loc).getDomainBits());
+        assertTrue(change.is(Constraint.DomainChange.Kind.removed));
+        assertFalse(change.is(Constraint.DomainChange.Kind.fixed));
+        ActiveConstraints acos = new ActiveConstraints();
+        acos.activateAllConstraintsWokenByThisChange(change, after, null, cos);
+        assertTrue(acos.isEmpty(), acos.toString());
+        assertEquals(4, acos.getSkipped()); // row, column, block and the pair
+        // fixing the cell concerns them all
+        Board fixed = new Board(before, new Cell(Value.fromIndex(4)), loc);
+        change = new Constraint.DomainChange(loc, before.board.get(loc).getDomainBits(), fixed.board.get(loc).getDomainBits());
+        assertTrue(change.is(Constraint.DomainChange.Kind.fixed));
+        assertTrue(change.is(Constraint.DomainChange.Kind.smallDomain));
+        acos.activateAllConstraintsWokenByThisChange(change, fixed, null, cos);
+        assertEquals(4, acos.getCount());
+    }
+
+    @Test
+    public void needsFewerUpdatesThanAFifo() throws EmptyDomainException {
+        // "Sudoku.solve()" checks the solution; here only the work is compared, via the trace
+        List<Setting> settings = PuzzleFormat.parse("000000012000000003002300400001800005060070800000009000008500000900040500470006000");
+        TraceRecorder trace = TraceRecorder.inMemory(1 << 16);
+        Sudoku.solve(settings, new Constraints(), SearchContext.deterministic().withTrace(trace));
+        long updates = TraceReplay.read(trace.asReadOnlyBuffer()).records.stream()
+                .filter(r -> r.kind == TraceRecorder.Kind.fired).count();
+        // 2610 updates when ActiveConstraints was a FIFO
+        assertTrue(updates < 2610, "Took " + updates + " updates");
+    }
+
+}
@@ -0,0 +1,177 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Guards the hot paths of the solver against regressions that allocate more per step, e.g. a new
+ * map in ValueCellBijectionConstraint.update() or an additional Board per update.
+ * <p>
+ * Each test measures the bytes allocated by the current thread per operation over the puzzles in
+ * "corpus.txt", after a warm-up, and compares that to the budget in "allocation-budgets.properties".
+ * If an improvement makes a budget far too generous, lower the budget.
+ */
+
+public class TestAllocationBudgets {
+
+    private final static int WARMUP_ROUNDS = 20;
+    private final static int ROUNDS = 10;
+
+    private static com.sun.management.ThreadMXBean mx;
+    private static Properties budgets;
+    private static List<List<Setting>> corpus;
+    private static List<Board> propagatedBoards; // the corpus puzzles after initial propagation
+
+    @BeforeAll
+    public static void setUp() throws IOException, EmptyDomainException {
+        mx = (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean tmx) ? tmx : null;
+        budgets = new Properties();
+        try (InputStream in = TestAllocationBudgets.class.getResourceAsStream("/allocation-budgets.properties")) {
+            budgets.load(in);
+        }
+        corpus = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                TestAllocationBudgets.class.getResourceAsStream("/corpus.txt"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    corpus.add(PuzzleFormat.parse(line));
+                }
+            }
+        }
+        propagatedBoards = new ArrayList<>();
+        Constraints cos = new Constraints();
+        for (List<Setting> settings : corpus) {
+            Board board = new Board();
+            ActiveConstraints acos = new ActiveConstraints();
+            for (Setting s : settings) {
+                Location loc = Location.obtain1(s.row1, s.col1);
+                board = board.setCell(loc, s.v).board;
+                acos.activateAllConstraintsMonitoringThisLocation(loc, null, cos);
+            }
+            propagatedBoards.add(Sudoku.propagate(0, cos, acos, board));
+        }
+    }
+
+    private interface Round {
+        /**
+         * Run one round over the corpus and return the number of operations done.
+         */
+        long run() throws Exception;
+    }
+
+    /**
+     * Bytes allocated per operation, over ROUNDS rounds, after WARMUP_ROUNDS rounds.
+     */
+
+    private static double measure(Round round) throws Exception {
+        assumeTrue(mx != null && mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled());
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.run();
+        }
+        mx.getCurrentThreadAllocatedBytes();
+        long before = mx.getCurrentThreadAllocatedBytes();
+        long ops = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            ops += round.run();
+        }
+        long allocated = mx.getCurrentThreadAllocatedBytes() - before;
+        return (double) allocated / ops;
+    }
+
+    private static void assertWithinBudget(String component, double bytesPerOp) {
+        String budget = budgets.getProperty(component);
+        assertNotNull(budget, "No budget for " + component);
+        assertTrue(bytesPerOp <= Double.parseDouble(budget),
+                String.format("%s allocates %.1f bytes per operation, over its budget of %s", component, bytesPerOp, budget));
+    }
+
+    @Test
+    public void constraintUpdate() throws Exception {
+        List<ValueCellBijectionConstraint> units = new Constraints().getUnits();
+        double bytes = measure(() -> {
+            long ops = 0;
+            for (Board board : propagatedBoards) {
+                for (ValueCellBijectionConstraint unit : units) {
+                    unit.update(board);
+                    ops++;
+                }
+            }
+            return ops;
+        });
+        assertWithinBudget("constraintUpdate", bytes);
+    }
+
+    @Test
+    public void boardNarrowing() throws Exception {
+        // narrow each undetermined cell by its smallest value, one at a time
+        List<Board> boards = new ArrayList<>();
+        List<Location> locs = new ArrayList<>();
+        List<Cell> narrowed = new ArrayList<>();
+        for (Board board : propagatedBoards) {
+            for (Location loc : board.findCellsWithSmallestDomainThatIsNotOne()) {
+                Cell cell = board.board.get(loc);
+                boards.add(board);
+                locs.add(loc);
+                narrowed.add(new Cell(cell, 1 << Integer.numberOfTrailingZeros(cell.getDomainBits())));
+            }
+        }
+        double bytes = measure(() -> {
+            for (int i = 0; i < boards.size(); i++) {
+                new Board(boards.get(i), narrowed.get(i), locs.get(i));
+            }
+            return boards.size();
+        });
+        assertWithinBudget("boardNarrowing", bytes);
+    }
+
+    @Test
+    public void pivotSelection() throws Exception {
+        SearchContext ctx = SearchContext.deterministic();
+        List<Board> undone = propagatedBoards.stream().filter(board -> !board.isDone()).toList();
+        double bytes = measure(() -> {
+            for (Board board : undone) {
+                ctx.choosePivot(board);
+            }
+            return undone.size();
+        });
+        assertWithinBudget("pivotSelection", bytes);
+    }
+
+    @Test
+    public void fullSolve() throws Exception {
+        double bytes = measure(() -> {
+            for (List<Setting> settings : corpus) {
+                Sudoku.solve(settings);
+            }
+            return corpus.size();
+        });
+        assertWithinBudget("fullSolve", bytes);
+    }
+
+    @Test
+    public void fullSolveWithSolver() throws Exception {
+        Solver solver = new Solver();
+        double bytes = measure(() -> {
+            for (List<Setting> settings : corpus) {
+                solver.solve(settings);
+            }
+            return corpus.size();
+        });
+        assertWithinBudget("fullSolveWithSolver", bytes);
+    }
+
+}
@@ -0,0 +1,32 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestBoard {
+
+    @Test
+    public void valueSupportFollowsTheCells() throws EmptyDomainException {
+        Board board = new Board();
+        for (Setting s : CourseraSettings.getSettings()) {
+            board = board.setCell(Location.obtain1(s.row1, s.col1), s.v).board;
+        }
+        Hints.Deduction d;
+        while ((d = Hints.nextDeduction(board)) != null) {
+            board = d.apply(board);
+        }
+        for (ValueCellBijectionConstraint unit : new Constraints().getUnits()) {
+            for (Value v : Value.values()) {
+                int expected = 0;
+                for (int pos = 0; pos < Board.COUNT; pos++) {
+                    if (board.board.get(unit.getLocationAtPosition(pos)).domainContains(v)) {
+                        expected |= 1 << pos;
+                    }
+                }
+                assertEquals(expected, board.getSupport(unit.getUnitIndex(), v), unit + " " + v);
+            }
+        }
+    }
+
+}
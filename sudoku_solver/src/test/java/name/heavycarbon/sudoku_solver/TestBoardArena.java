@@ -0,0 +1,90 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBoardArena {
+
+    private final static String HARD = "000000012000000003002300400001800005060070800000009000008500000900040500470006000";
+    private final static String CONTRADICTORY = "110000000000000000000000000000000000000000000000000000000000000000000000000000000";
+
+    private static int[] toDigits(String line) {
+        int[] digits = new int[PuzzleFormat.LENGTH];
+        PuzzleFormat.parseDigits(line, digits);
+        return digits;
+    }
+
+    private static String format(BoardArena arena, int slot) {
+        StringBuilder buf = new StringBuilder();
+        for (int cell = 0; cell < PuzzleFormat.LENGTH; cell++) {
+            buf.append(arena.getDigit(slot, cell));
+        }
+        return buf.toString();
+    }
+
+    @Test
+    public void solvesInPlace() throws EmptyDomainException {
+        String expected = PuzzleFormat.format(Sudoku.solve(PuzzleFormat.parse(HARD)));
+        try (BoardArena arena = new BoardArena(3)) {
+            int hard = arena.add(toDigits(HARD));
+            int bad = arena.add(toDigits(CONTRADICTORY));
+            assertEquals(BoardArena.PENDING, arena.getStatus(hard));
+            assertEquals(HARD, format(arena, hard));
+            assertEquals(1, arena.solveAll(new Solver()));
+            assertEquals(BoardArena.SOLVED, arena.getStatus(hard));
+            assertEquals(expected, format(arena, hard));
+            assertEquals(BoardArena.UNSOLVABLE, arena.getStatus(bad));
+            assertThrows(IndexOutOfBoundsException.class, () -> arena.getStatus(2));
+            arena.add(toDigits(HARD));
+            assertThrows(IllegalStateException.class, () -> arena.add(toDigits(HARD)));
+            arena.reset();
+            assertEquals(0, arena.add(toDigits(CONTRADICTORY)));
+        }
+    }
+
+    @Test
+    public void refusesUseAfterClose() {
+        BoardArena arena = new BoardArena(1);
+        arena.add(toDigits(HARD));
+        arena.close();
+        assertThrows(IllegalStateException.class, () -> arena.getMask(0, 0)); // freed
+        arena.close(); // closing again does nothing
+    }
+
+    @Test
+    public void sharedBetweenThreads() throws Exception {
+        int count = 64;
+        try (BoardArena arena = new BoardArena(count, true)) {
+            for (int i = 0; i < count; i++) {
+                arena.add(toDigits(HARD));
+            }
+            ExecutorService exec = Executors.newFixedThreadPool(2);
+            try {
+                Future<?> even = exec.submit(() -> solveEveryOther(arena, 0));
+                Future<?> odd = exec.submit(() -> solveEveryOther(arena, 1));
+                even.get();
+                odd.get();
+            } finally {
+                exec.shutdown();
+            }
+            String expected = format(arena, 0);
+            for (int slot = 0; slot < count; slot++) {
+                assertEquals(BoardArena.SOLVED, arena.getStatus(slot));
+                assertEquals(expected, format(arena, slot));
+            }
+        }
+    }
+
+    private static void solveEveryOther(BoardArena arena, int first) {
+        Solver solver = new Solver();
+        for (int slot = first; slot < arena.size(); slot += 2) {
+            arena.solve(solver, slot);
+        }
+    }
+
+}
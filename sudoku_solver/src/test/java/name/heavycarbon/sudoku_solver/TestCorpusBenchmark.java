@@ -0,0 +1,120 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCorpusBenchmark {
+
+    private final static List<String> CORPORA = List.of("easy", "hard", "seventeen", "multi");
+
+    private static Path resource(String name) throws URISyntaxException {
+        return Path.of(TestCorpusBenchmark.class.getResource("/corpora/" + name).toURI());
+    }
+
+    private static String corpusFile(String name) throws URISyntaxException {
+        return resource(name + ".txt").toString();
+    }
+
+    private static Properties load(Path file) throws IOException {
+        Properties res = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            res.load(in);
+        }
+        return res;
+    }
+
+    /**
+     * Run the benchmark over all the corpora, quickly, with the given options. Returns the exit
+     * status; stderr goes into "err".
+     */
+
+    private static int run(ByteArrayOutputStream err, String... options) throws URISyntaxException {
+        List<String> argv = new ArrayList<>(List.of("--warmup=1", "--rounds=2"));
+        argv.addAll(List.of(options));
+        for (String name : CORPORA) {
+            argv.add(corpusFile(name));
+        }
+        return CorpusBenchmark.run(argv.toArray(new String[0]), new PrintStream(OutputStream.nullOutputStream()), new PrintStream(err));
+    }
+
+    @Test
+    public void matchesTheCommittedNodeCounts(@TempDir Path dir) throws IOException, URISyntaxException {
+        Path written = dir.resolve("baseline.properties");
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        // passing means all engines found valid solutions, and the same ones where they are unique
+        assertEquals(0, run(err, "--write-baseline=" + written), err.toString(StandardCharsets.US_ASCII));
+        Properties now = load(written);
+        Properties committed = load(resource("baseline.properties"));
+        for (String name : CORPORA) {
+            for (CorpusBenchmark.Engine engine : CorpusBenchmark.Engine.values()) {
+                for (CorpusBenchmark.Metric metric : CorpusBenchmark.Metric.values()) {
+                    assertNotNull(now.getProperty(name + "." + engine + "." + metric), name + "." + engine + "." + metric);
+                }
+                // the search is deterministic, so the nodes are the same on any machine
+                String key = name + "." + engine + ".nodesPerPuzzle";
+                assertEquals(committed.getProperty(key), now.getProperty(key), key);
+            }
+        }
+        assertEquals("0.0", now.getProperty("easy.sudoku.nodesPerPuzzle"));
+    }
+
+    @Test
+    public void failsOnRegressions(@TempDir Path dir) throws IOException, URISyntaxException {
+        Path written = dir.resolve("baseline.properties");
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(0, run(err, "--engines=solver,sudoku", "--write-baseline=" + written), err.toString(StandardCharsets.US_ASCII));
+        // against itself, with times allowed to vary a lot, as the machine may be busy
+        err.reset();
+        assertEquals(0, run(err, "--engines=solver,sudoku", "--baseline=" + written, "--time-tolerance=1000"), err.toString(StandardCharsets.US_ASCII));
+        // a baseline in which the hard puzzles needed half the nodes
+        Properties doctored = load(written);
+        double nodes = Double.parseDouble(doctored.getProperty("hard.sudoku.nodesPerPuzzle"));
+        doctored.setProperty("hard.sudoku.nodesPerPuzzle", Double.toString(nodes / 2));
+        try (OutputStream out = Files.newOutputStream(written)) {
+            doctored.store(out, null);
+        }
+        err.reset();
+        assertEquals(3, run(err, "--engines=solver,sudoku", "--baseline=" + written, "--time-tolerance=1000"));
+        String report = err.toString(StandardCharsets.US_ASCII);
+        assertTrue(report.contains("hard.sudoku.nodesPerPuzzle"), report);
+        assertFalse(report.contains("hard.solver.nodesPerPuzzle"), report);
+    }
+
+    @Test
+    public void percentiles() {
+        long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 1;
+        }
+        assertEquals(500, CorpusBenchmark.percentile(values, 0.50));
+        assertEquals(990, CorpusBenchmark.percentile(values, 0.99));
+        assertEquals(999, CorpusBenchmark.percentile(values, 0.999));
+        assertEquals(7, CorpusBenchmark.percentile(new long[]{7}, 0.999));
+    }
+
+    @Test
+    public void rejectsBadArguments() throws URISyntaxException {
+        PrintStream none = new PrintStream(OutputStream.nullOutputStream());
+        assertEquals(2, CorpusBenchmark.run(new String[]{"--rounds=0", corpusFile("easy")}, none, none));
+        assertEquals(2, CorpusBenchmark.run(new String[]{"--engines=sudoku,fast", corpusFile("easy")}, none, none));
+        assertEquals(2, CorpusBenchmark.run(new String[]{"--time-tolerance=-1", corpusFile("easy")}, none, none));
+        assertEquals(2, CorpusBenchmark.run(new String[]{"--rounds=3"}, none, none));
+        assertEquals(1, CorpusBenchmark.run(new String[]{"no-such-corpus.txt"}, none, none));
+    }
+
+}
@@ -0,0 +1,217 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDistributedSolver {
+
+    private final static String HARD = "000000012000000003002300400001800005060070800000009000008500000900040500470006000";
+    private final static String EASY = "000000000780010000000020030000340000060050010000060000000070000540086970000090000";
+    private final static String UNSOLVABLE = "5000000050" + "0".repeat(71);
+
+    private static String makeInput() {
+        StringBuilder input = new StringBuilder("# a comment\n");
+        for (int i = 0; i < 120; i++) {
+            switch (i % 4) {
+                case 0 -> input.append(HARD).append('\n');
+                case 1 -> input.append(EASY).append('\n');
+                case 2 -> input.append(UNSOLVABLE).append('\n');
+                default -> input.append("12345\n");
+            }
+        }
+        return input.toString();
+    }
+
+    /**
+     * A worker in a JVM of its own, with the classes under test.
+     */
+
+    private static Process startWorker(int port) throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classes = new File(DistributedSolver.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        return new ProcessBuilder(java, "-cp", classes, DistributedSolver.class.getName(),
+                "worker", "--port=" + port, "--threads=2")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    private static String expectedOutput(String input) throws InterruptedException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        assertEquals(0, SolverPipeline.run(new String[]{"--threads=1"}, new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)),
+                expected, new PrintStream(new ByteArrayOutputStream())));
+        return expected.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A coordinator with "--stats" on a thread of its own; its exit status goes into "status".
+     */
+
+    private static Thread startCoordinator(ServerSocket server, String input, ByteArrayOutputStream out, ByteArrayOutputStream err, int[] status) {
+        Thread coordinator = new Thread(() -> {
+            try {
+                status[0] = DistributedSolver.runCoordinator(server, List.of("--chunk=7", "--window=4", "--stats"),
+                        new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)), out, new PrintStream(err));
+            } catch (InterruptedException ex) {
+                status[0] = -1;
+            }
+        });
+        coordinator.start();
+        return coordinator;
+    }
+
+    /**
+     * A worker in this JVM, on a thread of its own.
+     */
+
+    private static Thread startWorkerThread(int port) {
+        Thread worker = new Thread(() -> {
+            try {
+                DistributedSolver.run(new String[]{"worker", "--port=" + port, "--threads=1"}, new ByteArrayInputStream(new byte[0]),
+                        new ByteArrayOutputStream(), new PrintStream(new ByteArrayOutputStream()));
+            } catch (InterruptedException ex) {
+                // the test is over
+            }
+        });
+        worker.start();
+        return worker;
+    }
+
+    /**
+     * The figure before "label" in the statistics line, e.g. "chunks reassigned".
+     */
+
+    private static long stat(ByteArrayOutputStream err, String label) {
+        Matcher m = Pattern.compile("(\\d+) " + label).matcher(err.toString(StandardCharsets.US_ASCII));
+        assertTrue(m.find(), err.toString(StandardCharsets.US_ASCII));
+        return Long.parseLong(m.group(1));
+    }
+
+    /**
+     * Connect as a worker and take the first chunk, returning the socket.
+     */
+
+    private static Socket takeFirstChunk(ServerSocket server) throws Exception {
+        Socket socket = new Socket("localhost", server.getLocalPort());
+        DataOutputStream toCoordinator = new DataOutputStream(socket.getOutputStream());
+        DataInputStream fromCoordinator = new DataInputStream(socket.getInputStream());
+        toCoordinator.writeByte(DistributedSolver.REQUEST);
+        toCoordinator.flush();
+        assertEquals(DistributedSolver.CHUNK, fromCoordinator.readByte());
+        assertEquals(0, fromCoordinator.readInt()); // the first chunk
+        int count = fromCoordinator.readInt();
+        fromCoordinator.readFully(new byte[count * DistributedSolver.RECORD_SIZE]);
+        return socket;
+    }
+
+    @Test
+    public void solvesWithWorkersInOtherJvms() throws Exception {
+        String input = makeInput();
+        ServerSocket server = new ServerSocket(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int[] status = new int[1];
+        Thread coordinator = startCoordinator(server, input, out, err, status);
+        // a worker that takes a chunk and fails: the chunk must be handed out again
+        takeFirstChunk(server).close();
+        List<Process> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                workers.add(startWorker(server.getLocalPort()));
+            }
+            coordinator.join(TimeUnit.SECONDS.toMillis(60));
+            assertFalse(coordinator.isAlive(), "coordinator did not finish");
+            assertEquals(0, status[0], err.toString(StandardCharsets.US_ASCII));
+            assertEquals(expectedOutput(input), out.toString(StandardCharsets.US_ASCII));
+            assertEquals(120, stat(err, "puzzles"));
+            assertTrue(stat(err, "chunks reassigned") >= 1, err.toString(StandardCharsets.US_ASCII));
+            for (Process worker : workers) {
+                assertTrue(worker.waitFor(30, TimeUnit.SECONDS), "worker did not finish");
+            }
+        } finally {
+            workers.forEach(Process::destroyForcibly);
+        }
+    }
+
+    @Test
+    public void stealsFromAWorkerThatStalls() throws Exception {
+        String input = makeInput();
+        ServerSocket server = new ServerSocket(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int[] status = new int[1];
+        Thread coordinator = startCoordinator(server, input, out, err, status);
+        // a worker that takes a chunk and never answers, but stays connected
+        try (Socket stalled = takeFirstChunk(server)) {
+            Thread worker = startWorkerThread(server.getLocalPort());
+            coordinator.join(TimeUnit.SECONDS.toMillis(60));
+            assertFalse(coordinator.isAlive(), "coordinator did not finish");
+            assertEquals(0, status[0], err.toString(StandardCharsets.US_ASCII));
+            assertEquals(expectedOutput(input), out.toString(StandardCharsets.US_ASCII));
+            assertTrue(stat(err, "stolen") >= 1, err.toString(StandardCharsets.US_ASCII));
+            assertEquals(0, stat(err, "chunks reassigned"));
+            // the stalled worker is told that it is over
+            assertEquals(DistributedSolver.DONE, new DataInputStream(stalled.getInputStream()).readByte());
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    @Test
+    public void handsOutAgainWhatABadResultWasFor() throws Exception {
+        String input = makeInput();
+        ServerSocket server = new ServerSocket(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int[] status = new int[1];
+        Thread coordinator = startCoordinator(server, input, out, err, status);
+        // a worker that answers with statuses that do not exist: the coordinator hangs up on it
+        try (Socket bad = takeFirstChunk(server)) {
+            DataOutputStream toCoordinator = new DataOutputStream(bad.getOutputStream());
+            toCoordinator.writeByte(DistributedSolver.RESULT);
+            toCoordinator.writeInt(0);
+            toCoordinator.writeInt(7);
+            byte[] results = new byte[7 * DistributedSolver.RECORD_SIZE];
+            results[0] = 9;
+            toCoordinator.write(results);
+            toCoordinator.flush();
+            assertEquals(-1, bad.getInputStream().read());
+        }
+        Thread worker = startWorkerThread(server.getLocalPort());
+        coordinator.join(TimeUnit.SECONDS.toMillis(60));
+        assertFalse(coordinator.isAlive(), "coordinator did not finish");
+        assertEquals(0, status[0], err.toString(StandardCharsets.US_ASCII));
+        assertEquals(expectedOutput(input), out.toString(StandardCharsets.US_ASCII));
+        assertEquals(1, stat(err, "chunks reassigned"));
+        worker.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    @Test
+    public void rejectsBadArguments() throws InterruptedException {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(2, DistributedSolver.run(new String[]{"worker", "--threads=0"}, new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new PrintStream(err)));
+        assertTrue(err.toString(StandardCharsets.US_ASCII).contains("--threads"));
+        assertEquals(2, DistributedSolver.run(new String[0], new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new PrintStream(err)));
+        assertEquals(2, DistributedSolver.run(new String[]{"coordinator", "--chunk=x"}, new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new PrintStream(err)));
+    }
+
+}
@@ -0,0 +1,80 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFish {
+
+    /**
+     * A Board on which value "v" can only go into the given columns (1-based) of the given rows.
+     */
+
+    private static Board confine(Value v, Map<Integer, List<Integer>> colsByRow) {
+        Board board = new Board();
+        Map<Location, Cell> overrides = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> e : colsByRow.entrySet()) {
+            for (int col1 = 1; col1 <= Board.COUNT; col1++) {
+                if (!e.getValue().contains(col1)) {
+                    Location loc = Location.obtain1(e.getKey(), col1);
+                    overrides.put(loc, new Cell(board.board.get(loc), v));
+                }
+            }
+        }
+        return new Board(board, overrides);
+    }
+
+    @Test
+    public void xWing() throws EmptyDomainException {
+        Value v = Value.fromIndex(6);
+        Board board = confine(v, Map.of(1, List.of(2, 7), 5, List.of(2, 7)));
+        Constraint.UpdateResult ur = new FishConstraint(v, 2).update(board);
+        // removed from the 7 other rows in both columns
+        assertEquals(14, ur.changedLocs.size());
+        for (int row1 = 1; row1 <= Board.COUNT; row1++) {
+            boolean inFish = (row1 == 1 || row1 == 5);
+            assertEquals(inFish, ur.board.board.get(Location.obtain1(row1, 2)).domainContains(v));
+            assertEquals(inFish, ur.board.board.get(Location.obtain1(row1, 7)).domainContains(v));
+            assertEquals(!inFish, ur.board.board.get(Location.obtain1(row1, 3)).domainContains(v)); // untouched
+        }
+        // another value is not concerned
+        assertTrue(new FishConstraint(Value.fromIndex(0), 2).update(board).changedLocs.isEmpty());
+    }
+
+    @Test
+    public void swordfishNeedsSize3() throws EmptyDomainException {
+        Value v = Value.fromIndex(3);
+        // rows 2, 4 and 8 each have the value in 2 of the columns 1, 5 and 9
+        Board board = confine(v, Map.of(2, List.of(1, 5), 4, List.of(5, 9), 8, List.of(1, 9)));
+        assertTrue(new FishConstraint(v, 2).update(board).changedLocs.isEmpty());
+        Constraint.UpdateResult ur = new FishConstraint(v, 3).update(board);
+        assertEquals(18, ur.changedLocs.size()); // 6 other rows, 3 columns
+        assertFalse(ur.board.board.get(Location.obtain1(1, 5)).domainContains(v));
+        assertTrue(ur.board.board.get(Location.obtain1(1, 4)).domainContains(v));
+    }
+
+    @Test
+    public void wakesOnlyForItsValue() {
+        FishConstraint fish = new FishConstraint(Value.fromIndex(2), FishConstraint.MAX_SIZE);
+        Location loc = Location.obtain1(3, 3);
+        assertTrue(fish.isWokenBy(new Constraint.DomainChange(loc, 0b111111111, 0b111111011), new Board()));
+        assertFalse(fish.isWokenBy(new Constraint.DomainChange(loc, 0b111111111, 0b111110111), new Board()));
+        assertThrows(IllegalArgumentException.class, () -> FishConstraint.all(5));
+    }
+
+    @Test
+    public void findsTheSameSolutions() throws EmptyDomainException {
+        Constraints cos = new Constraints(true, true, FishConstraint.all());
+        for (String line : List.of(
+                "000000012000000003002300400001800005060070800000009000008500000900040500470006000",
+                "800000000003600000070090200050007000000045700000100030001000068008500010090000400")) {
+            List<Setting> settings = PuzzleFormat.parse(line);
+            assertEquals(PuzzleFormat.format(Sudoku.solve(settings)), PuzzleFormat.format(Sudoku.solve(settings, cos)));
+        }
+    }
+
+}
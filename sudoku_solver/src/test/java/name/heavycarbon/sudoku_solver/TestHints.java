@@ -0,0 +1,76 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestHints {
+
+    private static Board withClues(List<Setting> settings) throws EmptyDomainException {
+        Board board = new Board();
+        for (Setting s : settings) {
+            board = board.setCell(Location.obtain1(s.row1, s.col1), s.v).board;
+        }
+        return board;
+    }
+
+    @Test
+    public void firstHintOnFreshCluesIsNakedSingle() throws EmptyDomainException {
+        Hints.Deduction d = Hints.nextDeduction(withClues(CourseraSettings.getSettings()));
+        assertNotNull(d);
+        assertEquals(Hints.Deduction.Kind.nakedSingle, d.kind);
+        assertEquals(1, d.cause.size());
+        assertFalse(d.narrowed.isEmpty());
+    }
+
+    @Test
+    public void followingHintsKeepsTheSolution() throws EmptyDomainException {
+        List<Setting> settings = CourseraSettings.getSettings();
+        Board solution = Sudoku.solve(settings);
+        Board board = withClues(settings);
+        SudokuSession session = new SudokuSession();
+        for (Setting s : settings) {
+            session.addClue(s);
+        }
+        Hints.Deduction d;
+        while ((d = Hints.nextDeduction(board)) != null) {
+            board = d.apply(board);
+        }
+        for (Location loc : solution.board.keySet()) {
+            Cell cell = board.board.get(loc);
+            assertTrue(cell.domainContains(solution.board.get(loc).getUnique()), d + " at " + loc);
+            // hints are at least as strong as propagation
+            assertTrue(cell.cardinality <= session.getBoard().board.get(loc).cardinality);
+        }
+    }
+
+    @Test
+    public void contradictionIsReported() throws EmptyDomainException {
+        Board board = withClues(List.of(Setting.f(1, 1, Value.v3), Setting.f(2, 2, Value.v3)));
+        // both clues are in block 1, so following the hints must run into the contradiction
+        assertThrows(EmptyDomainException.class, () -> {
+            Board b = board;
+            Hints.Deduction d;
+            while ((d = Hints.nextDeduction(b)) != null) {
+                b = d.apply(b);
+            }
+        });
+    }
+
+    @Test
+    public void cellsWithTooFewValuesAreAContradiction() throws EmptyDomainException {
+        // three cells of row 1, in different blocks, that can only hold 1 or 2
+        Board board = new Board();
+        Map<Location, Cell> overrides = new HashMap<>();
+        for (int col1 : new int[]{1, 4, 7}) {
+            overrides.put(Location.obtain1(1, col1), new Cell(new Cell(), 0x1FF & ~0b11));
+        }
+        Board narrowed = new Board(board, overrides);
+        assertThrows(EmptyDomainException.class, () -> Hints.nextDeduction(narrowed));
+    }
+
+}
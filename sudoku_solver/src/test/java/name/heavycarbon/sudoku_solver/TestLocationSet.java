@@ -0,0 +1,66 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLocationSet {
+
+    @Test
+    public void ordinalsAreDense() {
+        Set<Integer> hashes = new HashSet<>();
+        for (int ordinal = 0; ordinal < Location.ORDINAL_COUNT; ordinal++) {
+            Location loc = Location.fromOrdinal(ordinal);
+            assertEquals(ordinal, loc.ordinal);
+            assertSame(loc, Location.obtain0(ordinal / Board.COUNT, ordinal % Board.COUNT));
+            hashes.add(loc.hashCode());
+        }
+        assertEquals(Location.ORDINAL_COUNT, hashes.size());
+    }
+
+    @Test
+    public void setIteratesInOrdinalOrder() {
+        Location last = Location.obtain1(9, 9); // in the high word
+        Location first = Location.obtain1(1, 1);
+        Location middle = Location.obtain1(8, 2); // ordinal 64, the first of the high word
+        LocationSet set = LocationSet.of(last, middle, first);
+        assertFalse(set.add(middle));
+        assertEquals(3, set.size());
+        assertEquals(List.of(first, middle, last), new ArrayList<>(set));
+        assertEquals(Set.of(first, middle, last), set);
+        assertEquals(Set.of(first, middle, last).hashCode(), set.hashCode());
+        Iterator<Location> it = set.iterator();
+        it.next();
+        it.remove();
+        assertFalse(set.contains(first));
+        assertTrue(set.remove(last));
+        assertEquals(List.of(middle), new ArrayList<>(set));
+        set.clear();
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void mapIteratesInOrdinalOrder() {
+        LocationMap<String> map = new LocationMap<>();
+        map.put(Location.obtain1(9, 1), "c");
+        map.put(Location.obtain1(1, 9), "b");
+        map.put(Location.obtain1(1, 1), "a");
+        assertEquals("b", map.put(Location.obtain1(1, 9), "B"));
+        assertEquals(List.of("a", "B", "c"), new ArrayList<>(map.values()));
+        assertEquals(List.of(Location.obtain1(1, 1), Location.obtain1(1, 9), Location.obtain1(9, 1)), new ArrayList<>(map.keySet()));
+        LocationMap<String> copy = new LocationMap<>(map);
+        assertEquals(map, copy);
+        copy.keySet().remove(Location.obtain1(1, 1));
+        assertNull(copy.get(Location.obtain1(1, 1)));
+        assertEquals(2, copy.getLocations().size());
+        assertEquals(3, map.size()); // the copy is independent
+        assertThrows(NullPointerException.class, () -> map.put(Location.obtain1(2, 2), null));
+    }
+
+}
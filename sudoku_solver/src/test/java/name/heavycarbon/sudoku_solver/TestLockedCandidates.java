@@ -0,0 +1,84 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLockedCandidates {
+
+    private final static String HARD = "000000012000000003002300400001800005060070800000009000008500000900040500470006000";
+
+    private static Constraint find(List<LockedCandidatesConstraint> all, String name) {
+        return all.stream().filter(c -> c.toString().equals(name)).findFirst().orElseThrow();
+    }
+
+    /**
+     * Remove value "v" from the cells of block 1 that are not in its top row.
+     */
+
+    private static Board confineToTopRowOfBlock1(Value v) {
+        Board board = new Board();
+        Map<Location, Cell> overrides = new HashMap<>();
+        for (int row1 = 2; row1 <= 3; row1++) {
+            for (int col1 = 1; col1 <= 3; col1++) {
+                Location loc = Location.obtain1(row1, col1);
+                overrides.put(loc, new Cell(board.board.get(loc), v));
+            }
+        }
+        return new Board(board, overrides);
+    }
+
+    @Test
+    public void pointing() throws EmptyDomainException {
+        List<LockedCandidatesConstraint> all = LockedCandidatesConstraint.all();
+        assertEquals(54, all.size());
+        Value v = Value.fromIndex(4);
+        Board board = confineToTopRowOfBlock1(v);
+        // in block 1, "v" can only go into row 1: it is removed from the rest of row 1
+        Constraint.UpdateResult ur = find(all, "locked(block(1),row(1))").update(board);
+        assertEquals(6, ur.changedLocs.size());
+        for (int col1 = 1; col1 <= Board.COUNT; col1++) {
+            assertEquals(col1 <= 3, ur.board.board.get(Location.obtain1(1, col1)).domainContains(v));
+        }
+        // the intersection of block 1 with column 1 has nothing to say about it
+        assertTrue(find(all, "locked(block(1),col(1))").update(board).changedLocs.isEmpty());
+    }
+
+    @Test
+    public void claiming() throws EmptyDomainException {
+        List<LockedCandidatesConstraint> all = LockedCandidatesConstraint.all();
+        Value v = Value.fromIndex(2);
+        // in row 5, "v" can only go into block 5 (columns 4 to 6): it is removed from the rest of block 5
+        Board board = new Board();
+        Map<Location, Cell> overrides = new HashMap<>();
+        for (int col1 : new int[]{1, 2, 3, 7, 8, 9}) {
+            Location loc = Location.obtain1(5, col1);
+            overrides.put(loc, new Cell(board.board.get(loc), v));
+        }
+        board = new Board(board, overrides);
+        Constraint.UpdateResult ur = find(all, "locked(block(5),row(5))").update(board);
+        assertEquals(6, ur.changedLocs.size());
+        for (Location loc : ur.changedLocs) {
+            assertNotEquals(5, loc.row0 + 1); // rows 4 and 6 of the block
+            assertFalse(ur.board.board.get(loc).domainContains(v));
+        }
+    }
+
+    @Test
+    public void findsTheSameSolutionWithLessSearch() throws EmptyDomainException {
+        List<Setting> settings = PuzzleFormat.parse(HARD);
+        SearchContext classic = SearchContext.deterministic();
+        SearchContext locked = SearchContext.deterministic();
+        Board classicBoard = Sudoku.solve(settings, new Constraints(), classic);
+        Board lockedBoard = Sudoku.solve(settings, Constraints.withLockedCandidates(), locked);
+        assertEquals(PuzzleFormat.format(classicBoard), PuzzleFormat.format(lockedBoard));
+        // 144 nodes without, 50 with
+        assertTrue(locked.getTotalNodes() < classic.getTotalNodes(), locked.getTotalNodes() + " nodes");
+        assertThrows(IllegalArgumentException.class, () -> new Constraints(false, true, List.of()));
+    }
+
+}
@@ -0,0 +1,56 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestNogoods {
+
+    @Test
+    public void nogoodsPruneButFindTheSameSolution() throws EmptyDomainException {
+        // a hard puzzle with a unique solution that needs a bit of search
+        List<Setting> settings = PuzzleFormat.parse("000000012000000003002300400001800005060070800000009000008500000900040500470006000");
+        SearchContext plain = SearchContext.deterministic();
+        Board expected = Sudoku.solve(settings, new Constraints(), plain);
+        SearchContext ctx = SearchContext.deterministic().withNogoods(256);
+        Board board = Sudoku.solve(settings, new Constraints(), ctx);
+        assertEquals(PuzzleFormat.format(expected), PuzzleFormat.format(board));
+        assertTrue(ctx.getNogoods().getPrunings() > 0);
+        assertTrue(ctx.getTotalNodes() < plain.getTotalNodes());
+        assertTrue(ctx.getNogoods().size() <= 256);
+    }
+
+    @Test
+    public void nogoodsPruneOverTheHardCorpus() throws EmptyDomainException, IOException {
+        long plainNodes = 0;
+        long nogoodNodes = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                TestNogoods.class.getResourceAsStream("/corpora/hard.txt"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = PuzzleFormat.readPuzzleLine(reader)) != null) {
+                List<Setting> settings = PuzzleFormat.parse(line);
+                SearchContext plain = SearchContext.deterministic();
+                String expected = PuzzleFormat.format(Sudoku.solve(settings, new Constraints(), plain));
+                SearchContext ctx = SearchContext.deterministic().withNogoods(1024);
+                assertEquals(expected, PuzzleFormat.format(Sudoku.solve(settings, new Constraints(), ctx)));
+                // a store that keeps evicting
+                SearchContext small = SearchContext.deterministic().withNogoods(4);
+                assertEquals(expected, PuzzleFormat.format(Sudoku.solve(settings, new Constraints(), small)));
+                assertTrue(small.getNogoods().size() <= 4);
+                plainNodes += plain.getTotalNodes();
+                nogoodNodes += ctx.getTotalNodes();
+            }
+        }
+        // 1250 nodes without, 1074 with (859 if nogoods on all paths are made smaller, but at almost
+        // twice the time)
+        assertTrue(nogoodNodes < plainNodes, nogoodNodes + " nodes with nogoods, " + plainNodes + " without");
+    }
+
+}
@@ -0,0 +1,64 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestPortfolio {
+
+    private final static String HARD = "000000012000000003002300400001800005060070800000009000008500000900040500470006000";
+
+    @Test
+    public void portfolioRecordsTheWinner() throws Exception {
+        try (Portfolio portfolio = new Portfolio()) {
+            List<Setting> settings = PuzzleFormat.parse(HARD);
+            String expected = PuzzleFormat.format(Sudoku.solve(settings));
+            for (int i = 0; i < 3; i++) {
+                Portfolio.Result res = portfolio.solve(settings);
+                assertEquals(expected, PuzzleFormat.format(res.board));
+            }
+            assertEquals(3, portfolio.getWins().values().stream().mapToLong(Long::longValue).sum());
+        }
+    }
+
+    @Test
+    public void losersAreCancelled() throws Exception {
+        // a strategy that waits, at its first look into the transposition table, until it is cancelled
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        SearchContext[] stalling = new SearchContext[1];
+        Portfolio.Strategy waitsForCancel = new Portfolio.Strategy("waitsForCancel", () -> {
+            SearchContext ctx = SearchContext.deterministic();
+            stalling[0] = ctx;
+            return ctx.withTranspositionTable(new TranspositionTable(16) {
+                @Override
+                public boolean isKnownUnsatisfiable(long hash) {
+                    stalled.countDown();
+                    while (!ctx.isCancelled()) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                    released.countDown();
+                    return false; // the search then stops at its next node
+                }
+            });
+        });
+        List<Portfolio.Strategy> strategies = List.of(waitsForCancel, new Portfolio.Strategy("deterministic", SearchContext::deterministic));
+        try (Portfolio portfolio = new Portfolio(strategies, new Constraints())) {
+            List<Setting> settings = PuzzleFormat.parse(HARD);
+            Portfolio.Result res = portfolio.solve(settings);
+            assertEquals("deterministic", res.winner);
+            assertEquals(PuzzleFormat.format(Sudoku.solve(settings)), PuzzleFormat.format(res.board));
+            assertTrue(stalling[0].isCancelled());
+            // the loser, wherever it was, lets go of its thread
+            assertTrue(stalled.await(10, TimeUnit.SECONDS) && released.await(10, TimeUnit.SECONDS), "the loser was not cancelled");
+            assertEquals(List.of(0L, 1L), List.copyOf(portfolio.getWins().values()));
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Differential tests: both kernels must end up with the same boards as ValueCellBijectionConstraint.
+ */
+
+public class TestPropagationKernel {
+
+    /**
+     * Boards with a random subset of the cells of a solution set, and some with a random wrong clue
+     * thrown in, which may or may not lead to a contradiction.
+     */
+
+    private static List<Board> randomBoards(int count, long seed) throws EmptyDomainException {
+        Board solution = Sudoku.solve(CourseraSettings.getSettings());
+        Random random = new Random(seed);
+        List<Board> boards = new ArrayList<>(count);
+        for (int b = 0; b < count; b++) {
+            Board board = new Board();
+            int percent = 15 + random.nextInt(50);
+            for (Map.Entry<Location, Cell> e : solution.board.entrySet()) {
+                if (random.nextInt(100) < percent) {
+                    board = board.setCell(e.getKey(), e.getValue().getUnique()).board;
+                }
+            }
+            if (b % 3 == 0) {
+                Location loc = Location.obtain0(random.nextInt(Board.COUNT), random.nextInt(Board.COUNT));
+                if (!board.board.get(loc).isUnique()) {
+                    board = board.setCell(loc, Value.fromDigit(1 + random.nextInt(Board.COUNT))).board;
+                }
+            }
+            boards.add(board);
+        }
+        return boards;
+    }
+
+    /**
+     * The reference: run all 27 constraints to quiescence. Returns null on contradiction.
+     */
+
+    private static Board propagateWithConstraints(Board board) {
+        Constraints cos = new Constraints();
+        ActiveConstraints acos = new ActiveConstraints();
+        for (Location loc : board.board.keySet()) {
+            acos.activateAllConstraintsMonitoringThisLocation(loc, null, cos);
+        }
+        try {
+            return Sudoku.propagate(0, cos, acos, board);
+        } catch (EmptyDomainException exe) {
+            return null;
+        }
+    }
+
+    private static void checkAgainstConstraints(PropagationKernel kernel, List<Board> boards) {
+        int n = boards.size();
+        int[] masks = PropagationKernel.toMasks(boards);
+        int[] status = new int[n];
+        kernel.propagate(masks, n, status);
+        int contradictions = 0;
+        for (int b = 0; b < n; b++) {
+            Board expected = propagateWithConstraints(boards.get(b));
+            if (expected == null) {
+                assertEquals(PropagationKernel.CONTRADICTION, status[b], kernel.getName() + " board " + b);
+                contradictions++;
+            } else {
+                assertNotEquals(PropagationKernel.CONTRADICTION, status[b], kernel.getName() + " board " + b);
+                Board actual = PropagationKernel.fromMasks(masks, n, b, boards.get(b));
+                assertEquals(expected.toString(), actual.toString(), kernel.getName() + " board " + b);
+                assertEquals(expected.isDone(), status[b] == PropagationKernel.SOLVED);
+            }
+        }
+        // make sure the corpus exercises both outcomes
+        assertTrue(contradictions > 0 && contradictions < n);
+    }
+
+    @Test
+    public void scalarKernelAgreesWithConstraints() throws EmptyDomainException {
+        checkAgainstConstraints(new PropagationKernel(), randomBoards(200, 1));
+    }
+
+    @Test
+    public void vectorKernelAgreesWithConstraints() throws EmptyDomainException {
+        // 203 boards, so that the scalar tail is exercised too
+        checkAgainstConstraints(new VectorPropagationKernel(), randomBoards(203, 2));
+    }
+
+    @Test
+    public void obtainFallsBackToScalar() {
+        assertEquals("scalar", PropagationKernel.obtain().getName());
+    }
+
+}
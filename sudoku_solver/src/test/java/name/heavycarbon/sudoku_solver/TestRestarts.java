@@ -0,0 +1,32 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestRestarts {
+
+    @Test
+    public void lubySequence() {
+        long[] expected = {1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, 1};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], SearchContext.luby(i + 1));
+        }
+    }
+
+    @Test
+    public void restartsFindASolution() throws EmptyDomainException {
+        // "solve()" checks the solution; the Coursera puzzle has several, so just check that the clues are kept
+        for (SearchContext.Schedule schedule : SearchContext.Schedule.values()) {
+            // a tiny unit forces several restarts
+            SearchContext ctx = SearchContext.restarting(schedule, 2, 4711);
+            Board board = Sudoku.solve(CourseraSettings.getSettings(), new Constraints(), ctx);
+            for (Setting s : CourseraSettings.getSettings()) {
+                assertEquals(s.v, board.board.get(Location.obtain1(s.row1, s.col1)).getUnique());
+            }
+            assertTrue(ctx.getRuns() > 1, schedule.toString());
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSolutions {
+
+    private final static String HARD = "000000012000000003002300400001800005060070800000009000008500000900040500470006000";
+    private final static String NINETEEN = "009400700000080900752301006001804600000103009080009040028507194903248060000906208"; // has 19 solutions
+
+    private static void assertSolves(List<Setting> settings, Board board) {
+        new Constraints().throwIfNotFulfillsSolutionCriterium(board);
+        for (Setting s : settings) {
+            assertEquals(s.v, board.board.get(Location.obtain1(s.row1, s.col1)).getUnique());
+        }
+    }
+
+    @Test
+    public void enumeratesAllSolutions() throws EmptyDomainException {
+        List<Setting> settings = PuzzleFormat.parse(NINETEEN);
+        List<Board> boards = SolutionSpliterator.stream(settings, new Constraints(), false).toList();
+        List<String> all = boards.stream().map(PuzzleFormat::format).toList();
+        assertEquals(19, all.size());
+        assertEquals(19, Set.copyOf(all).size());
+        // the first one is the one that the search of Sudoku.solve() finds
+        assertEquals(PuzzleFormat.format(Sudoku.solve(settings)), all.getFirst());
+        for (Board board : boards) {
+            assertSolves(settings, board);
+        }
+        // a parallel stream finds the same solutions
+        Set<String> parallel = SolutionSpliterator.stream(settings, new Constraints(), true).map(PuzzleFormat::format).collect(Collectors.toSet());
+        assertEquals(Set.copyOf(all), parallel);
+        // a puzzle with a unique solution
+        assertEquals(1, SolutionSpliterator.stream(PuzzleFormat.parse(HARD), new Constraints(), true).count());
+        // and one with none
+        assertEquals(0, SolutionSpliterator.stream(PuzzleFormat.parse("5000000050" + "0".repeat(71)), new Constraints(), false).count());
+    }
+
+    @Test
+    public void isLazy() {
+        // the Coursera puzzle has far too many solutions to enumerate them all
+        List<Setting> settings = CourseraSettings.getSettings();
+        SolutionSpliterator solutions = SolutionSpliterator.of(settings);
+        List<Board> firstThree = StreamSupport.stream(solutions, false).limit(3).toList();
+        assertEquals(3, firstThree.size());
+        for (Board board : firstThree) {
+            assertSolves(settings, board);
+        }
+        assertTrue(solutions.getNodes() < 1000, "Explored " + solutions.getNodes() + " nodes");
+    }
+
+    @Test
+    public void splitsTheSearchTree() {
+        SolutionSpliterator first = SolutionSpliterator.of(PuzzleFormat.parse(NINETEEN));
+        SolutionSpliterator second = (SolutionSpliterator) first.trySplit();
+        assertNotNull(second);
+        List<Board> fromFirst = new ArrayList<>();
+        List<Board> fromSecond = new ArrayList<>();
+        first.forEachRemaining(fromFirst::add);
+        second.forEachRemaining(fromSecond::add);
+        assertFalse(fromFirst.isEmpty() || fromSecond.isEmpty());
+        assertEquals(19, fromFirst.size() + fromSecond.size());
+        assertNull(first.trySplit()); // nothing left
+    }
+
+    @Test
+    public void publisherRespectsDemand() throws Exception {
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            List<Setting> settings = PuzzleFormat.parse(NINETEEN);
+            SolutionPublisher publisher = new SolutionPublisher(settings, new Constraints(), exec);
+            List<Board> received = new ArrayList<>();
+            CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<>();
+            CompletableFuture<Void> completed = new CompletableFuture<>();
+            publisher.subscribe(new Flow.Subscriber<>() {
+                public void onSubscribe(Flow.Subscription s) {
+                    subscribed.complete(s);
+                }
+
+                public void onNext(Board board) {
+                    synchronized (received) {
+                        received.add(board);
+                    }
+                }
+
+                public void onError(Throwable ex) {
+                    completed.completeExceptionally(ex);
+                }
+
+                public void onComplete() {
+                    completed.complete(null);
+                }
+            });
+            Flow.Subscription subscription = subscribed.get(10, TimeUnit.SECONDS);
+            subscription.request(2);
+            // once the executor is idle, exactly what was requested has arrived
+            exec.submit(() -> { }).get(10, TimeUnit.SECONDS);
+            synchronized (received) {
+                assertEquals(2, received.size());
+            }
+            assertFalse(completed.isDone());
+            subscription.request(Long.MAX_VALUE);
+            completed.get(30, TimeUnit.SECONDS);
+            synchronized (received) {
+                assertEquals(19, received.size());
+                for (Board board : received) {
+                    assertSolves(settings, board);
+                }
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+}
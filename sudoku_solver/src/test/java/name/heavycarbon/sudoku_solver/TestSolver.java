@@ -0,0 +1,88 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class TestSolver {
+
+    private final static String HARD = "000000012000000003002300400001800005060070800000009000008500000900040500470006000";
+
+    private static int[] toDigits(String line) {
+        int[] digits = new int[PuzzleFormat.LENGTH];
+        for (int i = 0; i < digits.length; i++) {
+            digits[i] = line.charAt(i) - '0';
+        }
+        return digits;
+    }
+
+    @Test
+    public void agreesWithSudoku() throws EmptyDomainException {
+        Solver solver = new Solver();
+        // a puzzle with a unique solution: both must find it
+        assertTrue(solver.solve(PuzzleFormat.parse(HARD)));
+        assertEquals(PuzzleFormat.format(Sudoku.solve(PuzzleFormat.parse(HARD))), solver.format());
+        // a puzzle with several solutions: any will do, as long as it is one
+        assertTrue(solver.solve(CourseraSettings.getSettings()));
+        new Constraints().throwIfNotFulfillsSolutionCriterium(solver.toBoard());
+        // the same Solver, reused
+        assertTrue(solver.solve(toDigits(HARD)));
+        assertEquals(PuzzleFormat.format(Sudoku.solve(PuzzleFormat.parse(HARD))), solver.format());
+    }
+
+    @Test
+    public void findsThatThereIsNoSolution() {
+        Solver solver = new Solver();
+        // two 5s in the first row
+        assertFalse(solver.solve(toDigits("5000000050" + "0".repeat(71))));
+        // no place left for a 1 in the top-left block
+        assertFalse(solver.solve(toDigits("000100000000010000000001000100000000010000000001000000" + "0".repeat(27))));
+        assertThrows(IllegalStateException.class, solver::format);
+    }
+
+    @Test
+    public void isConfinedToItsThread() throws Exception {
+        Solver solver = new Solver();
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> f = exec.submit(() -> solver.solve(toDigits(HARD)));
+            Exception exe = assertThrows(Exception.class, f::get);
+            assertInstanceOf(IllegalStateException.class, exe.getCause());
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test
+    public void steadyStateSolvingDoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled());
+        Solver solver = new Solver();
+        int[] hard = toDigits(HARD);
+        int[] easy = toDigits("000000000780010000000020030000340000060050010000060000000070000540086970000090000");
+        int[] out = new int[PuzzleFormat.LENGTH];
+        for (int i = 0; i < 2_000; i++) {
+            // warm up, so that the JIT is done compiling the solver
+            solver.solve(hard);
+            solver.solve(easy);
+        }
+        mx.getCurrentThreadAllocatedBytes(); // warm up the measurement too
+        long before = mx.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1_000; i++) {
+            solver.solve(hard);
+            solver.solve(easy);
+            solver.copySolution(out);
+        }
+        long allocated = mx.getCurrentThreadAllocatedBytes() - before;
+        // a few bytes of slack for the measurement itself; 2000 solves allocating anything would be far more
+        assertTrue(allocated < 1024, "Allocated " + allocated + " bytes");
+    }
+
+}
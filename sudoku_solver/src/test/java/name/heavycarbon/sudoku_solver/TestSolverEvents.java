@@ -0,0 +1,42 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestSolverEvents {
+
+    @Test
+    public void flightRecorderEvents(@TempDir Path dir) throws Exception {
+        List<Setting> settings = PuzzleFormat.parse("000000012000000003002300400001800005060070800000009000008500000900040500470006000");
+        SearchContext ctx = SearchContext.deterministic();
+        Path file = dir.resolve("solve.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("name.heavycarbon.sudoku.Solve");
+            recording.enable("name.heavycarbon.sudoku.Trial");
+            // "Propagation" is left disabled
+            recording.start();
+            Sudoku.solve(settings, new Constraints(), ctx);
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        List<RecordedEvent> solves = events.stream().filter(e -> e.getEventType().getName().equals("name.heavycarbon.sudoku.Solve")).toList();
+        assertEquals(1, solves.size());
+        assertEquals(settings.size(), solves.getFirst().getInt("clueCount"));
+        assertEquals("solved", solves.getFirst().getString("result"));
+        long trials = events.stream().filter(e -> e.getEventType().getName().equals("name.heavycarbon.sudoku.Trial")).count();
+        assertEquals(ctx.getTotalNodes(), trials);
+        assertTrue(events.stream().noneMatch(e -> e.getEventType().getName().equals("name.heavycarbon.sudoku.Propagation")));
+    }
+
+}
@@ -0,0 +1,87 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSolverPipeline {
+
+    private final static String HARD = "000000012000000003002300400001800005060070800000009000008500000900040500470006000";
+    private final static String EASY = "000000000780010000000020030000340000060050010000060000000070000540086970000090000";
+    private final static String UNSOLVABLE = "5000000050" + "0".repeat(71);
+
+    private static String solution(String puzzle) {
+        Solver solver = new Solver();
+        int[] digits = new int[PuzzleFormat.LENGTH];
+        PuzzleFormat.parseDigits(puzzle, digits);
+        assertTrue(solver.solve(digits));
+        return solver.format();
+    }
+
+    private static String runText(String input, String... argv) throws InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = SolverPipeline.run(argv, new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)), out, new PrintStream(err));
+        assertEquals(0, status, err.toString(StandardCharsets.US_ASCII));
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void keepsTheInputOrder() throws InterruptedException {
+        String hard = solution(HARD);
+        String easy = solution(EASY);
+        StringBuilder input = new StringBuilder("# a comment, then a blank line\n\n");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            switch (i % 4) {
+                case 0 -> { input.append(HARD).append('\n'); expected.append(hard).append('\n'); }
+                case 1 -> { input.append(EASY).append('\n'); expected.append(easy).append('\n'); }
+                case 2 -> { input.append(UNSOLVABLE).append('\n'); expected.append("unsolvable\n"); }
+                default -> { input.append("12345\n"); expected.append("invalid\n"); }
+            }
+        }
+        // a window smaller than the input, so that the reader has to wait for the writer
+        assertEquals(expected.toString(), runText(input.toString(), "--threads=4", "--window=8"));
+        // unordered: the same results, in some order
+        String[] unordered = runText(input.toString(), "--threads=4", "--unordered").split("\n");
+        String[] expectedLines = expected.toString().split("\n");
+        Arrays.sort(unordered);
+        Arrays.sort(expectedLines);
+        assertArrayEquals(expectedLines, unordered);
+    }
+
+    @Test
+    public void writesTheBinaryFormat() throws InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String input = EASY + "\n" + UNSOLVABLE + "\n";
+        int status = SolverPipeline.run(new String[]{"--format=binary", "--threads=2"},
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)), out, new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(0, status);
+        byte[] bytes = out.toByteArray();
+        assertEquals(2 * SolverPipeline.BINARY_RECORD_SIZE, bytes.length);
+        assertEquals(SolverPipeline.Status.solved, SolverPipeline.Status.fromOrdinal(bytes[0]));
+        int[] digits = new int[PuzzleFormat.LENGTH];
+        PuzzleFormat.unpack(bytes, 1, digits);
+        StringBuilder buf = new StringBuilder();
+        for (int d : digits) {
+            buf.append(d);
+        }
+        assertEquals(solution(EASY), buf.toString());
+        assertEquals(SolverPipeline.Status.unsolvable, SolverPipeline.Status.fromOrdinal(bytes[SolverPipeline.BINARY_RECORD_SIZE]));
+    }
+
+    @Test
+    public void rejectsBadArguments() throws InterruptedException {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(2, SolverPipeline.run(new String[]{"--threads=0"}, new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new PrintStream(err)));
+        assertTrue(err.toString(StandardCharsets.US_ASCII).contains("--threads"));
+    }
+
+}
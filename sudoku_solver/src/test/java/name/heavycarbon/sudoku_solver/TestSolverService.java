@@ -0,0 +1,141 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSolverService {
+
+    private final static String COURSERA = "000000000780010000000020030000340000060050010000060000000070000540086970000090000";
+    private final static String COURSERA_SOLUTION = "216839457783514269495627138152348796968752314374961582829173645541286973637495821"; // one of several, the one Solver finds
+    private final static String CONTRADICTORY = "110000000000000000000000000000000000000000000000000000000000000000000000000000000";
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private HttpResponse<String> get(SolverService service, String pathAndQuery) throws IOException, InterruptedException {
+        HttpRequest req = HttpRequest.newBuilder(URI.create("http://localhost:" + service.getPort() + pathAndQuery)).build();
+        return client.send(req, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest post(SolverService service, String body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + service.getPort() + "/solve"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    /**
+     * Wait until "depth" puzzles are admitted but not solved.
+     */
+
+    private void awaitQueueDepth(SolverService service, int depth) throws IOException, InterruptedException {
+        while (!get(service, "/metrics").body().contains("sudoku_queue_depth " + depth + "\n")) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void singleBatchAndMetrics() throws Exception {
+        SolverService service = new SolverService(0, 2, 100, 8, 100);
+        service.start();
+        try {
+            HttpResponse<String> single = get(service, "/solve?puzzle=" + COURSERA);
+            assertEquals(200, single.statusCode());
+            assertEquals(COURSERA_SOLUTION + "\n", single.body());
+            HttpResponse<String> batch = client.send(post(service, COURSERA + "\n" + CONTRADICTORY + "\n"), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, batch.statusCode());
+            assertEquals(COURSERA_SOLUTION + "\nunsolvable\n", batch.body());
+            HttpResponse<String> bad = get(service, "/solve?puzzle=123");
+            assertEquals(400, bad.statusCode());
+            HttpResponse<String> metrics = get(service, "/metrics");
+            assertEquals(200, metrics.statusCode());
+            assertTrue(metrics.body().contains("sudoku_puzzles_solved_total 2\n"), metrics.body());
+            assertTrue(metrics.body().contains("sudoku_puzzles_unsolvable_total 1\n"), metrics.body());
+            assertTrue(metrics.body().contains("sudoku_requests_invalid_total 1\n"), metrics.body());
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void concurrentLoad() throws Exception {
+        SolverService service = new SolverService(0, 4, 1000, 16, 500);
+        service.start();
+        try {
+            List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(client.sendAsync(post(service, COURSERA), HttpResponse.BodyHandlers.ofString()));
+            }
+            for (CompletableFuture<HttpResponse<String>> f : futures) {
+                HttpResponse<String> res = f.join();
+                assertEquals(200, res.statusCode());
+                assertEquals(COURSERA_SOLUTION + "\n", res.body());
+            }
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void stopAnswersWaitingRequests() throws Exception {
+        SolverService service = new SolverService(0, 1, 10, 1, 0);
+        service.start();
+        service.pause();
+        CompletableFuture<HttpResponse<String>> waiting = client.sendAsync(post(service, COURSERA), HttpResponse.BodyHandlers.ofString());
+        awaitQueueDepth(service, 1);
+        service.stop();
+        assertEquals(503, waiting.get(10, TimeUnit.SECONDS).statusCode());
+    }
+
+    @Test
+    public void rejectsWhenQueueIsFull() throws Exception {
+        SolverService service = new SolverService(0, 1, 4, 4, 0);
+        service.start();
+        try {
+            service.pause();
+            String four = (COURSERA + "\n").repeat(4);
+            CompletableFuture<HttpResponse<String>> filling = client.sendAsync(post(service, four), HttpResponse.BodyHandlers.ofString());
+            awaitQueueDepth(service, 4);
+            HttpResponse<String> rejected = client.send(post(service, COURSERA), HttpResponse.BodyHandlers.ofString());
+            assertEquals(429, rejected.statusCode());
+            assertTrue(rejected.headers().firstValue("Retry-After").isPresent());
+            assertTrue(get(service, "/metrics").body().contains("sudoku_requests_rejected_total 1\n"));
+            // once the queue has drained, the retry is admitted
+            service.resume();
+            assertEquals(four.replace(COURSERA, COURSERA_SOLUTION), filling.get(10, TimeUnit.SECONDS).body());
+            awaitQueueDepth(service, 0);
+            HttpResponse<String> retried = client.send(post(service, COURSERA), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, retried.statusCode());
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void rejectsRequestsLargerThanTheQueue() throws Exception {
+        SolverService service = new SolverService(0, 1, 1, 1, 0);
+        service.start();
+        try {
+            // more puzzles than the queue can ever hold: retrying would not help
+            HttpResponse<String> res = client.send(post(service, COURSERA + "\n" + COURSERA + "\n"), HttpResponse.BodyHandlers.ofString());
+            assertEquals(413, res.statusCode());
+            assertFalse(res.headers().firstValue("Retry-After").isPresent());
+            // a body longer than that many puzzles need is not read to the end
+            HttpResponse<String> huge = client.send(post(service, "0".repeat(4096)), HttpResponse.BodyHandlers.ofString());
+            assertEquals(413, huge.statusCode());
+            assertTrue(get(service, "/metrics").body().contains("sudoku_requests_rejected_total 0\n"));
+        } finally {
+            service.stop();
+        }
+    }
+
+}
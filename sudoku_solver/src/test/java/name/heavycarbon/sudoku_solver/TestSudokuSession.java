@@ -0,0 +1,57 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSudokuSession {
+
+    @Test
+    public void candidatesDoNotDependOnClueOrder() throws EmptyDomainException {
+        SudokuSession forward = new SudokuSession();
+        SudokuSession backward = new SudokuSession();
+        List<Setting> settings = CourseraSettings.getSettings();
+        for (int i = 0; i < settings.size(); i++) {
+            forward.addClue(settings.get(i));
+            backward.addClue(settings.get(settings.size() - 1 - i));
+        }
+        assertEquals(forward.getBoard().toString(), backward.getBoard().toString());
+        // the solution is still among the candidates
+        Board solution = Sudoku.solve(settings);
+        for (Location loc : solution.board.keySet()) {
+            assertTrue(forward.getBoard().board.get(loc).domainContains(solution.board.get(loc).getUnique()));
+        }
+    }
+
+    @Test
+    public void retractGivesSameBoardAsNotHavingAddedTheClue() throws EmptyDomainException {
+        SudokuSession withRetract = new SudokuSession();
+        SudokuSession without = new SudokuSession();
+        List<Setting> settings = CourseraSettings.getSettings();
+        Setting retracted = settings.getFirst(); // (2,1) = 7, which propagation does not force
+        for (Setting s : settings) {
+            withRetract.addClue(s);
+            if (s.row1 != retracted.row1 || s.col1 != retracted.col1) {
+                without.addClue(s);
+            }
+        }
+        assertNotEquals(without.getBoard().toString(), withRetract.getBoard().toString());
+        withRetract.retractClue(retracted.row1, retracted.col1);
+        assertEquals(without.getBoard().toString(), withRetract.getBoard().toString());
+        assertEquals(settings.size() - 1, withRetract.getClues().size());
+        assertEquals(settings.size() - 1, without.getClues().size());
+    }
+
+    @Test
+    public void contradictingClueLeavesSessionUnchanged() throws EmptyDomainException {
+        SudokuSession session = new SudokuSession();
+        session.addClue(Setting.f(1, 1, Value.v5));
+        Board before = session.getBoard();
+        assertThrows(EmptyDomainException.class, () -> session.addClue(Setting.f(1, 9, Value.v5)));
+        assertSame(before, session.getBoard());
+        assertEquals(1, session.getClues().size());
+    }
+
+}
@@ -0,0 +1,54 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestTrace {
+
+    private static List<String> stepLines(String text) {
+        return text.lines()
+                .filter(line -> line.contains("pivot location") || line.contains("Trying value") || line.contains("Board updated via"))
+                .toList();
+    }
+
+    @Test
+    public void traceReplaysLikePrinting(@TempDir Path dir) throws Exception {
+        List<Setting> settings = PuzzleFormat.parse("000000012000000003002300400001800005060070800000009000008500000900040500470006000");
+        Path file = dir.resolve("trace.bin");
+        TraceRecorder trace = TraceRecorder.mapped(file, 100_000);
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        boolean wasEnabled = Printing.isEnabled();
+        try {
+            System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+            Printing.setEnabled(true);
+            Sudoku.solve(settings, new Constraints(), SearchContext.deterministic().withTrace(trace));
+        } finally {
+            System.setOut(stdout);
+            Printing.setEnabled(wasEnabled);
+        }
+        trace.force();
+        ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+        TraceReplay.text(TraceReplay.read(file), new PrintStream(replayed, true, StandardCharsets.UTF_8));
+        List<String> expected = stepLines(printed.toString(StandardCharsets.UTF_8));
+        assertTrue(expected.size() > 100);
+        assertEquals(expected, stepLines(replayed.toString(StandardCharsets.UTF_8)));
+        // a small ring keeps only the latest records
+        TraceRecorder small = TraceRecorder.inMemory(16);
+        Sudoku.solve(settings, new Constraints(), SearchContext.deterministic().withTrace(small));
+        TraceReplay.Trace latest = TraceReplay.read(small.asReadOnlyBuffer());
+        assertEquals(16, latest.records.size());
+        assertEquals(small.getWritten() - 16, latest.getLost());
+        assertEquals(TraceRecorder.Kind.solved, latest.records.getLast().kind);
+    }
+
+}
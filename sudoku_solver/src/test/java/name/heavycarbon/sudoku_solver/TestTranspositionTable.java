@@ -0,0 +1,83 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestTranspositionTable {
+
+    private final static String HARD = "000000012000000003002300400001800005060070800000009000008500000900040500470006000";
+    private final static String NINETEEN = "009400700000080900752301006001804600000103009080009040028507194903248060000906208"; // has 19 solutions
+
+    private static long hashFromScratch(Board board) {
+        long hash = 0;
+        for (int row0 = 0; row0 < Board.COUNT; row0++) {
+            for (int col0 = 0; col0 < Board.COUNT; col0++) {
+                hash ^= Zobrist.key(row0 * Board.COUNT + col0, board.board.get(Location.obtain0(row0, col0)).getDomainBits());
+            }
+        }
+        return hash;
+    }
+
+    @Test
+    public void hashIsIncremental() throws EmptyDomainException {
+        Board board = new Board();
+        assertEquals(hashFromScratch(board), board.getHash());
+        // the same state reached in two different orders has the same hash
+        Board a = board.setCell(Location.obtain1(1, 1), Value.fromIndex(0)).board.setCell(Location.obtain1(5, 5), Value.fromIndex(4)).board;
+        Board b = board.setCell(Location.obtain1(5, 5), Value.fromIndex(4)).board.setCell(Location.obtain1(1, 1), Value.fromIndex(0)).board;
+        assertEquals(a.getHash(), b.getHash());
+        assertNotEquals(board.getHash(), a.getHash());
+        Board solution = Sudoku.solve(PuzzleFormat.parse(HARD));
+        assertEquals(hashFromScratch(solution), solution.getHash());
+        // the Solver's hash, kept through narrowing and undoing, agrees with the Board's
+        Solver solver = new Solver();
+        assertTrue(solver.solve(PuzzleFormat.parse(HARD)));
+        assertEquals(solution.getHash(), solver.getHash());
+    }
+
+    @Test
+    public void storesAndForgets() {
+        TranspositionTable tt = new TranspositionTable(1000);
+        assertEquals(1024, tt.getCapacity());
+        assertEquals(TranspositionTable.UNKNOWN, tt.getSolutionCount(42));
+        tt.recordSolutionCount(42, 19);
+        assertEquals(19, tt.getSolutionCount(42));
+        assertFalse(tt.isKnownUnsatisfiable(42));
+        tt.recordUnsatisfiable(42 + 1024); // same slot
+        assertTrue(tt.isKnownUnsatisfiable(42 + 1024));
+        assertEquals(TranspositionTable.UNKNOWN, tt.getSolutionCount(42));
+        assertThrows(IllegalArgumentException.class, () -> new TranspositionTable(0));
+        assertThrows(IllegalArgumentException.class, () -> tt.recordSolutionCount(1, -1));
+    }
+
+    @Test
+    public void skipsKnownSubproblems() throws EmptyDomainException {
+        Constraints cos = new Constraints();
+        List<Setting> settings = PuzzleFormat.parse(NINETEEN);
+        TranspositionTable tt = new TranspositionTable(1 << 12);
+        assertEquals(19, Sudoku.countSolutions(settings, cos, null));
+        assertEquals(19, Sudoku.countSolutions(settings, cos, tt));
+        long misses = tt.getMisses();
+        assertEquals(19, Sudoku.countSolutions(settings, cos, tt)); // answered at the root
+        assertEquals(misses, tt.getMisses());
+        // a search that has failed once fails right away the second time
+        List<Setting> hard = PuzzleFormat.parse(HARD);
+        SearchContext first = SearchContext.deterministic().withTranspositionTable(tt);
+        SearchContext second = SearchContext.deterministic().withTranspositionTable(tt);
+        Board solution = Sudoku.solve(hard, cos, first);
+        assertEquals(PuzzleFormat.format(solution), PuzzleFormat.format(Sudoku.solve(hard, cos, second)));
+        assertTrue(second.getTotalNodes() < first.getTotalNodes(), second.getTotalNodes() + " nodes");
+        // and the Solver skips what it has found unsatisfiable
+        Solver solver = new Solver();
+        solver.setTranspositionTable(new TranspositionTable(1 << 12));
+        assertTrue(solver.solve(hard));
+        long nodes = solver.getNodes();
+        assertTrue(solver.solve(hard));
+        assertEquals(PuzzleFormat.format(solution), solver.format());
+        assertTrue(solver.getNodes() - nodes < nodes, (solver.getNodes() - nodes) + " nodes");
+    }
+
+}
@@ -0,0 +1,69 @@
+package name.heavycarbon.sudoku_solver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestVariants {
+
+    @Test
+    public void diagonalSudokuFromEmptyBoard() throws EmptyDomainException {
+        Constraints cos = new Constraints(true, RegionAllDifferentConstraint.diagonals());
+        Board board = Sudoku.solve(Collections.emptyList(), cos);
+        // "solve()" validates against all constraints already; check the diagonal explicitly anyway
+        for (int i = 1; i < Board.COUNT; i++) {
+            assertNotEquals(board.board.get(Location.obtain0(0, 0)).getUnique(), board.board.get(Location.obtain0(i, i)).getUnique());
+        }
+    }
+
+    @Test
+    public void jigsawSudoku() throws EmptyDomainException {
+        // the blocks, shifted right by one column (wrapping around)
+        StringBuilder layout = new StringBuilder();
+        for (int row0 = 0; row0 < Board.COUNT; row0++) {
+            for (int col0 = 0; col0 < Board.COUNT; col0++) {
+                layout.append((char) ('1' + (row0 / 3) * 3 + ((col0 + Board.COUNT - 1) % Board.COUNT) / 3));
+            }
+        }
+        Constraints cos = new Constraints(false, RegionAllDifferentConstraint.jigsaw(layout.toString()));
+        Board board = Sudoku.solve(List.of(Setting.f(1, 1, Value.v5), Setting.f(5, 5, Value.v1)), cos);
+        assertTrue(board.isDone());
+        assertThrows(IllegalStateException.class, () -> new Constraints().throwIfNotFulfillsSolutionCriterium(board));
+    }
+
+    @Test
+    public void killerSudokuWithoutClues() throws EmptyDomainException {
+        // cages of two horizontally adjacent cells (plus the single last column), sums taken from a known solution
+        Board solution = Sudoku.solve(CourseraSettings.getSettings());
+        List<SumCageConstraint> cages = new ArrayList<>();
+        for (int row0 = 0; row0 < Board.COUNT; row0++) {
+            for (int col0 = 0; col0 < Board.COUNT; col0 += 2) {
+                List<Location> locs = new ArrayList<>();
+                int sum = 0;
+                for (int c = col0; c < Math.min(col0 + 2, Board.COUNT); c++) {
+                    Location loc = Location.obtain0(row0, c);
+                    locs.add(loc);
+                    sum += solution.board.get(loc).getUnique().toDigit();
+                }
+                cages.add(new SumCageConstraint(locs, sum));
+            }
+        }
+        Board board = Sudoku.solve(Collections.emptyList(), new Constraints(true, cages));
+        assertTrue(board.isDone());
+    }
+
+    @Test
+    public void cageNarrowsByCombinations() throws EmptyDomainException {
+        // two cells adding up to 3 can only be 1 and 2
+        SumCageConstraint cage = new SumCageConstraint(List.of(Location.obtain0(0, 0), Location.obtain0(0, 1)), 3);
+        Constraint.UpdateResult ur = cage.update(new Board());
+        assertEquals(2, ur.changedLocs.size());
+        assertEquals("v1,v2", ur.board.board.get(Location.obtain0(0, 0)).toString());
+        assertThrows(IllegalArgumentException.class, () -> new SumCageConstraint(List.of(Location.obtain0(0, 0), Location.obtain0(0, 1)), 18));
+    }
+
+}